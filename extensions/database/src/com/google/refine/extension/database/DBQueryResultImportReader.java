@@ -29,6 +29,10 @@
 package com.google.refine.extension.database;
 
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -37,11 +41,18 @@ import org.slf4j.LoggerFactory;
 
 import com.google.refine.extension.database.model.DatabaseColumn;
 import com.google.refine.extension.database.model.DatabaseQueryInfo;
-import com.google.refine.extension.database.model.DatabaseRow;
 import com.google.refine.importers.TabularImportingParserBase.TableDataReader;
 import com.google.refine.importing.ImportingJob;
 
 
+/**
+ * Reads the rows of a query as the project is created. The query runs once,
+ * and its rows are streamed from the server through a forward-only result
+ * set, a fetch size at a time, rather than fetched page by page with LIMIT
+ * and OFFSET, which would make the database skip all the rows before each
+ * page again. Values are turned into cells as by the preview, with
+ * {@link DatabaseUtils#getCellValue(String, DatabaseColumnType)}.
+ */
 public class DBQueryResultImportReader implements TableDataReader {
     
     private static final Logger logger = LoggerFactory.getLogger("DBQueryResultImportReader");
@@ -51,15 +62,12 @@ public class DBQueryResultImportReader implements TableDataReader {
     private List<DatabaseColumn> dbColumns;
     private final int batchSize;    
     
-    private int nextRow = 0; // 0-based
-    private int batchRowStart = 0; // 0-based
-    private boolean end = false;
-    private List<List<Object>> rowsOfCells = null;
     private boolean usedHeaders = false;
     private DatabaseService databaseService;
     private DatabaseQueryInfo dbQueryInfo;
-    private  int processedRows = 0;
-    private static int progress = 0;
+    private ResultSet resultSet;
+    private int columnCount = -1;
+    private int processedRows = 0;
     
     
     public DBQueryResultImportReader(
@@ -93,116 +101,70 @@ public class DBQueryResultImportReader implements TableDataReader {
                 row.add(cd.getName());
             }
             usedHeaders = true;
-            //logger.info("Exit::getNextRowOfCells return header::row:" +  row);
             return row;
         }
         
-        if (rowsOfCells == null || (nextRow >= batchRowStart + rowsOfCells.size() && !end)) {
-            int newBatchRowStart = batchRowStart + (rowsOfCells == null ? 0 : rowsOfCells.size());
-            rowsOfCells = getRowsOfCells(newBatchRowStart);
-            processedRows = processedRows + rowsOfCells.size();
-            batchRowStart = newBatchRowStart;
-            setProgress(job, querySource, -1 /* batchRowStart * 100 / totalRows */);
+        if (resultSet == null) {
+            if (columnCount >= 0) {
+                // already read to the end
+                return null;
+            }
+            resultSet = databaseService.executeStreamingQuery(
+                    dbQueryInfo.getDbConfig(), dbQueryInfo.getQuery(), batchSize);
+            columnCount = Math.min(resultSet.getMetaData().getColumnCount(), dbColumns.size());
         }
         
-        if (rowsOfCells != null && nextRow - batchRowStart < rowsOfCells.size()) {
-            List<Object> result = rowsOfCells.get(nextRow++ - batchRowStart);
-            if(nextRow >= batchSize) {
-                rowsOfCells = getRowsOfCells(processedRows);
-                processedRows = processedRows + rowsOfCells.size();
-                
-                if(logger.isDebugEnabled()) {
-                    logger.debug("[[ Returning last row in batch:nextRow::{}, processedRows:{} ]]", nextRow, processedRows); 
-                }
-             
-                nextRow = 0;
-                if(processedRows % 100 == 0) {
-                    setProgress(job, querySource, progress++);
-                }
-                if(processedRows % 10000 == 0) {
-                    if(logger.isDebugEnabled()) {
-                        logger.debug("[[ {} rows processed... ]]",processedRows); 
-                    }
-                }
-            }
-            return result;
-        } else {
+        if (!resultSet.next()) {
             if(logger.isDebugEnabled()) {
                 logger.debug("[[processedRows:{} ]]", processedRows);
             }
-          return null;
+            close();
+            return null;
+        }
+        
+        List<Object> rowOfCells = new ArrayList<Object>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            rowOfCells.add(DatabaseUtils.getCellValue(resultSet.getString(i + 1), dbColumns.get(i).getType()));
         }
-      
         
-      }catch(DatabaseServiceException e) {
+        processedRows++;
+        if(processedRows % 10000 == 0) {
+            setProgress(job, querySource, -1);
+            if(logger.isDebugEnabled()) {
+                logger.debug("[[ {} rows processed... ]]",processedRows); 
+            }
+        }
+        return rowOfCells;
+      
+      } catch(DatabaseServiceException e) {
           logger.error("DatabaseServiceException::{}", e);
+          close();
+          throw new IOException(e);
+      } catch(SQLException e) {
+          logger.error("SQLException::{}", e);
+          close();
           throw new IOException(e);
-          
       }
-      
-     
    }
     
     /**
-     * @param startRow
-     * @return
-     * @throws IOException
-     * @throws DatabaseServiceException
+     * Closes the result set along with its statement and connection, once
+     * read to the end or when the import stops early.
      */
-    private List<List<Object>> getRowsOfCells(int startRow) throws IOException, DatabaseServiceException {
-        //logger.info("Entry getRowsOfCells::startRow:" + startRow);
-        
-        List<List<Object>> rowsOfCells = new ArrayList<List<Object>>(batchSize);
-        
-        String query = databaseService.buildLimitQuery(batchSize, startRow, dbQueryInfo.getQuery());
-        //logger.info("batchSize::"  + batchSize +  " startRow::" + startRow + " query::" + query );
-        
-        List<DatabaseRow> dbRows = databaseService.getRows(dbQueryInfo.getDbConfig(), query);
-
-        if(dbRows != null && !dbRows.isEmpty() && dbRows.size() > 0) {
-            
-            for(DatabaseRow dbRow: dbRows) {
-               List<String> row = dbRow.getValues();
-               List<Object> rowOfCells = new ArrayList<Object>(row.size());
-               
-               for (int j = 0; j < row.size() && j < dbColumns.size(); j++) {
-                   
-                    String text = row.get(j);
-                    if (text == null || text.isEmpty()) {
-                        rowOfCells.add(null);
-                    }else {
-                        DatabaseColumn col = dbColumns.get(j);
-                        if(col.getType() == DatabaseColumnType.NUMBER) {
-                            try {
-                                rowOfCells.add(Long.parseLong(text));
-                                continue;
-                            } catch (NumberFormatException e) {}
-                       
-                         }else if(col.getType() == DatabaseColumnType.DOUBLE || col.getType() == DatabaseColumnType.FLOAT ) {
-                             try {
-                                 double d = Double.parseDouble(text);
-                                 if (!Double.isInfinite(d) && !Double.isNaN(d)) {
-                                     rowOfCells.add(d);
-                                     continue;
-                                 }
-                             } catch (NumberFormatException e) {}
-                             
-                         }
-                        
-                        rowOfCells.add(text);
-                    }
-                    
-               }
-               
-               rowsOfCells.add(rowOfCells); 
-                
-            }
-         
+    public void close() {
+        if (resultSet == null) {
+            return;
         }
-        end = dbRows.size() < batchSize + 1;
-        //logger.info("Exit::getRowsOfCells::rowsOfCells:{}", rowsOfCells); 
-        return rowsOfCells;
-     
+        try {
+            Statement statement = resultSet.getStatement();
+            Connection connection = statement.getConnection();
+            resultSet.close();
+            statement.close();
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close the query of " + querySource, e);
+        }
+        resultSet = null;
     }
     
     private static void setProgress(ImportingJob job, String querySource, int percent) {
@@ -219,43 +181,8 @@ public class DBQueryResultImportReader implements TableDataReader {
     }
 
     
-    public int getNextRow() {
-        return nextRow;
-    }
-
-    
-    public void setNextRow(int nextRow) {
-        this.nextRow = nextRow;
-    }
-
-    
-    public int getBatchRowStart() {
-        return batchRowStart;
-    }
-
-    
-    public void setBatchRowStart(int batchRowStart) {
-        this.batchRowStart = batchRowStart;
-    }
-
-    
-    public boolean isEnd() {
-        return end;
-    }
-
-    
-    public void setEnd(boolean end) {
-        this.end = end;
-    }
-
-    
-    public List<List<Object>> getRowsOfCells() {
-        return rowsOfCells;
-    }
-
-    
-    public void setRowsOfCells(List<List<Object>> rowsOfCells) {
-        this.rowsOfCells = rowsOfCells;
+    public int getProcessedRows() {
+        return processedRows;
     }
 
     
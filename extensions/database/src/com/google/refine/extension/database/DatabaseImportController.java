@@ -416,16 +416,23 @@ public class DatabaseImportController implements ImportingController {
     
         long startTime = System.currentTimeMillis() ;
         
-        TabularImportingParserBase.readTable(
-                project,
-                metadata,
-                job,
-                new DBQueryResultImportReader(job, databaseService, querySource, columns, dbQueryInfo, getCreateBatchSize()),
-                querySource,
-                limit,
-                options,
-                exceptions
-            );
+        DBQueryResultImportReader reader = new DBQueryResultImportReader(
+                job, databaseService, querySource, columns, dbQueryInfo, getCreateBatchSize());
+        try {
+            TabularImportingParserBase.readTable(
+                    project,
+                    metadata,
+                    job,
+                    reader,
+                    querySource,
+                    limit,
+                    options,
+                    exceptions
+                );
+        } finally {
+            // the import may stop before the last row
+            reader.close();
+        }
         
         long endTime = System.currentTimeMillis() ;
         if(logger.isDebugEnabled()) {
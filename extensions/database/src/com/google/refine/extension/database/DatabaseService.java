@@ -29,6 +29,10 @@
 package com.google.refine.extension.database;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -122,4 +126,70 @@ public abstract class DatabaseService {
     
     public abstract List<DatabaseRow> getRows(DatabaseConfiguration dbConfig, String query) throws DatabaseServiceException;
 
+    /**
+     * Runs the query once on a connection of its own, with a forward-only
+     * result set that fetches rows from the server as it is read rather than
+     * all at once. The connection isn't the one the connection manager
+     * shares with previews and other queries, since those couldn't run
+     * while the result set is open. Closing the result set's statement and
+     * its connection is up to the caller.
+     * @param dbConfig
+     * @param query
+     * @param fetchSize the number of rows to fetch at a time
+     * @return the result set
+     * @throws DatabaseServiceException
+     */
+    public ResultSet executeStreamingQuery(DatabaseConfiguration dbConfig, String query, int fetchSize)
+            throws DatabaseServiceException {
+        Connection connection = openConnection(dbConfig);
+        try {
+            Statement statement = createStreamingStatement(connection, fetchSize);
+            return statement.executeQuery(query);
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            try {
+                connection.close();
+            } catch (SQLException e2) {
+                logger.warn("Connection could not be closed", e2);
+            }
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    /**
+     * @param dbConfig
+     * @return a new connection, which the connection manager doesn't keep
+     * @throws DatabaseServiceException
+     */
+    protected Connection openConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException {
+        SQLType type = SQLType.forName(dbConfig.getDatabaseType());
+        if (type == null) {
+            throw new DatabaseServiceException("Unknown database type: " + dbConfig.getDatabaseType());
+        }
+        try {
+            Class.forName(type.getClassPath());
+            DriverManager.setLoginTimeout(10);
+            return DriverManager.getConnection(getDatabaseUrl(dbConfig), dbConfig.getDatabaseUser(),
+                    dbConfig.getDatabasePassword());
+        } catch (ClassNotFoundException e) {
+            logger.error("Jdbc Driver not found", e);
+            throw new DatabaseServiceException(e.getMessage());
+        } catch (SQLException e) {
+            logger.error("SQLException::Couldn't get a Connection!", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    /**
+     * @param connection
+     * @param fetchSize
+     * @return a statement whose result sets are read from the server as they go
+     * @throws SQLException
+     */
+    protected Statement createStreamingStatement(Connection connection, int fetchSize) throws SQLException {
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(fetchSize);
+        return statement;
+    }
+
 }
@@ -324,6 +324,39 @@ public class DatabaseUtils {
         return filename;
     }
 
+    /**
+     * Turns the text of a value into the value of a cell, as both the preview
+     * and the project created from a query hold it: numbers as longs when
+     * they are whole and as doubles otherwise, and other values as their
+     * text, null when empty.
+     * @param text the value read as a string
+     * @param type the type of its column
+     * @return the value of the cell
+     */
+    public static Object getCellValue(String text, DatabaseColumnType type) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        if (type == DatabaseColumnType.NUMBER) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                // e.g. a NUMERIC value with a fraction, read as a double below
+            }
+        }
+        if (type == DatabaseColumnType.NUMBER || type == DatabaseColumnType.DOUBLE || type == DatabaseColumnType.FLOAT) {
+            try {
+                double d = Double.parseDouble(text);
+                if (!Double.isInfinite(d) && !Double.isNaN(d)) {
+                    return d;
+                }
+            } catch (NumberFormatException e) {
+                // kept as text
+            }
+        }
+        return text;
+    }
+
     public static DatabaseColumnType getDbColumnType(int dbColumnType) {
 
         switch (dbColumnType) {
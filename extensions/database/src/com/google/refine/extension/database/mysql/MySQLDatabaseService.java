@@ -285,6 +285,17 @@ public class MySQLDatabaseService extends DatabaseService {
         }
     }
 
+    /**
+     * Connector/J only streams rows one at a time, when the fetch size is
+     * Integer.MIN_VALUE; any other fetch size reads the whole result at once.
+     */
+    @Override
+    protected Statement createStreamingStatement(Connection connection, int fetchSize) throws SQLException {
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(Integer.MIN_VALUE);
+        return statement;
+    }
+
     @Override
     protected String getDatabaseUrl(DatabaseConfiguration dbConfig) {
        
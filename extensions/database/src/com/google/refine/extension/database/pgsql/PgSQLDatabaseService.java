@@ -268,6 +268,17 @@ public class PgSQLDatabaseService extends DatabaseService {
         }
     }
 
+    /**
+     * The driver only reads rows through a cursor within a transaction.
+     * The connection is the import's own and is closed with the result
+     * set, so auto-commit is left off.
+     */
+    @Override
+    protected Statement createStreamingStatement(Connection connection, int fetchSize) throws SQLException {
+        connection.setAutoCommit(false);
+        return super.createStreamingStatement(connection, fetchSize);
+    }
+
     @Override
     protected String getDatabaseUrl(DatabaseConfiguration dbConfig) {
        
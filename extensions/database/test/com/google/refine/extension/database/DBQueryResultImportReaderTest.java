@@ -0,0 +1,114 @@
+package com.google.refine.extension.database;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.model.DatabaseColumn;
+import com.google.refine.extension.database.model.DatabaseQueryInfo;
+import com.google.refine.extension.database.model.DatabaseRow;
+import com.google.refine.importing.ImportingJob;
+
+public class DBQueryResultImportReaderTest {
+
+    @Mock
+    private DatabaseService databaseService;
+
+    @Mock
+    private ImportingJob job;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private ResultSetMetaData metadata;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private Connection connection;
+
+    private DatabaseConfiguration dbConfig;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        dbConfig = new DatabaseConfiguration();
+        when(resultSet.getMetaData()).thenReturn(metadata);
+        when(resultSet.getStatement()).thenReturn(statement);
+        when(statement.getConnection()).thenReturn(connection);
+    }
+
+    @Test
+    public void convertValuesByColumnType() {
+        Assert.assertEquals(DatabaseUtils.getCellValue("42", DatabaseColumnType.NUMBER), 42L);
+        // a NUMERIC column holds numbers only, whole or not
+        Assert.assertEquals(DatabaseUtils.getCellValue("12.50", DatabaseColumnType.NUMBER), 12.5);
+        Assert.assertEquals(DatabaseUtils.getCellValue("1.5", DatabaseColumnType.DOUBLE), 1.5);
+        Assert.assertEquals(DatabaseUtils.getCellValue("NaN", DatabaseColumnType.FLOAT), "NaN");
+        Assert.assertEquals(DatabaseUtils.getCellValue("12.50", DatabaseColumnType.STRING), "12.50");
+        Assert.assertEquals(DatabaseUtils.getCellValue("2018-01-01", DatabaseColumnType.DATE), "2018-01-01");
+        Assert.assertNull(DatabaseUtils.getCellValue("", DatabaseColumnType.STRING));
+        Assert.assertNull(DatabaseUtils.getCellValue(null, DatabaseColumnType.NUMBER));
+    }
+
+    @Test
+    public void streamRowsOfQuery() throws Exception {
+        when(databaseService.executeStreamingQuery(eq(dbConfig), anyString(), anyInt())).thenReturn(resultSet);
+        when(metadata.getColumnCount()).thenReturn(2);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString(1)).thenReturn("1", "2.5");
+        when(resultSet.getString(2)).thenReturn("a", "b");
+
+        DBQueryResultImportReader reader = new DBQueryResultImportReader(job, databaseService, "test",
+                columns(), new DatabaseQueryInfo(dbConfig, "SELECT id, name FROM test"), 100);
+
+        Assert.assertEquals(reader.getNextRowOfCells(), Arrays.<Object>asList("id", "name"));
+        Assert.assertEquals(reader.getNextRowOfCells(), Arrays.<Object>asList(1L, "a"));
+        Assert.assertEquals(reader.getNextRowOfCells(), Arrays.<Object>asList(2.5, "b"));
+        Assert.assertNull(reader.getNextRowOfCells());
+        Assert.assertNull(reader.getNextRowOfCells());
+        Assert.assertEquals(reader.getProcessedRows(), 2);
+
+        // the query's own connection is closed once read
+        verify(databaseService).executeStreamingQuery(dbConfig, "SELECT id, name FROM test", 100);
+        verify(resultSet).close();
+        verify(statement).close();
+        verify(connection).close();
+    }
+
+    @Test
+    public void previewAsImported() throws Exception {
+        DatabaseRow row = new DatabaseRow();
+        row.setValues(Arrays.asList("2.5", "b"));
+        when(databaseService.buildLimitQuery(anyInt(), anyInt(), anyString())).thenReturn("query");
+        when(databaseService.getRows(dbConfig, "query")).thenReturn(Arrays.asList(row));
+
+        DBQueryResultPreviewReader reader = new DBQueryResultPreviewReader(job, databaseService, "test",
+                columns(), new DatabaseQueryInfo(dbConfig, "SELECT id, name FROM test"), 100);
+        reader.getNextRowOfCells();
+        Assert.assertEquals(reader.getNextRowOfCells(), Arrays.<Object>asList(2.5, "b"));
+    }
+
+    private List<DatabaseColumn> columns() {
+        return Arrays.asList(
+                new DatabaseColumn("id", 10, DatabaseColumnType.NUMBER),
+                new DatabaseColumn("name", 10, DatabaseColumnType.STRING));
+    }
+}
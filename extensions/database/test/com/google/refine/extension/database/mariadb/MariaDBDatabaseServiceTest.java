@@ -1,6 +1,8 @@
 package com.google.refine.extension.database.mariadb;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
 
 import org.mockito.MockitoAnnotations;
@@ -104,6 +106,19 @@ public class MariaDBDatabaseServiceTest extends DBExtensionTests{
 
      }
 
+     @Test
+     public void testExecuteStreamingQuery() throws DatabaseServiceException, SQLException {
+         MariaDBDatabaseService service = (MariaDBDatabaseService) DatabaseService
+                 .get(MariaDBDatabaseService.DB_NAME);
+         ResultSet rs = service.executeStreamingQuery(testDbConfig, "SELECT * FROM " + testTable, 10);
+         try {
+             Assert.assertEquals(rs.getType(), ResultSet.TYPE_FORWARD_ONLY);
+             Assert.assertTrue(rs.next());
+         } finally {
+             rs.getStatement().getConnection().close();
+         }
+     }
+
      @Test
      public void testGetRows() throws DatabaseServiceException {
          MariaDBDatabaseService pgSqlService = (MariaDBDatabaseService) DatabaseService
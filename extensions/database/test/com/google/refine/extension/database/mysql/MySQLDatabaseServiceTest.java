@@ -1,6 +1,8 @@
 package com.google.refine.extension.database.mysql;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
 
 import org.mockito.MockitoAnnotations;
@@ -104,6 +106,19 @@ public class MySQLDatabaseServiceTest extends DBExtensionTests{
 
      }
 
+     @Test
+     public void testExecuteStreamingQuery() throws DatabaseServiceException, SQLException {
+         MySQLDatabaseService service = (MySQLDatabaseService) DatabaseService
+                 .get(MySQLDatabaseService.DB_NAME);
+         ResultSet rs = service.executeStreamingQuery(testDbConfig, "SELECT * FROM " + testTable, 10);
+         try {
+             Assert.assertEquals(rs.getType(), ResultSet.TYPE_FORWARD_ONLY);
+             Assert.assertTrue(rs.next());
+         } finally {
+             rs.getStatement().getConnection().close();
+         }
+     }
+
      @Test
      public void testGetRows() throws DatabaseServiceException {
          MySQLDatabaseService pgSqlService = (MySQLDatabaseService) DatabaseService
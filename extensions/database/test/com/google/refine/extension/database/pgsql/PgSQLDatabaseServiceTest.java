@@ -1,6 +1,8 @@
 package com.google.refine.extension.database.pgsql;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
 
 import org.mockito.MockitoAnnotations;
@@ -105,6 +107,19 @@ public class PgSQLDatabaseServiceTest extends DBExtensionTests{
 
     }
 
+    @Test
+    public void testExecuteStreamingQuery() throws DatabaseServiceException, SQLException {
+        PgSQLDatabaseService service = (PgSQLDatabaseService) DatabaseService
+                .get(PgSQLDatabaseService.DB_NAME);
+        ResultSet rs = service.executeStreamingQuery(testDbConfig, "SELECT * FROM " + testTable, 10);
+        try {
+            Assert.assertEquals(rs.getType(), ResultSet.TYPE_FORWARD_ONLY);
+            Assert.assertTrue(rs.next());
+        } finally {
+            rs.getStatement().getConnection().close();
+        }
+    }
+
     @Test
     public void testGetRows() throws DatabaseServiceException {
         PgSQLDatabaseService pgSqlService = (PgSQLDatabaseService) DatabaseService
@@ -42,6 +42,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -100,6 +101,19 @@ public abstract class ProjectManager {
      */
     transient protected Map<Long, Project> _projects;
 
+    /**
+     *  Estimated heap usage in bytes of each project held in memory, least recently
+     *  accessed first, as moved by {@link #touchProject}. Only tracked when a memory
+     *  budget is set.
+     */
+    transient protected LinkedHashMap<Long, Long> _projectSizes = new LinkedHashMap<Long, Long>();
+
+    /**
+     *  Estimated heap usage in bytes that the projects held in memory shouldn't exceed,
+     *  or 0 for no limit.
+     */
+    transient protected long _projectsMemoryBudget = 0;
+
     static public ProjectManager singleton;
     
     protected ProjectManager() {
@@ -121,6 +135,7 @@ public abstract class ProjectManager {
         }
         
         _projects.clear();
+        _projectSizes.clear();
         _projectsMetadata.clear();
     }
 
@@ -130,9 +145,14 @@ public abstract class ProjectManager {
      * @param projectMetadata
      */
     public void registerProject(Project project, ProjectMetadata projectMetadata) {
+        List<Project> overBudget = null;
         synchronized (this) {
             _projects.put(project.id, project);
             _projectsMetadata.put(project.id, projectMetadata);
+            if (_projectsMemoryBudget > 0) {
+                measureProject(project);
+                overBudget = selectProjectsOverBudget(project.id);
+            }
             if (_projectsTags == null)
                 _projectsTags = new HashMap<String, Integer>();
             String[] tags = projectMetadata.getTags();
@@ -146,6 +166,9 @@ public abstract class ProjectManager {
                 }
             }
         }
+        if (overBudget != null) {
+            flushProjects(overBudget);
+        }
     }
 
     /**
@@ -284,7 +307,7 @@ public abstract class ProjectManager {
                          * It's been a while since the project was last saved and it hasn't been
                          * modified. We can safely remove it from the cache to save some memory.
                          */
-                        _projects.remove(id).dispose();
+                        unloadProject(id);
                     }
                 }
             }
@@ -321,6 +344,20 @@ public abstract class ProjectManager {
                 }
             }
         }
+
+        if (_projectsMemoryBudget > 0) {
+            List<Project> overBudget;
+            synchronized (this) {
+                // projects grow and shrink as operations are applied to them
+                for (SaveRecord record : records) {
+                    if (_projects.get(record.project.id) == record.project) {
+                        measureProject(record.project);
+                    }
+                }
+                overBudget = selectProjectsOverBudget(-1);
+            }
+            flushProjects(overBudget);
+        }
     }
 
     /**
@@ -333,9 +370,147 @@ public abstract class ProjectManager {
                 Project project = _projects.get(id);
                 if (project != null && !project.getProcessManager().hasPending() 
                         && metadata.getModified().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() < project.getLastSave().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()) {
-                        _projects.remove(id).dispose();
+                        unloadProject(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets how much heap, in bytes, the projects held in memory may use by estimate.
+     * When they use more, the least recently accessed projects are saved and
+     * flushed from memory.
+     * @param bytes
+     *     the budget, or 0 for no limit
+     */
+    public void setProjectsMemoryBudget(long bytes) {
+        List<Project> overBudget = null;
+        synchronized (this) {
+            _projectsMemoryBudget = Math.max(0, bytes);
+            _projectSizes.clear();
+            if (_projectsMemoryBudget > 0) {
+                for (Project project : _projects.values()) {
+                    measureProject(project);
                 }
+                overBudget = selectProjectsOverBudget(-1);
+            }
+        }
+        if (overBudget != null) {
+            flushProjects(overBudget);
+        }
+    }
+
+    public long getProjectsMemoryBudget() {
+        return _projectsMemoryBudget;
+    }
+
+    /**
+     * @return the estimated heap usage in bytes of the projects held in memory,
+     *     or 0 if no memory budget is set
+     */
+    public long getProjectsMemoryUsage() {
+        synchronized (this) {
+            long total = 0;
+            for (long size : _projectSizes.values()) {
+                total += size;
             }
+            return total;
+        }
+    }
+
+    protected void measureProject(Project project) {
+        _projectSizes.put(project.id, project.estimateMemoryUsage());
+    }
+
+    /**
+     * Marks a project as the most recently accessed, so that it is the last to
+     * be flushed from memory.
+     */
+    protected void touchProject(long id) {
+        Long size = _projectSizes.remove(id);
+        if (size != null) {
+            _projectSizes.put(id, size);
+        }
+    }
+
+    /**
+     * Picks the least recently accessed projects to flush from memory so that the
+     * projects held fit in the memory budget. Projects with pending processes are
+     * kept, as is the given one, which is about to be used. Must be called while
+     * holding the lock of the project manager, unlike {@link #flushProjects}.
+     * @param keepID
+     *     the id of a project not to flush
+     * @return the projects to flush
+     */
+    protected List<Project> selectProjectsOverBudget(long keepID) {
+        List<Project> projects = new ArrayList<Project>();
+        long total = getProjectsMemoryUsage();
+        if (total <= _projectsMemoryBudget) {
+            return projects;
+        }
+
+        for (Map.Entry<Long, Long> entry : _projectSizes.entrySet()) {
+            long id = entry.getKey();
+            Project project = _projects.get(id);
+            if (id == keepID || project == null || project.getProcessManager().hasPending()) {
+                continue;
+            }
+            if (getProjectMetadata(id) == null) {
+                // can't tell whether it has unsaved changes
+                continue;
+            }
+
+            projects.add(project);
+            total -= entry.getValue();
+            if (total <= _projectsMemoryBudget) {
+                return projects;
+            }
+        }
+        logger.warn("Projects in use need about {}MB, over the budget of {}MB",
+                total >> 20, _projectsMemoryBudget >> 20);
+        return projects;
+    }
+
+    /**
+     * Saves the projects if they have changes, and flushes them from memory unless
+     * they were replaced or got busy meanwhile. Projects are saved without holding
+     * the lock of the project manager, since saving takes the lock of the project.
+     */
+    protected void flushProjects(List<Project> projects) {
+        for (Project project : projects) {
+            ProjectMetadata metadata = getProjectMetadata(project.id);
+            if (metadata == null) {
+                continue;
+            }
+            LocalDateTime modified = metadata.getModified();
+            if (!modified.isBefore(project.getLastSave())) {
+                try {
+                    saveProject(project);
+                } catch (Exception e) {
+                    logger.warn("Failed to save project " + project.id + " before flushing it from memory", e);
+                    continue;
+                }
+            }
+
+            synchronized (this) {
+                // not modified since saved
+                if (_projects.get(project.id) == project && !project.getProcessManager().hasPending()
+                        && modified.equals(metadata.getModified())) {
+                    unloadProject(project.id);
+                    logger.info("Flushed project {} from memory to stay within budget", project.id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Disposes of a project held in memory, which must be saved already.
+     */
+    protected void unloadProject(long id) {
+        Project project = _projects.remove(id);
+        _projectSizes.remove(id);
+        if (project != null) {
+            project.dispose();
         }
     }
 
@@ -500,17 +675,27 @@ public abstract class ProjectManager {
      *     the project with the matching id, or null if it can't be found
      */
     public Project getProject(long id) {
+        Project project;
+        List<Project> overBudget = null;
         synchronized (this) {
             if (_projects.containsKey(id)) {
+                touchProject(id);
                 return _projects.get(id);
             } else {
-                Project project = loadProject(id);
+                project = loadProject(id);
                 if (project != null) {
                     _projects.put(id, project);                    
+                    if (_projectsMemoryBudget > 0) {
+                        measureProject(project);
+                        overBudget = selectProjectsOverBudget(id);
+                    }
                 }
-                return project;
             }
         }
+        if (overBudget != null) {
+            flushProjects(overBudget);
+        }
+        return project;
     }
 
     /**
@@ -556,7 +741,7 @@ public abstract class ProjectManager {
      */
     protected void removeProject(long projectID){
         if (_projects.containsKey(projectID)) {
-            _projects.remove(projectID).dispose();
+            unloadProject(projectID);
         }
         if (_projectsMetadata.containsKey(projectID)) {
             _projectsMetadata.remove(projectID);
@@ -130,6 +130,11 @@ public class RefineServlet extends Butterfly {
         FileProjectManager.initialize(s_dataDir);
         ImportingManager.initialize(this);
 
+        String projectsMemory = getInitParameter("refine.projects_memory");
+        if (projectsMemory != null) {
+            ProjectManager.singleton.setProjectsMemoryBudget(Long.parseLong(projectsMemory) << 20);
+        }
+
 	long AUTOSAVE_PERIOD = Long.parseLong(getInitParameter("refine.autosave"));
 
         service.scheduleWithFixedDelay(new AutoSaveTimerTask(), AUTOSAVE_PERIOD, 
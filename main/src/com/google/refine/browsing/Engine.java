@@ -33,9 +33,11 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.function.IntPredicate;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -49,11 +51,19 @@ import com.google.refine.browsing.facets.RangeFacet;
 import com.google.refine.browsing.facets.ScatterplotFacet;
 import com.google.refine.browsing.facets.TextSearchFacet;
 import com.google.refine.browsing.facets.TimeRangeFacet;
+import com.google.refine.browsing.util.BitSetFilteredRecords;
+import com.google.refine.browsing.util.BitSetFilteredRows;
 import com.google.refine.browsing.util.ConjunctiveFilteredRecords;
 import com.google.refine.browsing.util.ConjunctiveFilteredRows;
+import com.google.refine.browsing.util.FilterMatchCache;
 import com.google.refine.browsing.util.FilteredRecordsAsFilteredRows;
+import com.google.refine.browsing.util.ParallelFiltering;
+import com.google.refine.expr.MetaParser;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
+import com.google.refine.sorting.BaseSorter;
+import com.google.refine.sorting.SortingRecordVisitor;
+import com.google.refine.sorting.SortingRowVisitor;
 
 /**
  * Faceted browsing engine.
@@ -70,7 +80,9 @@ public class Engine implements Jsonizable {
     public final static String MODE_RECORD_BASED = "record-based";
 
     protected Project _project;
-    protected List<Facet> _facets = new LinkedList<Facet>();
+    protected List<Facet> _facets = new ArrayList<Facet>();
+    protected List<String> _facetConfigs = new ArrayList<String>(); // JSON of each facet, for caching
+    protected List<Boolean> _facetCacheable = new ArrayList<Boolean>(); // whether its matches can be cached
     protected Mode _mode = Mode.RowBased;
 
     static public String modeToString(Mode mode) {
@@ -121,11 +133,13 @@ public class Engine implements Jsonizable {
             return new FilteredRecordsAsFilteredRows(getFilteredRecords(except));
         } else if (_mode == Mode.RowBased) {
             ConjunctiveFilteredRows cfr = new ConjunctiveFilteredRows();
-            for (Facet facet : _facets) {
+            for (int i = 0; i < _facets.size(); i++) {
+                Facet facet = _facets.get(i);
                 if (facet != except) {
                     RowFilter rowFilter = facet.getRowFilter(_project);
                     if (rowFilter != null) {
-                        cfr.add(rowFilter);
+                        BitSet matches = getCachedMatches(i);
+                        cfr.add(matches != null ? (project, rowIndex, row) -> matches.get(rowIndex) : rowFilter);
                     }
                 }
             }
@@ -159,11 +173,13 @@ public class Engine implements Jsonizable {
     public FilteredRecords getFilteredRecords(Facet except) {
         if (_mode == Mode.RecordBased) {
             ConjunctiveFilteredRecords cfr = new ConjunctiveFilteredRecords();
-            for (Facet facet : _facets) {
+            for (int i = 0; i < _facets.size(); i++) {
+                Facet facet = _facets.get(i);
                 if (facet != except) {
                     RecordFilter recordFilter = facet.getRecordFilter(_project);
                     if (recordFilter != null) {
-                        cfr.add(recordFilter);
+                        BitSet matches = getCachedMatches(i);
+                        cfr.add(matches != null ? (project, record) -> matches.get(record.recordIndex) : recordFilter);
                     }
                 }
             }
@@ -201,6 +217,8 @@ public class Engine implements Jsonizable {
                 if (facet != null) {
                     facet.initializeFromJSON(_project, fo);
                     _facets.add(facet);
+                    _facetConfigs.add(fo.toString());
+                    _facetCacheable.add(isCacheable(fo));
                 }
             }
         }
@@ -215,22 +233,218 @@ public class Engine implements Jsonizable {
         }
     }
 
+    /**
+     * Computes the choices of all facets in a single evaluation of their filters:
+     * every facet's filter is evaluated once per row (or record), and each facet
+     * is then fed the rows matched by all the other facets' filters. Matches are
+     * cached per facet configuration, so only facets that changed since the last
+     * computation on the same project state are evaluated.
+     */
     public void computeFacets() throws JSONException {
-        if (_mode == Mode.RowBased) {
-            for (Facet facet : _facets) {
-                FilteredRows filteredRows = getFilteredRows(facet);
-
-                facet.computeChoices(_project, filteredRows);
+        int facetCount = _facets.size();
+        int count = getCount();
+        BitSet[] matches = matchAllButEach(count, getFacetMatches(count, getFacetPredicates()));
+        
+        for (int i = 0; i < facetCount; i++) {
+            if (_mode == Mode.RowBased) {
+                _facets.get(i).computeChoices(_project, new BitSetFilteredRows(matches[i]));
+            } else {
+                _facets.get(i).computeChoices(_project, new BitSetFilteredRecords(matches[i]));
+            }
+        }
+    }
+    
+    /**
+     * Returns the indices of the rows, or of the records in record mode,
+     * matched by all facets. Since each facet's matches are cached, this is
+     * cheap once the facets have been computed, which lets rows be paged
+     * through without filtering the whole project for every page.
+     */
+    public BitSet getMatchingIndices() {
+        int count = getCount();
+        BitSet result = new BitSet(count);
+        result.set(0, count);
+        for (BitSet matches : getFacetMatches(count, getFacetPredicates())) {
+            if (matches != null) {
+                result.and(matches);
             }
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the indices of all rows, or of all records in record mode, in
+     * the order given by sorting criteria. The order is cached until the
+     * project changes, so that paging through sorted rows only sorts them
+     * once.
+     * 
+     * @return the sorted indices, which must not be modified, or null if
+     *      there are no criteria
+     */
+    public int[] getSortOrder(JSONObject sortingJson) throws JSONException {
+        String key = modeToString(_mode) + ":" + sortingJson.toString();
+        int[] order = FilterMatchCache.getSortOrder(_project.id, key);
+        if (order != null) {
+            return order;
+        }
+        
+        long version = FilterMatchCache.getVersion(_project.id);
+        BaseSorter sorter = _mode == Mode.RowBased ?
+                new SortingRowVisitor(null) : new SortingRecordVisitor(null);
+        sorter.initializeFromJSON(_project, sortingJson);
+        if (!sorter.hasCriteria()) {
+            return null;
+        }
+        
+        order = new int[getCount()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        sorter.sort(_project, order);
+        
+        FilterMatchCache.putSortOrder(_project.id, version, key, order);
+        return order;
+    }
+    
+    /**
+     * @return the number of rows, or of records in record mode
+     */
+    protected int getCount() {
+        if (_mode == Mode.RowBased) {
+            return _project.rows.size();
         } else if (_mode == Mode.RecordBased) {
-            for (Facet facet : _facets) {
-                FilteredRecords filteredRecords = getFilteredRecords(facet);
-
-                facet.computeChoices(_project, filteredRecords);
+            return _project.recordModel.getRecordCount();
+        }
+        throw new InternalError("Unknown mode.");
+    }
+    
+    /**
+     * @return for each facet, its filter over row or record indices, or null
+     *      if it doesn't filter anything
+     */
+    protected IntPredicate[] getFacetPredicates() {
+        IntPredicate[] predicates = new IntPredicate[_facets.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            if (_mode == Mode.RowBased) {
+                RowFilter rowFilter = _facets.get(i).getRowFilter(_project);
+                if (rowFilter != null) {
+                    predicates[i] = rowIndex -> rowFilter.filterRow(_project, rowIndex, _project.rows.get(rowIndex));
+                }
+            } else {
+                RecordFilter recordFilter = _facets.get(i).getRecordFilter(_project);
+                if (recordFilter != null) {
+                    predicates[i] = r -> recordFilter.filterRecord(_project, _project.recordModel.getRecord(r));
+                }
             }
-        } else {
-            throw new InternalError("Unknown mode.");
         }
+        return predicates;
+    }
+    
+    protected String getCacheKey(int facetIndex) {
+        return modeToString(_mode) + ":" + _facetConfigs.get(facetIndex);
+    }
+    
+    /**
+     * @return the cached matches of a facet, or null if there are none or
+     *      they can't be cached
+     */
+    protected BitSet getCachedMatches(int facetIndex) {
+        return _facetCacheable.get(facetIndex) ?
+                FilterMatchCache.get(_project.id, getCacheKey(facetIndex)) : null;
+    }
+    
+    /**
+     * Tells whether the matches of a facet can be cached until the project
+     * changes. They can't when its expressions read other rows or other
+     * projects, which can change without this project changing, or when
+     * they aren't deterministic, like now().
+     * 
+     * @param o the facet's configuration
+     */
+    static protected boolean isCacheable(JSONObject o) {
+        for (String key : new String[] { "expression", ScatterplotFacet.X_EXPRESSION, ScatterplotFacet.Y_EXPRESSION }) {
+            String expression = o.optString(key, null);
+            if (expression != null && !MetaParser.dependsOnRowOnly(expression)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Evaluates, in a single pass, the filters of the facets whose matches are not
+     * cached yet, and caches them.
+     * 
+     * @param count number of rows or records
+     * @param predicates one filter per facet, null for facets that don't filter anything
+     * @return for each facet, the indices matched by its filter, or null if it has none
+     */
+    protected BitSet[] getFacetMatches(int count, IntPredicate[] predicates) {
+        long version = FilterMatchCache.getVersion(_project.id);
+        
+        BitSet[] matches = new BitSet[predicates.length];
+        List<Integer> pending = new ArrayList<Integer>();
+        for (int i = 0; i < predicates.length; i++) {
+            if (predicates[i] != null) {
+                matches[i] = getCachedMatches(i);
+                if (matches[i] == null) {
+                    pending.add(i);
+                }
+            }
+        }
+        
+        if (!pending.isEmpty()) {
+            IntPredicate[] pendingPredicates = new IntPredicate[pending.size()];
+            for (int p = 0; p < pendingPredicates.length; p++) {
+                pendingPredicates[p] = predicates[pending.get(p)];
+            }
+            
+            BitSet[] computed = ParallelFiltering.match(
+                    count, pendingPredicates, ParallelFiltering.isEnabled(count));
+            for (int p = 0; p < computed.length; p++) {
+                int i = pending.get(p);
+                matches[i] = computed[p];
+                if (_facetCacheable.get(i)) {
+                    FilterMatchCache.put(_project.id, version, getCacheKey(i), computed[p]);
+                }
+            }
+        }
+        return matches;
+    }
+    
+    /**
+     * @param count number of rows or records
+     * @param matches the indices matched by each facet, null for facets that don't filter anything
+     * @return for each facet, the indices matched by all facets but itself
+     */
+    static protected BitSet[] matchAllButEach(int count, BitSet[] matches) {
+        // prefix[i] is the conjunction of the matches of the first i facets,
+        // suffix[i] that of the facets from i onwards
+        int n = matches.length;
+        BitSet[] prefix = new BitSet[n + 1];
+        BitSet[] suffix = new BitSet[n + 1];
+        prefix[0] = new BitSet(count);
+        prefix[0].set(0, count);
+        suffix[n] = prefix[0];
+        
+        for (int i = 0; i < n; i++) {
+            prefix[i + 1] = matches[i] == null ? prefix[i] : and(prefix[i], matches[i]);
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            suffix[i] = matches[i] == null ? suffix[i + 1] : and(suffix[i + 1], matches[i]);
+        }
+        
+        BitSet[] result = new BitSet[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = and(prefix[i], suffix[i + 1]);
+        }
+        return result;
+    }
+    
+    static private BitSet and(BitSet a, BitSet b) {
+        BitSet c = (BitSet) a.clone();
+        c.and(b);
+        return c;
     }
 
     @Override
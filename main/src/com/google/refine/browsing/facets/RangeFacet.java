@@ -228,7 +228,7 @@ public class RangeFacet implements Facet {
             String key = "numeric-bin:row-based:" + _expression;
             NumericBinIndex index = (NumericBinIndex) column.getPrecompute(key);
             if (index == null) {
-                index = new NumericBinRowIndex(project, rowEvaluable);
+                index = new NumericBinRowIndex(project, rowEvaluable, MetaParser.dependsOnRowOnly(_expression));
                 column.setPrecompute(key, index);
             }
             
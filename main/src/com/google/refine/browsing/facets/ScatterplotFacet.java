@@ -429,7 +429,8 @@ public class ScatterplotFacet implements Facet {
         NumericBinIndex index = (NumericBinIndex) column.getPrecompute(key);
         if (index == null) {
             index = "row-based".equals(mode) ? 
-                    new NumericBinRowIndex(project, new ExpressionBasedRowEvaluable(column.getName(), column.getCellIndex(), eval)) :
+                    new NumericBinRowIndex(project, new ExpressionBasedRowEvaluable(column.getName(), column.getCellIndex(), eval),
+                            MetaParser.dependsOnRowOnly(expression)) :
                         new NumericBinRecordIndex(project, new ExpressionBasedRowEvaluable(column.getName(), column.getCellIndex(), eval));
 
                     column.setPrecompute(key, index);
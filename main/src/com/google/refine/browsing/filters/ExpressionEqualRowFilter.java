@@ -92,10 +92,14 @@ public class ExpressionEqualRowFilter implements RowFilter {
     public boolean internalFilterRow(Project project, int rowIndex, Row row) {
         Cell cell = _cellIndex < 0 ? null : row.getCell(_cellIndex);
         
-        Properties bindings = ExpressionUtils.createBindings(project);
-        ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
-        
-        Object value = _evaluable.evaluate(bindings);
+        Properties bindings = ExpressionUtils.acquireBindings(project);
+        Object value;
+        try {
+            ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
+            value = _evaluable.evaluate(bindings);
+        } finally {
+            ExpressionUtils.releaseBindings(bindings);
+        }
         if (value != null) {
             if (value.getClass().isArray()) {
                 Object[] a = (Object[]) value;
@@ -135,10 +139,14 @@ public class ExpressionEqualRowFilter implements RowFilter {
     public boolean internalInvertedFilterRow(Project project, int rowIndex, Row row) {
         Cell cell = _cellIndex < 0 ? null : row.getCell(_cellIndex);
         
-        Properties bindings = ExpressionUtils.createBindings(project);
-        ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
-        
-        Object value = _evaluable.evaluate(bindings);
+        Properties bindings = ExpressionUtils.acquireBindings(project);
+        Object value;
+        try {
+            ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
+            value = _evaluable.evaluate(bindings);
+        } finally {
+            ExpressionUtils.releaseBindings(bindings);
+        }
         if (value != null) {
             if (value.getClass().isArray()) {
                 Object[] a = (Object[]) value;
@@ -74,9 +74,13 @@ abstract public class ExpressionNumberComparisonRowFilter implements RowFilter {
 
     @Override
     public boolean filterRow(Project project, int rowIndex, Row row) {
-        Properties bindings = ExpressionUtils.createBindings(project);
-        
-        Object value = _rowEvaluable.eval(project, rowIndex, row, bindings);
+        Properties bindings = ExpressionUtils.acquireBindings(project);
+        Object value;
+        try {
+            value = _rowEvaluable.eval(project, rowIndex, row, bindings);
+        } finally {
+            ExpressionUtils.releaseBindings(bindings);
+        }
         if (value != null) {
             if (value.getClass().isArray()) {
                 Object[] a = (Object[]) value;
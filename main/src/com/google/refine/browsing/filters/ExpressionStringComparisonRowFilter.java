@@ -67,10 +67,15 @@ abstract public class ExpressionStringComparisonRowFilter implements RowFilter {
     public boolean filterRow(Project project, int rowIndex, Row row) {
         Cell cell = _cellIndex < 0 ? null : row.getCell(_cellIndex);
         
-        Properties bindings = ExpressionUtils.createBindings(project);
-        ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
         Boolean invert = _invert;
-        Object value = _evaluable.evaluate(bindings);
+        Properties bindings = ExpressionUtils.acquireBindings(project);
+        Object value;
+        try {
+            ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
+            value = _evaluable.evaluate(bindings);
+        } finally {
+            ExpressionUtils.releaseBindings(bindings);
+        }
         if (value != null) {
             if (value.getClass().isArray()) {
                 Object[] a = (Object[]) value;
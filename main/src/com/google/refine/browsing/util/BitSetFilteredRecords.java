@@ -0,0 +1,35 @@
+package com.google.refine.browsing.util;
+
+import java.util.BitSet;
+
+import com.google.refine.browsing.FilteredRecords;
+import com.google.refine.browsing.RecordVisitor;
+import com.google.refine.model.Project;
+
+/**
+ * Visits the records whose indices have already been determined to match,
+ * in increasing index order.
+ */
+public class BitSetFilteredRecords implements FilteredRecords {
+    final protected BitSet _matches;
+    
+    public BitSetFilteredRecords(BitSet matches) {
+        _matches = matches;
+    }
+    
+    @Override
+    public void accept(Project project, RecordVisitor visitor) {
+        try {
+            visitor.start(project);
+            
+            int c = project.recordModel.getRecordCount();
+            for (int r = _matches.nextSetBit(0); r >= 0 && r < c; r = _matches.nextSetBit(r + 1)) {
+                if (visitor.visit(project, project.recordModel.getRecord(r))) {
+                    return;
+                }
+            }
+        } finally {
+            visitor.end(project);
+        }
+    }
+}
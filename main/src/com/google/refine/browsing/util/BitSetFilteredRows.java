@@ -0,0 +1,35 @@
+package com.google.refine.browsing.util;
+
+import java.util.BitSet;
+
+import com.google.refine.browsing.FilteredRows;
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.model.Project;
+
+/**
+ * Visits the rows whose indices have already been determined to match,
+ * in increasing index order.
+ */
+public class BitSetFilteredRows implements FilteredRows {
+    final protected BitSet _matches;
+    
+    public BitSetFilteredRows(BitSet matches) {
+        _matches = matches;
+    }
+    
+    @Override
+    public void accept(Project project, RowVisitor visitor) {
+        try {
+            visitor.start(project);
+            
+            int c = project.rows.size();
+            for (int rowIndex = _matches.nextSetBit(0); rowIndex >= 0 && rowIndex < c; rowIndex = _matches.nextSetBit(rowIndex + 1)) {
+                if (visitor.visit(project, rowIndex, project.rows.get(rowIndex))) {
+                    break;
+                }
+            }
+        } finally {
+            visitor.end(project);
+        }
+    }
+}
@@ -33,6 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.util;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -58,6 +59,18 @@ public class ConjunctiveFilteredRecords implements FilteredRecords {
             visitor.start(project);
 
             int c = project.recordModel.getRecordCount();
+            if (!_recordFilters.isEmpty() && ParallelFiltering.isEnabled(c)) {
+                // records never straddle chunk boundaries since we partition on record indices
+                BitSet matches = ParallelFiltering.match(c,
+                        r -> matchRecord(project, project.recordModel.getRecord(r)));
+                for (int r = matches.nextSetBit(0); r >= 0; r = matches.nextSetBit(r + 1)) {
+                    if (visitor.visit(project, project.recordModel.getRecord(r))) {
+                        return;
+                    }
+                }
+                return;
+            }
+            
             for (int r = 0; r < c; r++) {
                 Record record = project.recordModel.getRecord(r);
                 if (matchRecord(project, record)) {
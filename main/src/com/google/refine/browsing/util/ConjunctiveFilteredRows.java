@@ -33,6 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.util;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -59,6 +60,17 @@ public class ConjunctiveFilteredRows implements FilteredRows {
             visitor.start(project);
 
             int c = project.rows.size();
+            if (!_rowFilters.isEmpty() && ParallelFiltering.isEnabled(c)) {
+                BitSet matches = ParallelFiltering.match(c,
+                        rowIndex -> matchRow(project, rowIndex, project.rows.get(rowIndex)));
+                for (int rowIndex = matches.nextSetBit(0); rowIndex >= 0; rowIndex = matches.nextSetBit(rowIndex + 1)) {
+                    if (visitRow(project, visitor, rowIndex, project.rows.get(rowIndex))) {
+                        break;
+                    }
+                }
+                return;
+            }
+            
             for (int rowIndex = 0; rowIndex < c; rowIndex++) {
                 Row row = project.rows.get(rowIndex);
                 if (matchRow(project, rowIndex, row)) {
@@ -47,6 +47,7 @@ import com.google.refine.browsing.facets.NominalFacetChoice;
 import com.google.refine.expr.Evaluable;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Cell;
+import com.google.refine.model.Precompute;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
 import com.google.refine.model.Row;
@@ -56,7 +57,7 @@ import com.google.refine.util.StringUtils;
  * Visit matched rows or records and group them into facet choices based on the values computed
  * from a given expression.
  */
-public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor {
+public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor, Precompute {
     static public class IndexedNominalFacetChoice extends NominalFacetChoice {
         int _latestIndex;
 
@@ -243,4 +244,15 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
             return blankCount;
         }
     }
+
+    @Override
+    public long getMemorySize() {
+        // a map entry, a choice and its value, of a dozen characters
+        return 256 + 160L * choices.size();
+    }
+
+    @Override
+    public Precompute update(Project project, int[] rowIndices) {
+        return null;
+    }
 }
@@ -0,0 +1,118 @@
+package com.google.refine.browsing.util;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches, per project, the rows (or records) matched by individual facet
+ * filters, keyed by the facet's configuration. When the user changes one
+ * facet, the other facets' matches are then reused instead of re-evaluating
+ * their expressions over the whole project. It also caches the order of all
+ * rows (or records) under each sorting, so that paging through sorted rows
+ * doesn't sort them again for every page.
+ * <p>
+ * A project's entries are flushed whenever a change is applied to or
+ * reverted from it. Each flush bumps the project's version, and matches
+ * computed against an older version are not cached, so that a scan racing
+ * with a change can't store stale results.
+ */
+public class FilterMatchCache {
+    static final public int MAX_ENTRIES_PER_PROJECT = 64;
+    static final public int MAX_SORT_ORDERS_PER_PROJECT = 4;
+
+    static final private Map<Long, ProjectEntry> s_projects = new HashMap<Long, ProjectEntry>();
+
+    static private class ProjectEntry {
+        long version;
+
+        final Map<String, BitSet> matches = new LinkedHashMap<String, BitSet>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+                return size() > MAX_ENTRIES_PER_PROJECT;
+            }
+        };
+
+        final Map<String, int[]> sortOrders = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                return size() > MAX_SORT_ORDERS_PER_PROJECT;
+            }
+        };
+    }
+
+    static synchronized private ProjectEntry getEntry(long projectID) {
+        ProjectEntry entry = s_projects.get(projectID);
+        if (entry == null) {
+            entry = new ProjectEntry();
+            s_projects.put(projectID, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @return the current version of the project's cached data, to be passed
+     *      back to {@link #put(long, long, String, BitSet)}
+     */
+    static synchronized public long getVersion(long projectID) {
+        return getEntry(projectID).version;
+    }
+
+    /**
+     * @return the cached matches, or null if there are none. The result must
+     *      not be modified.
+     */
+    static synchronized public BitSet get(long projectID, String key) {
+        ProjectEntry entry = s_projects.get(projectID);
+        return entry == null ? null : entry.matches.get(key);
+    }
+
+    static synchronized public void put(long projectID, long version, String key, BitSet matches) {
+        ProjectEntry entry = getEntry(projectID);
+        if (entry.version == version) {
+            entry.matches.put(key, matches);
+        }
+    }
+
+    /**
+     * @return the cached indices of all rows or records in sorted order, or
+     *      null if there are none. The result must not be modified.
+     */
+    static synchronized public int[] getSortOrder(long projectID, String key) {
+        ProjectEntry entry = s_projects.get(projectID);
+        return entry == null ? null : entry.sortOrders.get(key);
+    }
+
+    static synchronized public void putSortOrder(long projectID, long version, String key, int[] order) {
+        ProjectEntry entry = getEntry(projectID);
+        if (entry.version == version) {
+            entry.sortOrders.put(key, order);
+        }
+    }
+
+    /**
+     * Drop all cached matches and sort orders of a project, because its rows
+     * have changed.
+     */
+    static synchronized public void flush(long projectID) {
+        ProjectEntry entry = s_projects.get(projectID);
+        if (entry != null) {
+            entry.version++;
+            entry.matches.clear();
+            entry.sortOrders.clear();
+        }
+    }
+
+    /**
+     * Drop all cached matches of a project and forget about it, because it
+     * is being removed from memory.
+     */
+    static synchronized public void dispose(long projectID) {
+        s_projects.remove(projectID);
+    }
+}
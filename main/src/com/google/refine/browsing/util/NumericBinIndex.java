@@ -33,12 +33,12 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.util;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
 import java.util.Properties;
 
 import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.model.Precompute;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 
@@ -52,7 +52,7 @@ import com.google.refine.model.Row;
  * needs to compute the base bins of a numeric range facet, which remain unchanged 
  * as the user interacts with the facet.
  */
-abstract public class NumericBinIndex {
+abstract public class NumericBinIndex implements Precompute {
     
     protected int _totalValueCount;
     protected int _numbericValueCount;
@@ -71,18 +71,33 @@ abstract public class NumericBinIndex {
     protected boolean _hasNumeric = false;
     protected boolean _hasBlank = false;
     
-    abstract protected void iterate(Project project, RowEvaluable rowEvaluable, List<Double> allValues);
+    /**
+     * The numeric values, in the order of the rows. NaN values are skipped,
+     * and may stand for rows without any.
+     */
+    protected double[] _values;
+    protected int _valueCount;
+    
+    abstract protected void iterate(Project project, RowEvaluable rowEvaluable);
     
     public NumericBinIndex(Project project, RowEvaluable rowEvaluable) {
-        _min = Double.POSITIVE_INFINITY;
-        _max = Double.NEGATIVE_INFINITY;
+        _values = new double[Math.max(16, project.rows.size())];
         
-        // TODO: An array of doubles would be more memmory efficient - double[] allValues
-        List<Double> allValues = new ArrayList<Double>();
+        iterate(project, rowEvaluable);
         
-        iterate(project, rowEvaluable, allValues);
-        
-        _numbericValueCount = allValues.size();
+        computeBins();
+    }
+    
+    protected void computeBins() {
+        _min = Double.POSITIVE_INFINITY;
+        _max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < _valueCount; i++) {
+            double d = _values[i];
+            if (!Double.isNaN(d)) {
+                _min = Math.min(_min, d);
+                _max = Math.max(_max, d);
+            }
+        }
         
         if (_min >= _max) {
             _step = 1;
@@ -122,12 +137,25 @@ abstract public class NumericBinIndex {
         }
         
         _bins = new int[(int) Math.round(binCount)];
-        for (double d : allValues) {
-            int bin = Math.max((int) Math.floor((d - _min) / _step),0);
-            _bins[bin]++;
+        for (int i = 0; i < _valueCount; i++) {
+            double d = _values[i];
+            if (!Double.isNaN(d)) {
+                int bin = Math.max((int) Math.floor((d - _min) / _step),0);
+                _bins[bin]++;
+            }
         }
     }
     
+    @Override
+    public long getMemorySize() {
+        return 128 + 4L * _bins.length + (_values == null ? 0 : 8L * _values.length);
+    }
+    
+    @Override
+    public Precompute update(Project project, int[] rowIndices) {
+        return null;
+    }
+    
     public boolean isNumeric() {
         return _numbericValueCount > _totalValueCount / 2;
     }
@@ -167,7 +195,6 @@ abstract public class NumericBinIndex {
     protected void processRow(
         Project         project, 
         RowEvaluable    rowEvaluable,
-        List<Double>     allValues,
         int             rowIndex,
         Row             row,
         Properties         bindings
@@ -186,7 +213,7 @@ abstract public class NumericBinIndex {
                         _hasError = true;
                     } else if (ExpressionUtils.isNonBlankData(v)) {
                         if (v instanceof Number) {
-                            if (processValue(((Number) v).doubleValue(), allValues)) {
+                            if (processValue(((Number) v).doubleValue())) {
                                 _hasNumeric = true;
                             } else {
                                 _hasError = true;
@@ -206,7 +233,7 @@ abstract public class NumericBinIndex {
                         _hasError = true;
                     } else if (ExpressionUtils.isNonBlankData(v)) {
                         if (v instanceof Number) {
-                            if (processValue(((Number) v).doubleValue(), allValues)) {
+                            if (processValue(((Number) v).doubleValue())) {
                                 _hasNumeric = true;
                             } else {
                                 _hasError = true;
@@ -222,7 +249,7 @@ abstract public class NumericBinIndex {
                 _totalValueCount++;
                 
                 if (value instanceof Number) {
-                    if (processValue(((Number) value).doubleValue(), allValues)) {
+                    if (processValue(((Number) value).doubleValue())) {
                         _hasNumeric = true;
                     } else {
                         _hasError = true;
@@ -258,15 +285,21 @@ abstract public class NumericBinIndex {
         }
     }
 
-    protected boolean processValue(double v, List<Double> allValues) {
+    protected boolean processValue(double v) {
         if (!Double.isInfinite(v) && !Double.isNaN(v)) {
-            _min = Math.min(_min, v);
-            _max = Math.max(_max, v);
-            allValues.add(v);
+            addValue(v);
+            _numbericValueCount++;
             return true;
         } else {
             return false;
         }
     }
+    
+    protected void addValue(double v) {
+        if (_valueCount == _values.length) {
+            _values = Arrays.copyOf(_values, _values.length * 2);
+        }
+        _values[_valueCount++] = v;
+    }
 
 }
@@ -33,7 +33,6 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.util;
 
-import java.util.List;
 import java.util.Properties;
 
 import com.google.refine.expr.ExpressionUtils;
@@ -44,11 +43,13 @@ import com.google.refine.model.Row;
 public class NumericBinRecordIndex extends NumericBinIndex {
     public NumericBinRecordIndex(Project project, RowEvaluable rowEvaluable) {
         super(project, rowEvaluable);
+        // only needed to bin them again
+        _values = null;
     }
 
     @Override
     protected void iterate(
-        Project project, RowEvaluable rowEvaluable, List<Double> allValues) {
+        Project project, RowEvaluable rowEvaluable) {
         
         Properties bindings = ExpressionUtils.createBindings(project);
         int count = project.recordModel.getRecordCount();
@@ -61,7 +62,7 @@ public class NumericBinRecordIndex extends NumericBinIndex {
             for (int i = record.fromRowIndex; i < record.toRowIndex; i++) {
                 Row row = project.rows.get(i);
                 
-                processRow(project, rowEvaluable, allValues, i, row, bindings);
+                processRow(project, rowEvaluable, i, row, bindings);
             }
             
             postprocessing();
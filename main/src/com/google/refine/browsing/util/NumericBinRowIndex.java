@@ -33,34 +33,179 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.util;
 
-import java.util.List;
 import java.util.Properties;
 
 import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.model.Precompute;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 
-public class NumericBinRowIndex extends NumericBinIndex {
+public class NumericBinRowIndex extends NumericBinIndex implements Cloneable {
+    static final protected byte ERROR = 1;
+    static final protected byte BLANK = 2;
+    static final protected byte NUMERIC = 4;
+    static final protected byte NON_NUMERIC = 8;
+    static final protected byte COUNTED = 16;
+    
+    /**
+     * What each row holds, kept when no row holds more than one value, so
+     * that rows can be taken out of the bins and evaluated again when their
+     * cells change. Assigned while iterating, from the super constructor.
+     */
+    protected byte[] _rowFlags;
+    protected RowEvaluable _rowEvaluable;
+    
+    /**
+     * The row being evaluated again by {@link #updateRow}, whose value is
+     * written in place rather than appended.
+     */
+    protected boolean _updating;
+    protected int _updatedRow;
+    protected int _updatedValueCount;
+    
     public NumericBinRowIndex(Project project, RowEvaluable rowEvaluable) {
-        
+        this(project, rowEvaluable, false);
+    }
+    
+    /**
+     * @param updatable whether the rows are evaluated independently of each
+     *      other, so that the index can follow edits of a few cells
+     */
+    public NumericBinRowIndex(Project project, RowEvaluable rowEvaluable, boolean updatable) {
         super(project, rowEvaluable);
+        
+        if (updatable && _rowFlags != null) {
+            _rowEvaluable = rowEvaluable;
+        } else {
+            _rowFlags = null;
+            _values = null;
+        }
     }
 
     @Override
     protected void iterate(
-        Project project, RowEvaluable rowEvaluable, List<Double> allValues) {
+        Project project, RowEvaluable rowEvaluable) {
         
         Properties bindings = ExpressionUtils.createBindings(project);
+        _rowFlags = new byte[project.rows.size()];
         
         for (int i = 0; i < project.rows.size(); i++) {
             Row row = project.rows.get(i);
+            int valueCount = _valueCount;
+            int totalValueCount = _totalValueCount;
             
             preprocessing();
             
-            processRow(project, rowEvaluable, allValues, i, row, bindings);
+            processRow(project, rowEvaluable, i, row, bindings);
             
             postprocessing();
+            
+            if (_rowFlags != null) {
+                if (_valueCount - valueCount > 1 || _totalValueCount - totalValueCount > 1) {
+                    _rowFlags = null;
+                } else {
+                    if (_valueCount == valueCount) {
+                        // keeps the values one per row
+                        addValue(Double.NaN);
+                    }
+                    _rowFlags[i] = getRowFlags(_totalValueCount > totalValueCount);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Evaluates the rows again and bins all values anew, without evaluating
+     * the other rows. The index is left as it was for those reading it.
+     */
+    @Override
+    public Precompute update(Project project, int[] rowIndices) {
+        // past a tenth of the rows, computing the index again when needed is as fast
+        if (_rowFlags == null || _rowFlags.length != project.rows.size() ||
+                rowIndices.length > Math.max(1, _rowFlags.length / 10)) {
+            return null;
+        }
+        
+        NumericBinRowIndex index;
+        try {
+            index = (NumericBinRowIndex) clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+        index._values = _values.clone();
+        index._rowFlags = _rowFlags.clone();
+        
+        Properties bindings = ExpressionUtils.createBindings(project);
+        for (int rowIndex : rowIndices) {
+            if (!index.updateRow(project, rowIndex, bindings)) {
+                return null;
+            }
+        }
+        index.computeBins();
+        return index;
+    }
+    
+    protected boolean updateRow(Project project, int rowIndex, Properties bindings) {
+        byte flags = _rowFlags[rowIndex];
+        if ((flags & COUNTED) != 0) {
+            _totalValueCount--;
         }
+        if (!Double.isNaN(_values[rowIndex])) {
+            _numbericValueCount--;
+        }
+        if ((flags & ERROR) != 0) {
+            _errorRowCount--;
+        }
+        if ((flags & BLANK) != 0) {
+            _blankRowCount--;
+        }
+        if ((flags & NUMERIC) != 0) {
+            _numericRowCount--;
+        }
+        if ((flags & NON_NUMERIC) != 0) {
+            _nonNumericRowCount--;
+        }
+        
+        // the value of the row is written in its place, see addValue
+        _values[rowIndex] = Double.NaN;
+        _updating = true;
+        _updatedRow = rowIndex;
+        _updatedValueCount = 0;
+        int totalValueCount = _totalValueCount;
+        
+        preprocessing();
+        processRow(project, _rowEvaluable, rowIndex, project.rows.get(rowIndex), bindings);
+        postprocessing();
+        
+        _updating = false;
+        if (_updatedValueCount > 1 || _totalValueCount - totalValueCount > 1) {
+            return false;
+        }
+        _rowFlags[rowIndex] = getRowFlags(_totalValueCount > totalValueCount);
+        return true;
+    }
+    
+    @Override
+    protected void addValue(double v) {
+        if (_updating) {
+            _values[_updatedRow] = v;
+            _updatedValueCount++;
+        } else {
+            super.addValue(v);
+        }
+    }
+    
+    protected byte getRowFlags(boolean counted) {
+        return (byte) ((_hasError ? ERROR : 0) |
+                (_hasBlank ? BLANK : 0) |
+                (_hasNumeric ? NUMERIC : 0) |
+                (_hasNonNumeric ? NON_NUMERIC : 0) |
+                (counted ? COUNTED : 0));
+    }
+    
+    @Override
+    public long getMemorySize() {
+        return super.getMemorySize() + (_rowFlags == null ? 0 : _rowFlags.length);
     }
 
 }
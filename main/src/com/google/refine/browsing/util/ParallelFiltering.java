@@ -0,0 +1,77 @@
+package com.google.refine.browsing.util;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import com.google.refine.preference.PreferenceStore;
+
+/**
+ * Evaluates row or record filters over a project in chunks on the common
+ * fork/join pool, recording the matching indices in a bit set. Visitors are
+ * then fed from the bit set sequentially and in order, so they don't need to
+ * be thread-safe and see exactly the same rows as with a sequential scan.
+ * <p>
+ * This is opt-in through the "browsing.parallel" preference, since some
+ * expression languages and functions are not safe to evaluate concurrently.
+ */
+public class ParallelFiltering {
+    static final public String PREFERENCE_KEY = "browsing.parallel";
+
+    /**
+     * Below this many rows or records the cost of forking outweighs the gain.
+     */
+    static final public int MIN_COUNT = 10000;
+
+    /**
+     * Number of rows or records evaluated by a single task. Must be a multiple
+     * of 64 so that tasks write to disjoint words of the bit set.
+     */
+    static final public int CHUNK_SIZE = 64 * 64;
+
+    static public boolean isEnabled(int count) {
+        return count >= MIN_COUNT && PreferenceStore.getBooleanPreference(PREFERENCE_KEY, false);
+    }
+
+    /**
+     * @param count number of rows or records to test
+     * @param predicate test for a single row or record index
+     * @return the indices for which the predicate held
+     */
+    static public BitSet match(int count, IntPredicate predicate) {
+        return match(count, new IntPredicate[] { predicate }, true)[0];
+    }
+
+    /**
+     * Tests several predicates in a single pass, so that each row or record
+     * is only fetched once whatever the number of predicates.
+     *
+     * @param count number of rows or records to test
+     * @param predicates tests for a single row or record index
+     * @param parallel whether chunks may be evaluated concurrently
+     * @return for each predicate, the indices for which it held
+     */
+    static public BitSet[] match(int count, IntPredicate[] predicates, boolean parallel) {
+        final long[][] words = new long[predicates.length][(count + 63) >>> 6];
+        int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        IntStream stream = IntStream.range(0, chunks);
+        (parallel ? stream.parallel() : stream).forEach(chunk -> {
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(count, from + CHUNK_SIZE);
+            for (int i = from; i < to; i++) {
+                for (int p = 0; p < predicates.length; p++) {
+                    if (predicates[p].test(i)) {
+                        words[p][i >>> 6] |= 1L << i;
+                    }
+                }
+            }
+        });
+
+        BitSet[] matches = new BitSet[predicates.length];
+        for (int p = 0; p < predicates.length; p++) {
+            matches[p] = BitSet.valueOf(words[p]);
+        }
+        return matches;
+    }
+}
@@ -41,6 +41,7 @@ import java.util.List;
 import java.util.Properties;
 
 import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.model.Precompute;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 
@@ -54,7 +55,7 @@ import com.google.refine.model.Row;
  * needs to compute the base bins of a temporal range facet, which remain unchanged 
  * as the user interacts with the facet.
  */
-abstract public class TimeBinIndex {
+abstract public class TimeBinIndex implements Precompute {
     
     protected int _totalValueCount;
     protected int _timeValueCount;
@@ -124,6 +125,16 @@ abstract public class TimeBinIndex {
         }
     }
     
+    @Override
+    public long getMemorySize() {
+        return 128 + 4L * _bins.length;
+    }
+    
+    @Override
+    public Precompute update(Project project, int[] rowIndices) {
+        return null;
+    }
+    
     public boolean isTemporal() {
         return _timeValueCount > _totalValueCount / 2;
     }
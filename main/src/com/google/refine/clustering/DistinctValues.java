@@ -0,0 +1,138 @@
+package com.google.refine.clustering;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Record;
+import com.google.refine.model.Row;
+
+/**
+ * The distinct values of a column in the rows matched by an engine's facets,
+ * each with the number of rows holding it. Clusterers key or compare these
+ * rather than the rows, so that a value is only processed once however many
+ * rows hold it.
+ * <p>
+ * The rows are split into partitions whose values are counted in parallel,
+ * on the common fork/join pool, and then merged in order, so that values
+ * are listed in the order of their first occurrence.
+ */
+public class DistinctValues {
+    static final public int PARTITION_SIZE = 16384;
+
+    final public String[] values;
+    final public int[] counts;
+
+    protected DistinctValues(String[] values, int[] counts) {
+        this.values = values;
+        this.counts = counts;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    static public DistinctValues collect(final Project project, Engine engine, final int cellIndex) {
+        final BitSet rows = getMatchingRows(project, engine);
+
+        List<Callable<Map<String, int[]>>> tasks = new ArrayList<Callable<Map<String, int[]>>>();
+        for (int from = 0; from < project.rows.size(); from += PARTITION_SIZE) {
+            final int start = from;
+            final int end = Math.min(from + PARTITION_SIZE, project.rows.size());
+            tasks.add(new Callable<Map<String, int[]>>() {
+                @Override
+                public Map<String, int[]> call() {
+                    return countValues(project, rows, cellIndex, start, end);
+                }
+            });
+        }
+
+        Map<String, int[]> counts = new LinkedHashMap<String, int[]>();
+        for (Map<String, int[]> partition : invokeAll(tasks)) {
+            for (Map.Entry<String, int[]> entry : partition.entrySet()) {
+                int[] count = counts.get(entry.getKey());
+                if (count == null) {
+                    counts.put(entry.getKey(), entry.getValue());
+                } else {
+                    count[0] += entry.getValue()[0];
+                }
+            }
+        }
+
+        String[] values = new String[counts.size()];
+        int[] valueCounts = new int[counts.size()];
+        int i = 0;
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            values[i] = entry.getKey();
+            valueCounts[i++] = entry.getValue()[0];
+        }
+        return new DistinctValues(values, valueCounts);
+    }
+
+    /**
+     * Runs tasks on the common fork/join pool.
+     *
+     * @return their results, in the order of the tasks
+     */
+    static public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ?
+                    (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * @return the rows matched by the engine, those of the matched records
+     *      in record mode
+     */
+    static protected BitSet getMatchingRows(Project project, Engine engine) {
+        BitSet matches = engine.getMatchingIndices();
+        if (engine.getMode() == Engine.Mode.RowBased) {
+            return matches;
+        }
+
+        BitSet rows = new BitSet(project.rows.size());
+        for (int r = matches.nextSetBit(0); r >= 0; r = matches.nextSetBit(r + 1)) {
+            Record record = project.recordModel.getRecord(r);
+            rows.set(record.fromRowIndex, record.toRowIndex);
+        }
+        return rows;
+    }
+
+    static protected Map<String, int[]> countValues(Project project, BitSet rows, int cellIndex, int from, int to) {
+        Map<String, int[]> counts = new LinkedHashMap<String, int[]>();
+        for (int r = rows.nextSetBit(from); r >= 0 && r < to; r = rows.nextSetBit(r + 1)) {
+            Row row = project.rows.get(r);
+            Cell cell = row.getCell(cellIndex);
+            if (cell != null && cell.value != null) {
+                Object v = cell.value;
+                String s = (v instanceof String) ? ((String) v) : v.toString();
+                int[] count = counts.get(s);
+                if (count == null) {
+                    counts.put(s, new int[] { 1 });
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+        return counts;
+    }
+}
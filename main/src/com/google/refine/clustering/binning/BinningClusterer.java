@@ -33,16 +33,14 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.clustering.binning;
 
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -51,22 +49,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.refine.browsing.Engine;
-import com.google.refine.browsing.FilteredRows;
-import com.google.refine.browsing.RowVisitor;
 import com.google.refine.clustering.Clusterer;
-import com.google.refine.model.Cell;
+import com.google.refine.clustering.DistinctValues;
 import com.google.refine.model.Project;
-import com.google.refine.model.Row;
 
 public class BinningClusterer extends Clusterer {
 
+    /**
+     * Number of distinct values keyed by a single task.
+     */
+    static final public int KEYING_CHUNK_SIZE = 2048;
+
     private Keyer _keyer;
     
     static final protected Map<String, Keyer> _keyers = new HashMap<String, Keyer>();
 
     final static Logger logger = LoggerFactory.getLogger("binning_clusterer");
     
-    List<Map<String,Integer>> _clusters;
+    DistinctValues _values;
+    
+    /**
+     * Clusters of more than one value, as indices into _values
+     */
+    List<int[]> _clusters;
      
     static {
         _keyers.put("fingerprint", new FingerprintKeyer());
@@ -78,132 +83,137 @@ public class BinningClusterer extends Clusterer {
         _keyers.put("cologne-phonetic", new ColognePhoneticKeyer());
     }
 
-    class BinningRowVisitor implements RowVisitor {
+    @Override
+    public void initializeFromJSON(Project project, JSONObject o) throws Exception {
+        super.initializeFromJSON(project, o);
+        _keyer = _keyers.get(o.getString("function").toLowerCase());
+    }
 
-        Keyer _keyer;
-        Object[] _params;
-        JSONObject _config;
-        
-        Map<String,Map<String,Integer>> _map = new HashMap<String,Map<String,Integer>>();
+    /**
+     * Keys each distinct value once, in parallel, and groups the values by
+     * their keys.
+     */
+    @Override
+    public void computeClusters(Engine engine) {
+        _values = DistinctValues.collect(_project, engine, _colindex);
+        String[] keys = computeKeys(_values.values, getParams());
         
-        public BinningRowVisitor(Keyer k, JSONObject o) {
-            _keyer = k;
-            _config = o;
-            if (k instanceof NGramFingerprintKeyer) {
-                try {
-                    int size = _config.getJSONObject("params").getInt("ngram-size");
-                    logger.debug("Using ngram size: {}", size);
-                    _params = new Object[1];
-                    _params[0] = size;
-                } catch (JSONException e) {
-                    //Refine.warn("No params specified, using default");
-                }
+        // number the keys, then list the values of each key by counting sort
+        Map<String, Integer> keyIndices = new HashMap<String, Integer>();
+        int[] keyOfValue = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Integer k = keyIndices.get(keys[i]);
+            if (k == null) {
+                k = keyIndices.size();
+                keyIndices.put(keys[i], k);
             }
+            keyOfValue[i] = k;
         }
         
-        @Override
-        public void start(Project project) {
-            // nothing to do
+        int[] offsets = new int[keyIndices.size() + 1];
+        for (int k : keyOfValue) {
+            offsets[k + 1]++;
         }
-
-        @Override
-        public void end(Project project) {
-            // nothing to do
+        for (int k = 0; k < keyIndices.size(); k++) {
+            offsets[k + 1] += offsets[k];
+        }
+        int[] valuesByKey = new int[keys.length];
+        int[] next = offsets.clone();
+        for (int i = 0; i < keys.length; i++) {
+            valuesByKey[next[keyOfValue[i]]++] = i;
         }
         
-        @Override
-        public boolean visit(Project project, int rowIndex, Row row) {
-            Cell cell = row.getCell(_colindex);
-            if (cell != null && cell.value != null) {
-                Object v = cell.value;
-                String s = (v instanceof String) ? ((String) v) : v.toString();
-                String key = _keyer.key(s,_params);
-                if (_map.containsKey(key)) {
-                    Map<String,Integer> m = _map.get(key);
-                    if (m.containsKey(s)) {
-                        m.put(s, m.get(s) + 1);
-                    } else {
-                        m.put(s,1);
-                    }
-                } else {
-                    Map<String,Integer> m = new TreeMap<String,Integer>();
-                    m.put(s,1);
-                    _map.put(key, m);
-                }
+        final int[] counts = _values.counts;
+        final String[] values = _values.values;
+        Comparator<Integer> byCount = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int c = counts[b] - counts[a];
+                return c != 0 ? c : values[a].compareTo(values[b]);
             }
-            return false;
-        }
+        };
         
-        public Map<String,Map<String,Integer>> getMap() {
-            return _map;
-        }
-    }
-            
-    public static class SizeComparator implements Comparator<Map<String,Integer>>, Serializable {
-        private static final long serialVersionUID = -1390696157208674054L;
-        @Override
-        public int compare(Map<String,Integer> o1, Map<String,Integer> o2) {
-            int s1 = o1.size();
-            int s2 = o2.size();
-            if (o1 == o2) {
-                int total1 = 0;
-                for (int i : o1.values()) {
-                    total1 += i;
+        List<int[]> clusters = new ArrayList<int[]>();
+        final Map<int[], Integer> totals = new HashMap<int[], Integer>();
+        for (int k = 0; k < keyIndices.size(); k++) {
+            if (offsets[k + 1] - offsets[k] > 1) {
+                List<Integer> members = new ArrayList<Integer>(offsets[k + 1] - offsets[k]);
+                int total = 0;
+                for (int j = offsets[k]; j < offsets[k + 1]; j++) {
+                    members.add(valuesByKey[j]);
+                    total += counts[valuesByKey[j]];
                 }
-                int total2 = 0;
-                for (int i : o2.values()) {
-                    total2 += i;
+                Collections.sort(members, byCount);
+                
+                int[] cluster = new int[members.size()];
+                for (int j = 0; j < cluster.length; j++) {
+                    cluster[j] = members.get(j);
                 }
-                return total2 - total1;
-            } else {
-                return s2 - s1;
+                clusters.add(cluster);
+                totals.put(cluster, total);
             }
         }
+        
+        // the clusters with the most values first, then those with the most rows
+        Collections.sort(clusters, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                int c = o2.length - o1.length;
+                return c != 0 ? c : totals.get(o2) - totals.get(o1);
+            }
+        });
+        _clusters = clusters;
     }
-
-    public static class EntriesComparator implements Comparator<Entry<String,Integer>>, Serializable {
-        private static final long serialVersionUID = 2763378036791777964L;
-        @Override
-        public int compare(Entry<String,Integer> o1, Entry<String,Integer> o2) {
-            return o2.getValue() - o1.getValue();
+    
+    protected Object[] getParams() {
+        if (_keyer instanceof NGramFingerprintKeyer) {
+            try {
+                int size = _config.getJSONObject("params").getInt("ngram-size");
+                logger.debug("Using ngram size: {}", size);
+                return new Object[] { size };
+            } catch (JSONException e) {
+                //Refine.warn("No params specified, using default");
+            }
         }
+        return null;
     }
     
-    @Override
-    public void initializeFromJSON(Project project, JSONObject o) throws Exception {
-        super.initializeFromJSON(project, o);
-        _keyer = _keyers.get(o.getString("function").toLowerCase());
-    }
-
-    @Override
-    public void computeClusters(Engine engine) {
-        BinningRowVisitor visitor = new BinningRowVisitor(_keyer,_config);
-        FilteredRows filteredRows = engine.getAllFilteredRows();
-        filteredRows.accept(_project, visitor);
-     
-        Map<String,Map<String,Integer>> map = visitor.getMap();
-        _clusters = new ArrayList<Map<String,Integer>>(map.values());
-        Collections.sort(_clusters, new SizeComparator());
+    /**
+     * Keys values in chunks on the common fork/join pool, since phonetic
+     * keyers in particular are costly. Keyers must then be thread-safe.
+     */
+    protected String[] computeKeys(final String[] values, final Object[] params) {
+        final String[] keys = new String[values.length];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int from = 0; from < values.length; from += KEYING_CHUNK_SIZE) {
+            final int start = from;
+            final int end = Math.min(from + KEYING_CHUNK_SIZE, values.length);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = start; i < end; i++) {
+                        keys[i] = _keyer.key(values[i], params);
+                    }
+                    return null;
+                }
+            });
+        }
+        DistinctValues.invokeAll(tasks);
+        return keys;
     }
     
     @Override
     public void write(JSONWriter writer, Properties options) throws JSONException {
-        EntriesComparator c = new EntriesComparator();
-        
         writer.array();        
-        for (Map<String,Integer> m : _clusters) {
-            if (m.size() > 1) {
-                writer.array();        
-                List<Entry<String,Integer>> entries = new ArrayList<Entry<String,Integer>>(m.entrySet());
-                Collections.sort(entries,c);
-                for (Entry<String,Integer> e : entries) {
-                    writer.object();
-                    writer.key("v"); writer.value(e.getKey());
-                    writer.key("c"); writer.value(e.getValue());
-                    writer.endObject();
-                }
-                writer.endArray();
+        for (int[] cluster : _clusters) {
+            writer.array();        
+            for (int i : cluster) {
+                writer.object();
+                writer.key("v"); writer.value(_values.values[i]);
+                writer.key("c"); writer.value(_values.counts[i]);
+                writer.endObject();
             }
+            writer.endArray();
         }
         writer.endArray();
     }
@@ -0,0 +1,274 @@
+package com.google.refine.clustering.knn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+import com.google.refine.clustering.DistinctValues;
+
+import edu.mit.simile.vicino.distances.Distance;
+import edu.mit.simile.vicino.distances.LevenshteinDistance;
+
+/**
+ * Finds the clusters of values lying within a radius of each other. Only
+ * values sharing an n-gram, as vicino's NGramClusterer blocks them, are
+ * compared: an inverted index maps each n-gram to the values holding it, and
+ * the candidates of each value are gathered from its n-grams, so that each
+ * pair is measured at most once however many n-grams it shares. N-grams held
+ * by more than a maximum number of values are left out, as they are too
+ * common to tell anything.
+ * <p>
+ * Candidates are measured in parallel on the common fork/join pool, and
+ * values within the radius of each other end up in the same cluster.
+ */
+public class NGramBlockingClusterer {
+    static final public int DEFAULT_MAX_BLOCK_SIZE = 1000;
+
+    static final private int CHUNK_SIZE = 512;
+
+    static final private Pattern extra = Pattern.compile("\\p{Cntrl}|\\p{Punct}");
+    static final private Pattern whitespace = Pattern.compile("\\p{Space}+");
+
+    final protected Distance _distance;
+    final protected double _radius;
+    final protected int _ngramSize;
+    final protected int _maxBlockSize;
+
+    public NGramBlockingClusterer(Distance distance, double radius, int ngramSize, int maxBlockSize) {
+        _distance = distance;
+        _radius = radius;
+        _ngramSize = ngramSize;
+        _maxBlockSize = maxBlockSize;
+    }
+
+    /**
+     * @return the clusters of more than one value, as indices into values
+     */
+    public List<int[]> getClusters(final String[] values) {
+        final int[][] blocksOfValue = index(values);
+        final int[][] blocks = _blocks;
+
+        // each task has its own array of values met, so there are only a few per thread
+        int chunkSize = Math.max(CHUNK_SIZE, values.length / (ForkJoinPool.getCommonPoolParallelism() * 8));
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+        for (int from = 0; from < values.length; from += chunkSize) {
+            final int start = from;
+            final int end = Math.min(from + chunkSize, values.length);
+            tasks.add(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return findPairs(values, blocks, blocksOfValue, start, end);
+                }
+            });
+        }
+
+        DisjointSets sets = new DisjointSets(values.length);
+        for (int[] pairs : DistinctValues.invokeAll(tasks)) {
+            for (int i = 1; i < pairs[0]; i += 2) {
+                sets.union(pairs[i], pairs[i + 1]);
+            }
+        }
+        return sets.getSets();
+    }
+
+    /**
+     * The values of each n-gram, in ascending order, set by index().
+     */
+    protected int[][] _blocks;
+
+    /**
+     * Builds the inverted index of the values' n-grams.
+     *
+     * @return the blocks of each value, leaving out those over the maximum size
+     */
+    protected int[][] index(final String[] values) {
+        List<Callable<String[][]>> tasks = new ArrayList<Callable<String[][]>>();
+        for (int from = 0; from < values.length; from += CHUNK_SIZE) {
+            final int start = from;
+            final int end = Math.min(from + CHUNK_SIZE, values.length);
+            tasks.add(new Callable<String[][]>() {
+                @Override
+                public String[][] call() {
+                    String[][] ngrams = new String[end - start][];
+                    for (int i = start; i < end; i++) {
+                        ngrams[i - start] = tokenize(values[i]);
+                    }
+                    return ngrams;
+                }
+            });
+        }
+
+        Map<String, Integer> blockIndices = new HashMap<String, Integer>();
+        List<int[]> blocks = new ArrayList<int[]>();
+        int[][] blocksOfValue = new int[values.length][];
+        int i = 0;
+        for (String[][] ngrams : DistinctValues.invokeAll(tasks)) {
+            for (String[] valueNgrams : ngrams) {
+                int[] valueBlocks = new int[valueNgrams.length];
+                for (int g = 0; g < valueNgrams.length; g++) {
+                    Integer b = blockIndices.get(valueNgrams[g]);
+                    if (b == null) {
+                        b = blocks.size();
+                        blockIndices.put(valueNgrams[g], b);
+                        blocks.add(new int[] { 0 });
+                    }
+                    // a block is its length followed by its values
+                    int[] block = blocks.get(b);
+                    if (block[0] + 1 == block.length) {
+                        block = Arrays.copyOf(block, block.length * 2);
+                        blocks.set(b, block);
+                    }
+                    block[++block[0]] = i;
+                    valueBlocks[g] = b;
+                }
+                blocksOfValue[i++] = valueBlocks;
+            }
+        }
+
+        _blocks = new int[blocks.size()][];
+        for (int b = 0; b < _blocks.length; b++) {
+            int[] block = blocks.get(b);
+            _blocks[b] = Arrays.copyOfRange(block, 1, block[0] + 1);
+        }
+        for (int v = 0; v < blocksOfValue.length; v++) {
+            int kept = 0;
+            for (int b : blocksOfValue[v]) {
+                if (_blocks[b].length > 1 && _blocks[b].length <= _maxBlockSize) {
+                    blocksOfValue[v][kept++] = b;
+                }
+            }
+            blocksOfValue[v] = Arrays.copyOf(blocksOfValue[v], kept);
+        }
+        return blocksOfValue;
+    }
+
+    /**
+     * As vicino's NGramTokenizer: the distinct n-grams of the value once
+     * trimmed, without punctuation and control characters, with runs of
+     * white space collapsed, and lower-cased.
+     */
+    protected String[] tokenize(String s) {
+        s = s.trim();
+        s = extra.matcher(s).replaceAll("");
+        s = whitespace.matcher(s).replaceAll(" ");
+        s = s.toLowerCase();
+
+        List<String> ngrams = new ArrayList<String>();
+        for (int i = 0; i + _ngramSize <= s.length(); i++) {
+            String ngram = s.substring(i, i + _ngramSize);
+            if (!ngrams.contains(ngram)) {
+                ngrams.add(ngram);
+            }
+        }
+        return ngrams.toArray(new String[ngrams.size()]);
+    }
+
+    /**
+     * Measures the distance from each value of a range to the later values
+     * sharing one of its blocks.
+     *
+     * @return the number of ints used followed by the pairs found within the radius
+     */
+    protected int[] findPairs(String[] values, int[][] blocks, int[][] blocksOfValue, int from, int to) {
+        // the last value each candidate was met for, plus one
+        int[] seen = new int[values.length];
+        int[] pairs = new int[] { 1, 0, 0, 0 };
+        boolean bounded = _radius >= 0 && _distance instanceof LevenshteinDistance;
+
+        for (int i = from; i < to; i++) {
+            String a = values[i];
+            for (int b : blocksOfValue[i]) {
+                int[] block = blocks[b];
+                // the values of a block are in ascending order
+                for (int k = block.length - 1; k >= 0 && block[k] > i; k--) {
+                    int j = block[k];
+                    if (seen[j] == i + 1) {
+                        continue;
+                    }
+                    seen[j] = i + 1;
+
+                    String c = values[j];
+                    // the edit distance is at least the difference of lengths
+                    if (bounded && Math.abs(a.length() - c.length()) > _radius) {
+                        continue;
+                    }
+                    double d = _distance.d(a, c);
+                    if (d <= _radius || _radius < 0) {
+                        if (pairs[0] + 2 > pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                        }
+                        pairs[pairs[0]++] = i;
+                        pairs[pairs[0]++] = j;
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Union-find over int elements, with path halving and union by size.
+     */
+    static public class DisjointSets {
+        final protected int[] parents;
+        final protected int[] sizes;
+
+        public DisjointSets(int size) {
+            parents = new int[size];
+            sizes = new int[size];
+            for (int i = 0; i < size; i++) {
+                parents[i] = i;
+                sizes[i] = 1;
+            }
+        }
+
+        public int find(int i) {
+            while (parents[i] != i) {
+                parents[i] = parents[parents[i]];
+                i = parents[i];
+            }
+            return i;
+        }
+
+        public void union(int i, int j) {
+            i = find(i);
+            j = find(j);
+            if (i != j) {
+                if (sizes[i] < sizes[j]) {
+                    int t = i;
+                    i = j;
+                    j = t;
+                }
+                parents[j] = i;
+                sizes[i] += sizes[j];
+            }
+        }
+
+        /**
+         * @return the sets of more than one element, each in ascending order
+         */
+        public List<int[]> getSets() {
+            Map<Integer, int[]> sets = new HashMap<Integer, int[]>();
+            List<int[]> result = new ArrayList<int[]>();
+            int[] filled = new int[parents.length];
+            for (int i = 0; i < parents.length; i++) {
+                int root = find(i);
+                if (sizes[root] > 1) {
+                    int[] set = sets.get(root);
+                    if (set == null) {
+                        set = new int[sizes[root]];
+                        sets.put(root, set);
+                        result.add(set);
+                    }
+                    set[filled[root]++] = i;
+                }
+            }
+            return result;
+        }
+    }
+}
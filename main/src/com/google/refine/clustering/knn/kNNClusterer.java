@@ -33,17 +33,13 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.clustering.knn;
 
-import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Set;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -52,15 +48,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.refine.browsing.Engine;
-import com.google.refine.browsing.FilteredRows;
-import com.google.refine.browsing.RowVisitor;
 import com.google.refine.clustering.Clusterer;
-import com.google.refine.model.Cell;
+import com.google.refine.clustering.DistinctValues;
 import com.google.refine.model.Project;
-import com.google.refine.model.Row;
 
-import edu.mit.simile.vicino.clustering.NGramClusterer;
-import edu.mit.simile.vicino.clustering.VPTreeClusterer;
 import edu.mit.simile.vicino.distances.BZip2Distance;
 import edu.mit.simile.vicino.distances.Distance;
 import edu.mit.simile.vicino.distances.GZipDistance;
@@ -77,9 +68,12 @@ public class kNNClusterer extends Clusterer {
     
     static final protected Map<String, Distance> _distances = new HashMap<String, Distance>();
 
-    List<Set<Serializable>> _clusters;
+    DistinctValues _values;
 
-    Map<Serializable, Integer> _counts = new HashMap<Serializable, Integer>();
+    /**
+     * Clusters of more than one value, as indices into _values
+     */
+    List<int[]> _clusters;
 
     final static Logger logger = LoggerFactory.getLogger("kNN_clusterer");
     
@@ -94,157 +88,93 @@ public class kNNClusterer extends Clusterer {
         _distances.put("ppm", new PPMDistance());
     }
 
-    class VPTreeClusteringRowVisitor implements RowVisitor {
-
-        Distance _distance;
-        JSONObject _config;
-        VPTreeClusterer _clusterer;
-        double _radius = 1.0f;
-        
-        public VPTreeClusteringRowVisitor(Distance d, JSONObject o) {
-            _distance = d;
-            _config = o;
-            _clusterer = new VPTreeClusterer(_distance);
-            try {
-                JSONObject params = o.getJSONObject("params");
-                _radius = params.getDouble("radius");
-            } catch (JSONException e) {
-                //Refine.warn("No parameters found, using defaults");
-            }
-        }
-        
-        @Override
-        public void start(Project project) {
-            // nothing to do
-        }
-
-        @Override
-        public void end(Project project) {
-            // nothing to do
-        }
-        
-        @Override
-        public boolean visit(Project project, int rowIndex, Row row) {
-            Cell cell = row.getCell(_colindex);
-            if (cell != null && cell.value != null) {
-                Object v = cell.value;
-                String s = (v instanceof String) ? ((String) v) : v.toString();
-                _clusterer.populate(s);
-                count(s);
-            }
-            return false;
-        }
-        
-        public List<Set<Serializable>> getClusters() {
-            return _clusterer.getClusters(_radius);
-        }
-    }
-
-    class BlockingClusteringRowVisitor implements RowVisitor {
-
-        Distance _distance;
-        JSONObject _config;
-        double _radius = 1.0d;
-        int _blockingNgramSize = 6;
-        HashSet<String> _data;
-        NGramClusterer _clusterer;
-        
-        public BlockingClusteringRowVisitor(Distance d, JSONObject o) {
-            _distance = d;
-            _config = o;
-            _data = new HashSet<String>();
-            try {
-                JSONObject params = o.getJSONObject("params");
-                _radius = params.getDouble("radius");
-                logger.debug("Use radius: {}", _radius);
-                _blockingNgramSize = params.getInt("blocking-ngram-size");
-                logger.debug("Use blocking ngram size: {}",_blockingNgramSize);
-            } catch (JSONException e) {
-                logger.debug("No parameters found, using defaults");
-            }
-            _clusterer = new NGramClusterer(_distance, _blockingNgramSize);
-        }
-        
-        @Override
-        public void start(Project project) {
-            // nothing to do
-        }
-
-        @Override
-        public void end(Project project) {
-            // nothing to do
-        }
-        
-        @Override
-        public boolean visit(Project project, int rowIndex, Row row) {
-            Cell cell = row.getCell(_colindex);
-            if (cell != null && cell.value != null) {
-                Object v = cell.value;
-                String s = (v instanceof String) ? ((String) v) : v.toString().intern();
-                _clusterer.populate(s);
-                count(s);
-            }
-            return false;
-        }
-        
-        public List<Set<Serializable>> getClusters() {
-            return _clusterer.getClusters(_radius);
-        }
-    }
-        
     @Override
     public void initializeFromJSON(Project project, JSONObject o) throws Exception {
         super.initializeFromJSON(project, o);
         _distance = _distances.get(o.getString("function").toLowerCase());
     }
 
+    /**
+     * Compares the distinct values sharing an n-gram, rather than every row,
+     * and joins the values within the radius of each other into clusters.
+     */
     @Override
     public void computeClusters(Engine engine) {
-        //VPTreeClusteringRowVisitor visitor = new VPTreeClusteringRowVisitor(_distance,_config);
-        BlockingClusteringRowVisitor visitor = new BlockingClusteringRowVisitor(_distance,_config);
-        FilteredRows filteredRows = engine.getAllFilteredRows();
-        filteredRows.accept(_project, visitor);
-     
-        _clusters = visitor.getClusters();
+        double radius = 1.0d;
+        int blockingNgramSize = 6;
+        int maxBlockSize = NGramBlockingClusterer.DEFAULT_MAX_BLOCK_SIZE;
+        try {
+            JSONObject params = _config.getJSONObject("params");
+            radius = params.getDouble("radius");
+            logger.debug("Use radius: {}", radius);
+            blockingNgramSize = params.getInt("blocking-ngram-size");
+            logger.debug("Use blocking ngram size: {}", blockingNgramSize);
+            maxBlockSize = params.optInt("max-block-size", maxBlockSize);
+        } catch (JSONException e) {
+            logger.debug("No parameters found, using defaults");
+        }
+
+        _values = DistinctValues.collect(_project, engine, _colindex);
+        NGramBlockingClusterer clusterer =
+                new NGramBlockingClusterer(_distance, radius, blockingNgramSize, maxBlockSize);
+        List<int[]> clusters = clusterer.getClusters(_values.values);
+
+        final int[] counts = _values.counts;
+        final String[] values = _values.values;
+        final Map<int[], Integer> totals = new HashMap<int[], Integer>();
+        for (int[] cluster : clusters) {
+            int total = 0;
+            for (int i : cluster) {
+                total += counts[i];
+            }
+            totals.put(cluster, total);
+            sortByCount(cluster, counts, values);
+        }
+
+        // the clusters with the most values first, then those with the most rows
+        Collections.sort(clusters, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                int c = o2.length - o1.length;
+                return c != 0 ? c : totals.get(o2) - totals.get(o1);
+            }
+        });
+        _clusters = clusters;
     }
 
-    public static class ValuesComparator implements Comparator<Entry<Serializable,Integer>>, Serializable {
-        private static final long serialVersionUID = 204469656070583155L;
-        @Override
-        public int compare(Entry<Serializable,Integer> o1, Entry<Serializable,Integer> o2) {
-            return o2.getValue() - o1.getValue();
+    /**
+     * Sorts the values of a cluster by decreasing count, then by value.
+     */
+    static protected void sortByCount(int[] cluster, final int[] counts, final String[] values) {
+        Integer[] members = new Integer[cluster.length];
+        for (int i = 0; i < cluster.length; i++) {
+            members[i] = cluster[i];
+        }
+        Arrays.sort(members, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int c = counts[b] - counts[a];
+                return c != 0 ? c : values[a].compareTo(values[b]);
+            }
+        });
+        for (int i = 0; i < cluster.length; i++) {
+            cluster[i] = members[i];
         }
     }
-    
+
     @Override
     public void write(JSONWriter writer, Properties options) throws JSONException {
         writer.array();        
-        for (Set<Serializable> m : _clusters) {
-            if (m.size() > 1) {
-                Map<Serializable,Integer> internal_counts = new HashMap<Serializable,Integer>();
-                for (Serializable s : m) {
-                    internal_counts.put(s,_counts.get(s));
-                }
-                List<Entry<Serializable,Integer>> values = new ArrayList<Entry<Serializable,Integer>>(internal_counts.entrySet());
-                Collections.sort(values, new ValuesComparator());
-                writer.array();        
-                for (Entry<Serializable,Integer> e : values) {
-                    writer.object();
-                    writer.key("v"); writer.value(e.getKey());
-                    writer.key("c"); writer.value(e.getValue());
-                    writer.endObject();
-                }
-                writer.endArray();
+        for (int[] cluster : _clusters) {
+            writer.array();        
+            for (int i : cluster) {
+                writer.object();
+                writer.key("v"); writer.value(_values.values[i]);
+                writer.key("c"); writer.value(_values.counts[i]);
+                writer.endObject();
             }
+            writer.endArray();
         }
         writer.endArray();
     }
-    
-    private void count(Serializable s) {
-        if (_counts.containsKey(s)) {
-            _counts.put(s, _counts.get(s) + 1);
-        } else {
-            _counts.put(s, 1);
-        }
-    }
 }
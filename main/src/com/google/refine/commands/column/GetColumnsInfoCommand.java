@@ -95,7 +95,7 @@ public class GetColumnsInfoCommand extends Command {
         }
         NumericBinIndex index = (NumericBinIndex) column.getPrecompute(key);
         if (index == null) {
-            index = new NumericBinRowIndex(project, new ExpressionBasedRowEvaluable(column.getName(), column.getCellIndex(), eval));
+            index = new NumericBinRowIndex(project, new ExpressionBasedRowEvaluable(column.getName(), column.getCellIndex(), eval), true);
             column.setPrecompute(key, index);
         }
         return index;
@@ -44,6 +44,8 @@ import javax.servlet.http.HttpServletResponse;
 import org.json.JSONWriter;
 
 import com.google.refine.commands.Command;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.expr.MetaParser;
 import com.google.refine.grel.Control;
 import com.google.refine.grel.ControlFunctionRegistry;
 import com.google.refine.grel.Function;
@@ -83,6 +85,16 @@ public class GetExpressionLanguageInfoCommand extends Command {
             }
             writer.endObject();
             
+            writer.key("caches");
+            writer.object();
+            {
+                writer.key("expressions");
+                MetaParser.getCache().write(writer, options);
+                writer.key("patterns");
+                ExpressionUtils.getPatternCache().write(writer, options);
+            }
+            writer.endObject();
+            
             writer.endObject();
         } catch (Exception e) {
             respondException(response, e);
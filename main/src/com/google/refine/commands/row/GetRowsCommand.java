@@ -35,6 +35,7 @@ package com.google.refine.commands.row;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.BitSet;
 import java.util.Properties;
 
 import javax.servlet.ServletException;
@@ -47,8 +48,6 @@ import org.json.JSONWriter;
 
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.Engine.Mode;
-import com.google.refine.browsing.FilteredRecords;
-import com.google.refine.browsing.FilteredRows;
 import com.google.refine.browsing.RecordVisitor;
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.commands.Command;
@@ -57,8 +56,6 @@ import com.google.refine.importing.ImportingManager;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
 import com.google.refine.model.Row;
-import com.google.refine.sorting.SortingRecordVisitor;
-import com.google.refine.sorting.SortingRowVisitor;
 import com.google.refine.util.ParsingUtilities;
 import com.google.refine.util.Pool;
 
@@ -128,46 +125,33 @@ public class GetRowsCommand extends Command {
             } catch (JSONException e) {
             }
 
-            if (engine.getMode() == Mode.RowBased) {
-                FilteredRows filteredRows = engine.getAllFilteredRows();
-                RowVisitor visitor = rwv;
-                
-                if (sortingJson != null) {
-                    SortingRowVisitor srv = new SortingRowVisitor(visitor);
-                    
-                    srv.initializeFromJSON(project, sortingJson);
-                    if (srv.hasCriteria()) {
-                        visitor = srv;
+            int[] order = sortingJson == null ? null : engine.getSortOrder(sortingJson);
+            BitSet matches = engine.getMatchingIndices();
+            
+            jsonWriter.key("mode"); jsonWriter.value(Engine.modeToString(engine.getMode()));
+            jsonWriter.key("rows"); jsonWriter.array();
+            if (order == null) {
+                int i = 0;
+                for (int index = matches.nextSetBit(0); index >= 0 && i < start + limit; index = matches.nextSetBit(index + 1), i++) {
+                    if (i >= start) {
+                        writeRowOrRecord(project, engine, rwv, index);
                     }
                 }
-                
-                jsonWriter.key("mode"); jsonWriter.value("row-based");
-                jsonWriter.key("rows"); jsonWriter.array();
-                filteredRows.accept(project, visitor);
-                jsonWriter.endArray();
-                jsonWriter.key("filtered"); jsonWriter.value(rwv.total);
-                jsonWriter.key("total"); jsonWriter.value(project.rows.size());
             } else {
-                FilteredRecords filteredRecords = engine.getFilteredRecords();
-                RecordVisitor visitor = rwv;
-                
-                if (sortingJson != null) {
-                    SortingRecordVisitor srv = new SortingRecordVisitor(visitor);
-                    
-                    srv.initializeFromJSON(project, sortingJson);
-                    if (srv.hasCriteria()) {
-                        visitor = srv;
+                int i = 0;
+                for (int k = 0; k < order.length && i < start + limit; k++) {
+                    if (matches.get(order[k])) {
+                        if (i >= start) {
+                            writeRowOrRecord(project, engine, rwv, order[k]);
+                        }
+                        i++;
                     }
                 }
-                
-                jsonWriter.key("mode"); jsonWriter.value("record-based");
-                jsonWriter.key("rows"); jsonWriter.array();
-                filteredRecords.accept(project, visitor);
-                jsonWriter.endArray();
-                jsonWriter.key("filtered"); jsonWriter.value(rwv.total);
-                jsonWriter.key("total"); jsonWriter.value(project.recordModel.getRecordCount());
             }
-            
+            jsonWriter.endArray();
+            jsonWriter.key("filtered"); jsonWriter.value(matches.cardinality());
+            jsonWriter.key("total"); jsonWriter.value(engine.getMode() == Mode.RowBased ?
+                    project.rows.size() : project.recordModel.getRecordCount());
             
             jsonWriter.key("start"); jsonWriter.value(start);
             jsonWriter.key("limit"); jsonWriter.value(limit);
@@ -188,6 +172,14 @@ public class GetRowsCommand extends Command {
         }
     }
     
+    static protected void writeRowOrRecord(Project project, Engine engine, RowWritingVisitor rwv, int index) {
+        if (engine.getMode() == Mode.RowBased) {
+            rwv.internalVisit(project, index, project.rows.get(index));
+        } else {
+            rwv.internalVisit(project, project.recordModel.getRecord(index));
+        }
+    }
+    
     static protected class RowWritingVisitor implements RowVisitor, RecordVisitor {
         final int           start;
         final int           limit;
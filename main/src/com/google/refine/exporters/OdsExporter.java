@@ -35,94 +35,152 @@ package com.google.refine.exporters;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.json.JSONObject;
-import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
-import org.odftoolkit.odfdom.doc.table.OdfTable;
-import org.odftoolkit.odfdom.doc.table.OdfTableCell;
-import org.odftoolkit.odfdom.doc.table.OdfTableRow;
 
 import com.google.refine.ProjectManager;
 import com.google.refine.browsing.Engine;
 import com.google.refine.model.Project;
 
 public class OdsExporter implements StreamExporter {
+    static final private String MIME_TYPE = "application/vnd.oasis.opendocument.spreadsheet";
+    
+    static final private String OFFICE_NS = "urn:oasis:names:tc:opendocument:xmlns:office:1.0";
+    static final private String TABLE_NS = "urn:oasis:names:tc:opendocument:xmlns:table:1.0";
+    static final private String TEXT_NS = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+    
+    static final private String MANIFEST =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<manifest:manifest xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\" manifest:version=\"1.2\">" +
+        "<manifest:file-entry manifest:full-path=\"/\" manifest:version=\"1.2\" manifest:media-type=\"" + MIME_TYPE + "\"/>" +
+        "<manifest:file-entry manifest:full-path=\"content.xml\" manifest:media-type=\"text/xml\"/>" +
+        "</manifest:manifest>";
 
     @Override
     public String getContentType() {
-        return "application/vnd.oasis.opendocument.spreadsheet";
+        return MIME_TYPE;
     }
 
+    /**
+     * Writes the document's package straight to the output stream, the rows
+     * of its table as they are visited.
+     */
     @Override
     public void export(final Project project, Properties params, Engine engine,
             OutputStream outputStream) throws IOException {
 
-        final OdfSpreadsheetDocument odfDoc;
-        try {
-            odfDoc = OdfSpreadsheetDocument.newSpreadsheetDocument();
-        } catch (Exception e) {
-            throw new IOException("Failed to create spreadsheet",e);
-        }
-        
-        TabularSerializer serializer = new TabularSerializer() {
-            OdfTable table;
-            //int rowCount = 0;
+        StreamingSpreadsheetSerializer serializer = new StreamingSpreadsheetSerializer(outputStream) {
+            final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+            boolean columnsWritten = false;
             
             @Override
-            public void startFile(JSONObject options) {
-                table = OdfTable.newTable(odfDoc);
-                table.setTableName(ProjectManager.singleton.getProjectMetadata(project.id).getName());
+            protected void startDocument(JSONObject options) throws IOException, XMLStreamException {
+                // the mime type comes first and uncompressed, so that the file type can be told from its start
+                byte[] mimeType = MIME_TYPE.getBytes("US-ASCII");
+                CRC32 crc = new CRC32();
+                crc.update(mimeType);
+                ZipEntry entry = new ZipEntry("mimetype");
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(mimeType.length);
+                entry.setCompressedSize(mimeType.length);
+                entry.setCrc(crc.getValue());
+                zip.putNextEntry(entry);
+                zip.write(mimeType);
+                zip.closeEntry();
+                
+                putEntry("META-INF/manifest.xml", MANIFEST);
+                
+                startEntry("content.xml");
+                writer.setPrefix("office", OFFICE_NS);
+                writer.setPrefix("table", TABLE_NS);
+                writer.setPrefix("text", TEXT_NS);
+                writer.writeStartElement(OFFICE_NS, "document-content");
+                writer.writeNamespace("office", OFFICE_NS);
+                writer.writeNamespace("table", TABLE_NS);
+                writer.writeNamespace("text", TEXT_NS);
+                writer.writeAttribute(OFFICE_NS, "version", "1.2");
+                writer.writeStartElement(OFFICE_NS, "body");
+                writer.writeStartElement(OFFICE_NS, "spreadsheet");
+                writer.writeStartElement(TABLE_NS, "table");
+                writer.writeAttribute(TABLE_NS, "name",
+                        toXmlText(ProjectManager.singleton.getProjectMetadata(project.id).getName()));
             }
 
             @Override
-            public void endFile() {
+            protected void endDocument() throws IOException, XMLStreamException {
+                if (!columnsWritten) {
+                    writer.writeEmptyElement(TABLE_NS, "table-column");
+                }
+                writer.writeEndElement();
+                writer.writeEndElement();
+                writer.writeEndElement();
+                writer.writeEndElement();
+                endEntry();
             }
 
             @Override
-            public void addRow(List<CellData> cells, boolean isHeader) {
-                OdfTableRow r = table.appendRow();
-                //rowCount++;
+            protected void writeRow(List<CellData> cells, boolean isHeader) throws XMLStreamException {
+                if (!columnsWritten) {
+                    // a table declares its columns before its rows, which all have the same cells
+                    writer.writeEmptyElement(TABLE_NS, "table-column");
+                    writer.writeAttribute(TABLE_NS, "number-columns-repeated", Integer.toString(Math.max(1, cells.size())));
+                    columnsWritten = true;
+                }
+                writer.writeStartElement(TABLE_NS, "table-row");
                 
                 for (int i = 0; i < cells.size(); i++) {
-                    OdfTableCell c = r.getCellByIndex(i); // implicitly creates cell
                     CellData cellData = cells.get(i);
 
                     if (cellData != null && cellData.text != null && cellData.value != null) {
+                        writer.writeStartElement(TABLE_NS, "table-cell");
+                        
                         Object v = cellData.value;
                         if (v instanceof Number) {
-                            c.setDoubleValue(((Number) v).doubleValue());
+                            writer.writeAttribute(OFFICE_NS, "value-type", "float");
+                            writer.writeAttribute(OFFICE_NS, "value", Double.toString(((Number) v).doubleValue()));
                         } else if (v instanceof Boolean) {
-                            c.setBooleanValue(((Boolean) v).booleanValue());
+                            writer.writeAttribute(OFFICE_NS, "value-type", "boolean");
+                            writer.writeAttribute(OFFICE_NS, "boolean-value", v.toString());
                         } else if (v instanceof Date) {
-                            Calendar cal = Calendar.getInstance();
-                            cal.setTime((Date) v);
-                            c.setDateValue(cal);
+                            writer.writeAttribute(OFFICE_NS, "value-type", "date");
+                            writer.writeAttribute(OFFICE_NS, "date-value", dateFormat.format((Date) v));
                         } else if (v instanceof Calendar) {
-                            c.setDateValue((Calendar) v);
+                            writer.writeAttribute(OFFICE_NS, "value-type", "date");
+                            writer.writeAttribute(OFFICE_NS, "date-value", dateFormat.format(((Calendar) v).getTime()));
                         } else {
-                            c.setStringValue(cellData.text);
+                            writer.writeAttribute(OFFICE_NS, "value-type", "string");
                         }
+                        
+                        writer.writeStartElement(TEXT_NS, "p");
+                        writer.writeCharacters(toXmlText(cellData.text));
+                        writer.writeEndElement();
+                        writer.writeEndElement();
 
                         if (cellData.link != null) {
                             // TODO: How do we do output hyperlinks?
                         }
+                    } else {
+                        writer.writeEmptyElement(TABLE_NS, "table-cell");
                     }
                 }
+                
+                writer.writeEndElement();
             }
         };
         
         CustomizableTabularExporterUtilities.exportRows(
                 project, engine, params, serializer);
         
-        try {
-            odfDoc.save(outputStream);
-        } catch (Exception e) {
-            throw new IOException("Error saving spreadsheet",e);
-        }
+        serializer.finish();
         outputStream.flush();
     }
 
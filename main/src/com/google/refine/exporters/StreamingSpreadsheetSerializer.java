@@ -0,0 +1,123 @@
+package com.google.refine.exporters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.json.JSONObject;
+
+/**
+ * Base of the serializers writing spreadsheet documents, which are zip
+ * packages of XML parts, straight to an output stream. The part holding the
+ * rows is written as rows are visited, so exporting takes constant memory
+ * and the first bytes reach the client right away.
+ * <p>
+ * Since {@link TabularSerializer}'s methods can't throw, the first failure
+ * is kept, later calls do nothing, and {@link #finish()} throws it.
+ */
+abstract public class StreamingSpreadsheetSerializer implements TabularSerializer {
+    static final private XMLOutputFactory s_factory = XMLOutputFactory.newInstance();
+
+    final protected ZipOutputStream zip;
+    protected XMLStreamWriter writer;
+    protected Exception error;
+
+    protected StreamingSpreadsheetSerializer(OutputStream outputStream) {
+        zip = new ZipOutputStream(outputStream);
+    }
+
+    abstract protected void startDocument(JSONObject options) throws IOException, XMLStreamException;
+
+    abstract protected void writeRow(List<CellData> cells, boolean isHeader) throws XMLStreamException;
+
+    abstract protected void endDocument() throws IOException, XMLStreamException;
+
+    @Override
+    public void startFile(JSONObject options) {
+        try {
+            startDocument(options);
+        } catch (IOException | XMLStreamException e) {
+            error = e;
+        }
+    }
+
+    @Override
+    public void endFile() {
+        if (error == null) {
+            try {
+                endDocument();
+            } catch (IOException | XMLStreamException e) {
+                error = e;
+            }
+        }
+    }
+
+    @Override
+    public void addRow(List<CellData> cells, boolean isHeader) {
+        if (error == null) {
+            try {
+                writeRow(cells, isHeader);
+            } catch (XMLStreamException e) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * Completes the package, leaving the output stream open.
+     *
+     * @throws IOException if any part of the document failed to be written
+     */
+    public void finish() throws IOException {
+        if (error == null) {
+            zip.finish();
+        } else {
+            throw error instanceof IOException ? (IOException) error : new IOException(error);
+        }
+    }
+
+    protected void putEntry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes("UTF-8"));
+        zip.closeEntry();
+    }
+
+    protected XMLStreamWriter startEntry(String name) throws IOException, XMLStreamException {
+        zip.putNextEntry(new ZipEntry(name));
+        writer = s_factory.createXMLStreamWriter(zip, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        return writer;
+    }
+
+    protected void endEntry() throws IOException, XMLStreamException {
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+        zip.closeEntry();
+    }
+
+    /**
+     * @return the text without the control characters XML can't hold
+     */
+    static protected String toXmlText(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' || c == 0xFFFE || c == 0xFFFF) {
+                if (sb == null) {
+                    sb = new StringBuilder(s.length());
+                    sb.append(s, 0, i);
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+}
@@ -40,15 +40,18 @@ import java.util.Date;
 import java.util.List;
 import java.util.Properties;
 
+import javax.xml.stream.XMLStreamException;
+
 import org.apache.poi.hssf.usermodel.HSSFHyperlink;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.ss.util.WorkbookUtil;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.json.JSONObject;
 
 import com.google.refine.ProjectManager;
@@ -56,6 +59,46 @@ import com.google.refine.browsing.Engine;
 import com.google.refine.model.Project;
 
 public class XlsExporter implements StreamExporter {
+    static final private String SPREADSHEET_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    static final private String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    static final private String PACKAGE_RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    
+    static final private String CONTENT_TYPES =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">" +
+        "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>" +
+        "<Default Extension=\"xml\" ContentType=\"application/xml\"/>" +
+        "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>" +
+        "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>" +
+        "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>" +
+        "</Types>";
+    static final private String ROOT_RELATIONSHIPS =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<Relationships xmlns=\"" + PACKAGE_RELATIONSHIPS_NS + "\">" +
+        "<Relationship Id=\"rId1\" Type=\"" + RELATIONSHIPS_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>" +
+        "</Relationships>";
+    static final private String WORKBOOK_RELATIONSHIPS =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<Relationships xmlns=\"" + PACKAGE_RELATIONSHIPS_NS + "\">" +
+        "<Relationship Id=\"rId1\" Type=\"" + RELATIONSHIPS_NS + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>" +
+        "<Relationship Id=\"rId2\" Type=\"" + RELATIONSHIPS_NS + "/styles\" Target=\"styles.xml\"/>" +
+        "</Relationships>";
+    // style 1 is for dates
+    static final private String STYLES =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<styleSheet xmlns=\"" + SPREADSHEET_NS + "\">" +
+        "<numFmts count=\"1\"><numFmt numFmtId=\"164\" formatCode=\"YYYY-MM-DD\"/></numFmts>" +
+        "<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>" +
+        "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>" +
+        "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>" +
+        "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>" +
+        "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>" +
+        "<xf numFmtId=\"164\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/></cellXfs>" +
+        "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>" +
+        "</styleSheet>";
+    
+    static final private int MAX_XLSX_COLUMNS = 16384;
+    
     final private boolean xml;
     
     public XlsExporter(boolean xml) {
@@ -70,8 +113,12 @@ public class XlsExporter implements StreamExporter {
     @Override
     public void export(final Project project, Properties params, Engine engine,
             OutputStream outputStream) throws IOException {
+        if (xml) {
+            exportXlsx(project, params, engine, outputStream);
+            return;
+        }
 
-        final Workbook wb = xml ? new XSSFWorkbook() : new HSSFWorkbook();
+        final Workbook wb = new HSSFWorkbook();
         
         TabularSerializer serializer = new TabularSerializer() {
             Sheet s;
@@ -146,4 +193,126 @@ public class XlsExporter implements StreamExporter {
         outputStream.flush();
     }
 
+    /**
+     * Writes the workbook's package parts straight to the output stream, the
+     * sheet's rows as they are visited. Strings are written inline rather
+     * than to a shared strings table, which would have to be held until the
+     * end.
+     */
+    protected void exportXlsx(final Project project, Properties params, Engine engine,
+            OutputStream outputStream) throws IOException {
+        
+        StreamingSpreadsheetSerializer serializer = new StreamingSpreadsheetSerializer(outputStream) {
+            int rowCount = 0;
+            
+            @Override
+            protected void startDocument(JSONObject options) throws IOException, XMLStreamException {
+                putEntry("[Content_Types].xml", CONTENT_TYPES);
+                putEntry("_rels/.rels", ROOT_RELATIONSHIPS);
+                putEntry("xl/_rels/workbook.xml.rels", WORKBOOK_RELATIONSHIPS);
+                putEntry("xl/styles.xml", STYLES);
+                
+                startEntry("xl/workbook.xml");
+                writer.setDefaultNamespace(SPREADSHEET_NS);
+                writer.writeStartElement(SPREADSHEET_NS, "workbook");
+                writer.writeDefaultNamespace(SPREADSHEET_NS);
+                writer.writeNamespace("r", RELATIONSHIPS_NS);
+                writer.writeStartElement(SPREADSHEET_NS, "sheets");
+                writer.writeEmptyElement(SPREADSHEET_NS, "sheet");
+                writer.writeAttribute("name", toXmlText(WorkbookUtil.createSafeSheetName(
+                        ProjectManager.singleton.getProjectMetadata(project.id).getName())));
+                writer.writeAttribute("sheetId", "1");
+                writer.writeAttribute(RELATIONSHIPS_NS, "id", "rId1");
+                writer.writeEndElement();
+                writer.writeEndElement();
+                endEntry();
+                
+                startEntry("xl/worksheets/sheet1.xml");
+                writer.setDefaultNamespace(SPREADSHEET_NS);
+                writer.writeStartElement(SPREADSHEET_NS, "worksheet");
+                writer.writeDefaultNamespace(SPREADSHEET_NS);
+                writer.writeStartElement(SPREADSHEET_NS, "sheetData");
+            }
+            
+            @Override
+            protected void endDocument() throws IOException, XMLStreamException {
+                writer.writeEndElement();
+                writer.writeEndElement();
+                endEntry();
+            }
+            
+            @Override
+            protected void writeRow(List<CellData> cells, boolean isHeader) throws XMLStreamException {
+                String rowNumber = Integer.toString(++rowCount);
+                writer.writeStartElement(SPREADSHEET_NS, "row");
+                writer.writeAttribute("r", rowNumber);
+                
+                for (int i = 0; i < cells.size(); i++) {
+                    String ref = CellReference.convertNumToColString(i) + rowNumber;
+                    if (i == MAX_XLSX_COLUMNS - 1 && cells.size() > MAX_XLSX_COLUMNS) {
+                        writeString(ref, "ERROR: TOO MANY COLUMNS");
+                        break;
+                    }
+                    
+                    CellData cellData = cells.get(i);
+                    if (cellData != null && cellData.text != null && cellData.value != null) {
+                        Object v = cellData.value;
+                        if (v instanceof Number && !Double.isNaN(((Number) v).doubleValue()) &&
+                                !Double.isInfinite(((Number) v).doubleValue())) {
+                            writeValue(ref, null, null, Double.toString(((Number) v).doubleValue()));
+                        } else if (v instanceof Boolean) {
+                            writeValue(ref, "b", null, ((Boolean) v) ? "1" : "0");
+                        } else if (v instanceof Date) {
+                            writeValue(ref, null, "1", Double.toString(DateUtil.getExcelDate((Date) v)));
+                        } else if (v instanceof Calendar) {
+                            writeValue(ref, null, "1", Double.toString(DateUtil.getExcelDate((Calendar) v, false)));
+                        } else {
+                            String s = cellData.text;
+                            if (s.length() > 32767) {
+                                // The maximum length of cell contents (text) is 32,767 characters
+                                s = s.substring(0, 32767);
+                            }
+                            writeString(ref, s);
+                        }
+                    }
+                }
+                
+                writer.writeEndElement();
+            }
+            
+            void writeValue(String ref, String type, String style, String value) throws XMLStreamException {
+                writer.writeStartElement(SPREADSHEET_NS, "c");
+                writer.writeAttribute("r", ref);
+                if (type != null) {
+                    writer.writeAttribute("t", type);
+                }
+                if (style != null) {
+                    writer.writeAttribute("s", style);
+                }
+                writer.writeStartElement(SPREADSHEET_NS, "v");
+                writer.writeCharacters(value);
+                writer.writeEndElement();
+                writer.writeEndElement();
+            }
+            
+            void writeString(String ref, String s) throws XMLStreamException {
+                writer.writeStartElement(SPREADSHEET_NS, "c");
+                writer.writeAttribute("r", ref);
+                writer.writeAttribute("t", "inlineStr");
+                writer.writeStartElement(SPREADSHEET_NS, "is");
+                writer.writeStartElement(SPREADSHEET_NS, "t");
+                writer.writeAttribute("xml", "http://www.w3.org/XML/1998/namespace", "space", "preserve");
+                writer.writeCharacters(toXmlText(s));
+                writer.writeEndElement();
+                writer.writeEndElement();
+                writer.writeEndElement();
+            }
+        };
+        
+        CustomizableTabularExporterUtilities.exportRows(
+                project, engine, params, serializer);
+        
+        serializer.finish();
+        outputStream.flush();
+    }
 }
@@ -0,0 +1,272 @@
+package com.google.refine.expr;
+
+import java.lang.ref.WeakReference;
+import java.util.Properties;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * Bindings for evaluating expressions over the rows of a project.
+ * <p>
+ * The variables describing the current row ("project", "rowIndex", "row",
+ * "cells", "columnName", "cell" and "value") are held in fields rather than
+ * in the hash table, so binding a row doesn't touch the table, and looking
+ * them up doesn't lock it. The wrappers behind "row", "cells" and "cell" are
+ * only created if an expression asks for them, so evaluating an expression
+ * that only uses "value" allocates nothing per row.
+ * <p>
+ * Any other variable, and any of the above once it has been put or removed
+ * explicitly (e.g. by a control binding a variable named "value"), lives in
+ * the table as with plain {@link Properties}, until the next row is bound.
+ * Like the bindings it replaces, an instance must not be shared by threads.
+ */
+public class EvalContext extends Properties {
+    private static final long serialVersionUID = 1L;
+
+    static final private int PROJECT = 1;
+    static final private int ROW_INDEX = 1 << 1;
+    static final private int ROW = 1 << 2;
+    static final private int CELLS = 1 << 3;
+    static final private int COLUMN_NAME = 1 << 4;
+    static final private int CELL = 1 << 5;
+    static final private int VALUE = 1 << 6;
+
+    static final private ThreadLocal<EvalContext> s_recycled = new ThreadLocal<EvalContext>();
+
+    transient private Project _project;
+    transient private boolean _rowBound;
+    transient private Row _row;
+    transient private int _rowIndex;
+    transient private String _columnName;
+    transient private String _cellColumnName;
+    transient private Cell _cell;
+
+    // created on demand for the current row
+    transient private Integer _boxedRowIndex;
+    transient private WrappedRow _wrappedRow;
+    transient private CellTuple _cellTuple;
+    transient private WrappedCell _wrappedCell;
+
+    // slots whose value is held in the table instead of the fields
+    transient private int _overridden;
+
+    transient private boolean _inUse;
+    transient private WeakReference<Project> _lastProject;
+
+    public EvalContext(Project project) {
+        initialize(project);
+    }
+
+    private void initialize(Project project) {
+        super.clear();
+        _overridden = 0;
+        _project = project;
+        clearRow();
+
+        super.put("true", true);
+        super.put("false", false);
+        super.put("PI", Math.PI);
+
+        for (Binder binder : ExpressionUtils.s_binders) {
+            binder.initializeBindings(this, project);
+        }
+    }
+
+    /**
+     * Gets this thread's recycled context for the project, or a new one if
+     * it is already in use further up the stack. It must be given back with
+     * {@link #release()} once the row has been evaluated.
+     */
+    static public EvalContext acquire(Project project) {
+        EvalContext context = s_recycled.get();
+        if (context == null) {
+            context = new EvalContext(project);
+            s_recycled.set(context);
+        } else if (context._inUse) {
+            return new EvalContext(project);
+        } else if (context._lastProject == null || context._lastProject.get() != project) {
+            context.initialize(project);
+        } else {
+            context._project = project;
+        }
+        context._inUse = true;
+        return context;
+    }
+
+    /**
+     * Gives back a context obtained from {@link #acquire(Project)}. Only a
+     * weak reference to its project is kept while it waits for the next
+     * row, so that an idle thread doesn't keep a project in memory, and the
+     * next caller starts with no row bound.
+     */
+    public void release() {
+        if (_inUse) {
+            _inUse = false;
+            if (_lastProject == null || _lastProject.get() != _project) {
+                _lastProject = new WeakReference<Project>(_project);
+            }
+            _project = null;
+            clearRow();
+        }
+    }
+
+    private void clearRow() {
+        for (int slot = PROJECT; slot <= VALUE; slot <<= 1) {
+            if ((_overridden & slot) != 0) {
+                super.remove(slotName(slot));
+            }
+        }
+        _overridden = 0;
+        _rowBound = false;
+        _row = null;
+        _rowIndex = 0;
+        _columnName = null;
+        _cellColumnName = null;
+        _cell = null;
+        clearWrappers();
+    }
+
+    /**
+     * Binds the variables describing a row, as
+     * {@link ExpressionUtils#bind(Properties, Row, int, String, Cell)} does.
+     */
+    public void bind(Row row, int rowIndex, String columnName, Cell cell) {
+        if (_overridden != 0) {
+            int kept = columnName == null ? _overridden & COLUMN_NAME : 0;
+            for (int slot = ROW_INDEX; slot <= VALUE; slot <<= 1) {
+                if ((_overridden & slot & ~kept) != 0) {
+                    super.remove(slotName(slot));
+                }
+            }
+            _overridden = kept;
+        }
+
+        _rowBound = true;
+        _row = row;
+        _rowIndex = rowIndex;
+        if (columnName != null) {
+            _columnName = columnName;
+        }
+        _cellColumnName = columnName;
+        _cell = cell;
+        clearWrappers();
+    }
+
+    private void clearWrappers() {
+        _boxedRowIndex = null;
+        _wrappedRow = null;
+        _cellTuple = null;
+        _wrappedCell = null;
+    }
+
+    static private String slotName(int slot) {
+        switch (slot) {
+        case PROJECT: return "project";
+        case ROW_INDEX: return "rowIndex";
+        case ROW: return "row";
+        case CELLS: return "cells";
+        case COLUMN_NAME: return "columnName";
+        case CELL: return "cell";
+        case VALUE: return "value";
+        default: return null;
+        }
+    }
+
+    static private int slot(Object key) {
+        if (!(key instanceof String)) {
+            return 0;
+        }
+        switch ((String) key) {
+        case "project": return PROJECT;
+        case "rowIndex": return ROW_INDEX;
+        case "row": return ROW;
+        case "cells": return CELLS;
+        case "columnName": return COLUMN_NAME;
+        case "cell": return CELL;
+        case "value": return VALUE;
+        default: return 0;
+        }
+    }
+
+    private Object slotValue(int slot) {
+        switch (slot) {
+        case PROJECT:
+            return _project;
+        case ROW_INDEX:
+            if (_rowBound && _boxedRowIndex == null) {
+                _boxedRowIndex = _rowIndex;
+            }
+            return _boxedRowIndex;
+        case ROW:
+            if (_rowBound && _wrappedRow == null) {
+                _wrappedRow = new WrappedRow(_project, _rowIndex, _row);
+            }
+            return _wrappedRow;
+        case CELLS:
+            if (_rowBound && _cellTuple == null) {
+                _cellTuple = new CellTuple(_project, _row);
+            }
+            return _cellTuple;
+        case COLUMN_NAME:
+            return _columnName;
+        case CELL:
+            if (_cell != null && _wrappedCell == null) {
+                _wrappedCell = new WrappedCell(_project, _cellColumnName, _cell);
+            }
+            return _wrappedCell;
+        case VALUE:
+            return _cell == null ? null : _cell.value;
+        default:
+            return null;
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = slot(key);
+        if (slot == 0 || (_overridden & slot) != 0) {
+            return super.get(key);
+        }
+        return slotValue(slot);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = slot(key);
+        if (slot == 0 || (_overridden & slot) != 0) {
+            return super.containsKey(key);
+        }
+        switch (slot) {
+        case PROJECT: return _project != null;
+        case COLUMN_NAME: return _columnName != null;
+        case CELL: return _cell != null;
+        case VALUE: return _cell != null && _cell.value != null;
+        default: return _rowBound;
+        }
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        int slot = slot(key);
+        if (slot == 0 || (_overridden & slot) != 0) {
+            return super.put(key, value);
+        }
+        Object old = slotValue(slot);
+        _overridden |= slot;
+        super.put(key, value);
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = slot(key);
+        if (slot == 0 || (_overridden & slot) != 0) {
+            return super.remove(key);
+        }
+        Object old = slotValue(slot);
+        _overridden |= slot;
+        return old;
+    }
+}
@@ -41,6 +41,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -48,51 +49,63 @@ import org.json.JSONObject;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
+import com.google.refine.util.LRUCache;
 
 public class ExpressionUtils {
     
     static final protected Set<Binder> s_binders = new HashSet<Binder>();
 
+    static final public int MAX_CACHED_PATTERNS = 1000;
+
+    static final protected LRUCache<String, Pattern> s_patterns = new LRUCache<String, Pattern>(MAX_CACHED_PATTERNS);
+
     static public void registerBinder(Binder binder) {
         s_binders.add(binder);
     }
 
     static public Properties createBindings(Project project) {
-        Properties bindings = new Properties();
-
-        bindings.put("true", true);
-        bindings.put("false", false);
-        bindings.put("PI", Math.PI);
+        return new EvalContext(project);
+    }
 
-        bindings.put("project", project);
+    /**
+     * Gets bindings for evaluating an expression on one row after another,
+     * recycled from the last time this thread needed them. They must be
+     * released with {@link #releaseBindings(Properties)} once done with.
+     */
+    static public Properties acquireBindings(Project project) {
+        return EvalContext.acquire(project);
+    }
 
-        for (Binder binder : s_binders) {
-            binder.initializeBindings(bindings, project);
+    static public void releaseBindings(Properties bindings) {
+        if (bindings instanceof EvalContext) {
+            ((EvalContext) bindings).release();
         }
-
-        return bindings;
     }
 
     static public void bind(Properties bindings, Row row, int rowIndex, String columnName, Cell cell) {
-        Project project = (Project) bindings.get("project");
+        if (bindings instanceof EvalContext) {
+            ((EvalContext) bindings).bind(row, rowIndex, columnName, cell);
+        } else {
+            Project project = (Project) bindings.get("project");
 
-        bindings.put("rowIndex", rowIndex);
-        bindings.put("row", new WrappedRow(project, rowIndex, row));
-        bindings.put("cells", new CellTuple(project, row));
+            bindings.put("rowIndex", rowIndex);
+            bindings.put("row", new WrappedRow(project, rowIndex, row));
+            bindings.put("cells", new CellTuple(project, row));
 
-        if (columnName != null) {
-            bindings.put("columnName", columnName);
-        }
+            if (columnName != null) {
+                bindings.put("columnName", columnName);
+            }
 
-        if (cell == null) {
-            bindings.remove("cell");
-            bindings.remove("value");
-        } else {
-            bindings.put("cell", new WrappedCell(project, columnName, cell));
-            if (cell.value == null) {
+            if (cell == null) {
+                bindings.remove("cell");
                 bindings.remove("value");
             } else {
-                bindings.put("value", cell.value);
+                bindings.put("cell", new WrappedCell(project, columnName, cell));
+                if (cell.value == null) {
+                    bindings.remove("value");
+                } else {
+                    bindings.put("value", cell.value);
+                }
             }
         }
 
@@ -101,6 +114,23 @@ public class ExpressionUtils {
         }
     }
 
+    /**
+     * Compiles a regular expression given as a string to a function, reusing
+     * the pattern compiled for an earlier row when possible.
+     */
+    static public Pattern compilePattern(String regex) {
+        Pattern pattern = s_patterns.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            s_patterns.put(regex, pattern);
+        }
+        return pattern;
+    }
+
+    static public LRUCache<String, Pattern> getPatternCache() {
+        return s_patterns;
+    }
+
     static public boolean isError(Object o) {
         return o instanceof EvalError;
     }
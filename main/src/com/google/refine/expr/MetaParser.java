@@ -38,11 +38,13 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import clojure.lang.IFn;
 import clojure.lang.RT;
 
 import com.google.refine.grel.Parser;
+import com.google.refine.util.LRUCache;
 
 abstract public class MetaParser {
 
@@ -60,6 +62,19 @@ abstract public class MetaParser {
     
     static final protected Map<String, LanguageInfo> s_languages = new HashMap<String, LanguageInfo>();
 
+    static final public int MAX_CACHED_EXPRESSIONS = 1000;
+
+    /**
+     * GREL expressions already parsed, keyed by source. Facets and operations
+     * parse the same few expressions again on every request, and GREL
+     * evaluables hold no state, so they can be shared. Evaluables of other
+     * languages aren't cached: Jython's, for one, define a function in an
+     * interpreter shared by all of them.
+     */
+    static final protected LRUCache<String, Evaluable> s_cache = new LRUCache<String, Evaluable>(MAX_CACHED_EXPRESSIONS);
+    
+    static final protected Pattern s_otherRowsPattern = Pattern.compile("\\b(row|rows|record|facetCount|cross|now|random)\\b");
+
     // TODO: We should switch from using the internal compiler class 
 //    final static private Var CLOJURE_READ_STRING = RT.var("clojure.core", "read-string");
 //    final static private Var CLOJURE_EVAL = RT.var("clojure.core", "eval");
@@ -130,6 +145,11 @@ abstract public class MetaParser {
      */
     static public void registerLanguageParser(String languagePrefix, String name, LanguageSpecificParser parser, String defaultExpression) {
         s_languages.put(languagePrefix, new LanguageInfo(name, parser, defaultExpression));
+        s_cache.clear();
+    }
+
+    static public LRUCache<String, Evaluable> getCache() {
+        return s_cache;
     }
     
     static public LanguageInfo getLanguageInfo(String languagePrefix) {
@@ -161,11 +181,44 @@ abstract public class MetaParser {
         }
         
         LanguageInfo info = s_languages.get(language.toLowerCase());
-        if (info != null) {
+        if (info != null && !"grel".equals(language)) {
             return info.parser.parse(s.substring(colon + 1));
-        } else {
-            return parseGREL(s);
         }
+
+        String source = info != null ? s.substring(colon + 1) : s;
+        Evaluable eval = s_cache.get(source);
+        if (eval == null) {
+            eval = parseGREL(source);
+            s_cache.put(source, eval);
+        }
+        return eval;
+    }
+    
+    /**
+     * Tells, conservatively, whether an expression evaluated on a row only
+     * depends on the cells of that row, and not on other rows, other projects
+     * or the time of evaluation. Only GREL expressions mentioning neither
+     * rows, records nor the functions reading other rows or projects or
+     * returning a different value at each call qualify.
+     * 
+     * @param s
+     * @return
+     */
+    static public boolean dependsOnRowOnly(String s) {
+        int colon = s.indexOf(':');
+        if (colon >= 0) {
+            String language = s.substring(0, colon).toLowerCase();
+            if ("gel".equals(language)) {
+                language = "grel";
+            }
+            if (s_languages.containsKey(language)) {
+                if (!"grel".equals(language)) {
+                    return false;
+                }
+                s = s.substring(colon + 1);
+            }
+        }
+        return !s_otherRowsPattern.matcher(s).find();
     }
     
     static protected Evaluable parseGREL(String s) throws ParsingException {
@@ -11,6 +11,7 @@ import org.json.JSONException;
 import org.json.JSONWriter;
 
 import com.google.refine.expr.EvalError;
+import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.grel.ControlFunctionRegistry;
 import com.google.refine.grel.Function;
 
@@ -26,7 +27,7 @@ public class Find implements Function {
             
             if (s != null && p != null && (p instanceof String || p instanceof Pattern)) {
                 
-                Pattern pattern = (p instanceof String) ? Pattern.compile((String) p) : (Pattern) p;
+                Pattern pattern = (p instanceof String) ? ExpressionUtils.compilePattern((String) p) : (Pattern) p;
 
                 Matcher matcher = pattern.matcher(s.toString());
                 
@@ -35,6 +35,7 @@ package com.google.refine.grel;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 import java.util.regex.Pattern;
 
 import com.google.refine.expr.Evaluable;
@@ -98,7 +99,7 @@ public class Parser {
 
             Evaluable sub2 = parseSubExpression();
 
-            sub = new OperatorCallExpr(new Evaluable[] { sub, sub2 }, op);
+            sub = makeOperatorCall(sub, sub2, op);
         }
 
         return sub;
@@ -121,7 +122,7 @@ public class Parser {
 
             Evaluable sub2 = parseTerm();
 
-            sub = new OperatorCallExpr(new Evaluable[] { sub, sub2 }, op);
+            sub = makeOperatorCall(sub, sub2, op);
         }
 
         return sub;
@@ -144,7 +145,7 @@ public class Parser {
 
             Evaluable factor2 = parseFactor();
 
-            factor = new OperatorCallExpr(new Evaluable[] { factor, factor2 }, op);
+            factor = makeOperatorCall(factor, factor2, op);
         }
 
         return factor;
@@ -321,6 +322,26 @@ public class Parser {
         return l;
     }
 
+    /**
+     * Builds an operator call, folding it into a literal when both operands
+     * are literals, so that constant subexpressions such as "a" + "b" or
+     * 60 * 60 are computed once rather than for every row.
+     */
+    protected Evaluable makeOperatorCall(Evaluable left, Evaluable right, String op) {
+        OperatorCallExpr call = new OperatorCallExpr(new Evaluable[] { left, right }, op);
+        if (call.isConstant()) {
+            try {
+                Object value = call.evaluate(new Properties());
+                if (value != null) {
+                    return new LiteralExpr(value);
+                }
+            } catch (RuntimeException e) {
+                // e.g. division by zero: leave it to fail on evaluation
+            }
+        }
+        return call;
+    }
+
     protected Evaluable[] makeArray(List<Evaluable> l) {
         Evaluable[] a = new Evaluable[l.size()];
         l.toArray(a);
@@ -42,100 +42,135 @@ import com.google.refine.expr.ExpressionUtils;
  * An abstract syntax tree node encapsulating an operator call, such as "+".
  */
 public class OperatorCallExpr implements Evaluable {
+    static final private int ADD = 0;
+    static final private int SUBTRACT = 1;
+    static final private int MULTIPLY = 2;
+    static final private int DIVIDE = 3;
+    static final private int MODULO = 4;
+    static final private int GREATER = 5;
+    static final private int GREATER_OR_EQUAL = 6;
+    static final private int LESS = 7;
+    static final private int LESS_OR_EQUAL = 8;
+    static final private int EQUAL = 9;
+    static final private int NOT_EQUAL = 10;
+    static final private int UNKNOWN = -1;
+
     final protected Evaluable[] _args;
     final protected String        _op;
+    final private int             _opCode;
 
     public OperatorCallExpr(Evaluable[] args, String op) {
         _args = args;
         _op = op;
+        _opCode = toOpCode(op);
+    }
+
+    static private int toOpCode(String op) {
+        switch (op) {
+        case "+": return ADD;
+        case "-": return SUBTRACT;
+        case "*": return MULTIPLY;
+        case "/": return DIVIDE;
+        case "%": return MODULO;
+        case ">": return GREATER;
+        case ">=": return GREATER_OR_EQUAL;
+        case "<": return LESS;
+        case "<=": return LESS_OR_EQUAL;
+        case "==": return EQUAL;
+        case "!=": return NOT_EQUAL;
+        default: return UNKNOWN;
+        }
+    }
+
+    /**
+     * @return whether all operands are literals, so that the result is
+     *      the same whatever the bindings
+     */
+    public boolean isConstant() {
+        for (Evaluable arg : _args) {
+            if (!(arg instanceof LiteralExpr)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public Object evaluate(Properties bindings) {
-        Object[] args = new Object[_args.length];
-        for (int i = 0; i < _args.length; i++) {
-            Object v = _args[i].evaluate(bindings);
-            if (ExpressionUtils.isError(v)) {
-                return v;
+        if (_args.length != 2) {
+            // operators are binary, but the operands are still evaluated
+            // for their errors
+            for (Evaluable arg : _args) {
+                Object v = arg.evaluate(bindings);
+                if (ExpressionUtils.isError(v)) {
+                    return v;
+                }
             }
-            args[i] = v;
+            return null;
         }
 
-        if (args.length == 2) {
-            if (args[0] != null && args[1] != null) {
-                if (isIntegral(args[0]) && isIntegral(args[1])) {
-                    long n1 = ((Number) args[0]).longValue();
-                    long n2 = ((Number) args[1]).longValue();
-
-                    if ("+".equals(_op)) {
-                        return n1 + n2;
-                    } else if ("-".equals(_op)) {
-                        return n1 - n2;
-                    } else if ("*".equals(_op)) {
-                        return n1 * n2;
-                    } else if ("/".equals(_op)) {
-                        return n1 / n2;
-                    } else if ("%".equals(_op)) {
-                        return n1 % n2;
-                    } else if (">".equals(_op)) {
-                        return n1 > n2;
-                    } else if (">=".equals(_op)) {
-                        return n1 >= n2;
-                    } else if ("<".equals(_op)) {
-                        return n1 < n2;
-                    } else if ("<=".equals(_op)) {
-                        return n1 <= n2;
-                    } else if ("==".equals(_op)) {
-                        return n1 == n2;
-                    } else if ("!=".equals(_op)) {
-                        return n1 != n2;
-                    }
-                } else if (args[0] instanceof Number && args[1] instanceof Number) {
-                    double n1 = ((Number) args[0]).doubleValue();
-                    double n2 = ((Number) args[1]).doubleValue();
-
-                    if ("+".equals(_op)) {
-                        return n1 + n2;
-                    } else if ("-".equals(_op)) {
-                        return n1 - n2;
-                    } else if ("*".equals(_op)) {
-                        return n1 * n2;
-                    } else if ("/".equals(_op)) {
-                        return n1 / n2;
-                    } else if ("%".equals(_op)) {
-                        return n1 % n2;
-                    } else if (">".equals(_op)) {
-                        return n1 > n2;
-                    } else if (">=".equals(_op)) {
-                        return n1 >= n2;
-                    } else if ("<".equals(_op)) {
-                        return n1 < n2;
-                    } else if ("<=".equals(_op)) {
-                        return n1 <= n2;
-                    } else if ("==".equals(_op)) {
-                        return n1 == n2;
-                    } else if ("!=".equals(_op)) {
-                        return n1 != n2;
-                    }
-                }
+        Object a = _args[0].evaluate(bindings);
+        if (ExpressionUtils.isError(a)) {
+            return a;
+        }
+        Object b = _args[1].evaluate(bindings);
+        if (ExpressionUtils.isError(b)) {
+            return b;
+        }
 
-                if ("+".equals(_op)) {
-                    return args[0].toString() + args[1].toString();
+        if (a != null && b != null) {
+            if (isIntegral(a) && isIntegral(b)) {
+                long n1 = ((Number) a).longValue();
+                long n2 = ((Number) b).longValue();
+
+                switch (_opCode) {
+                case ADD: return n1 + n2;
+                case SUBTRACT: return n1 - n2;
+                case MULTIPLY: return n1 * n2;
+                case DIVIDE: return n1 / n2;
+                case MODULO: return n1 % n2;
+                case GREATER: return n1 > n2;
+                case GREATER_OR_EQUAL: return n1 >= n2;
+                case LESS: return n1 < n2;
+                case LESS_OR_EQUAL: return n1 <= n2;
+                case EQUAL: return n1 == n2;
+                case NOT_EQUAL: return n1 != n2;
+                }
+            } else if (a instanceof Number && b instanceof Number) {
+                double n1 = ((Number) a).doubleValue();
+                double n2 = ((Number) b).doubleValue();
+
+                switch (_opCode) {
+                case ADD: return n1 + n2;
+                case SUBTRACT: return n1 - n2;
+                case MULTIPLY: return n1 * n2;
+                case DIVIDE: return n1 / n2;
+                case MODULO: return n1 % n2;
+                case GREATER: return n1 > n2;
+                case GREATER_OR_EQUAL: return n1 >= n2;
+                case LESS: return n1 < n2;
+                case LESS_OR_EQUAL: return n1 <= n2;
+                case EQUAL: return n1 == n2;
+                case NOT_EQUAL: return n1 != n2;
                 }
             }
 
-            if ("==".equals(_op)) {
-                if (args[0] != null) {
-                    return args[0].equals(args[1]);
-                } else {
-                    return args[1] == null;
-                }
-            } else if ("!=".equals(_op)) {
-                if (args[0] != null) {
-                    return !args[0].equals(args[1]);
-                } else {
-                    return args[1] != null;
-                }
+            if (_opCode == ADD) {
+                return a.toString() + b.toString();
+            }
+        }
+
+        if (_opCode == EQUAL) {
+            if (a != null) {
+                return a.equals(b);
+            } else {
+                return b == null;
+            }
+        } else if (_opCode == NOT_EQUAL) {
+            if (a != null) {
+                return !a.equals(b);
+            } else {
+                return b != null;
             }
         }
         return null;
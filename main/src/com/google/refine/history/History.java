@@ -166,22 +166,63 @@ public class History implements Jsonizable {
         }
     }
 
-    synchronized public void undoRedo(long lastDoneEntryID) {
-        if (lastDoneEntryID == 0) {
-            // undo all the way back to the start of the project
-            undo(_pastEntries.size());
-        } else {
-            for (int i = 0; i < _pastEntries.size(); i++) {
-                if (_pastEntries.get(i).id == lastDoneEntryID) {
-                    undo(_pastEntries.size() - i - 1);
-                    return;
-                }
+    /**
+     * @return the ID of the last done entry, or 0 if nothing has been done
+     */
+    synchronized public long getLastDoneEntryID() {
+        return _pastEntries.isEmpty() ? 0 : _pastEntries.get(_pastEntries.size() - 1).id;
+    }
+
+    /**
+     * @param entryID a done entry, or 0 for the start of the project
+     * @return the entries done since that entry, in order, or null if that
+     *      entry isn't done anymore
+     */
+    synchronized public List<HistoryEntry> getPastEntriesAfter(long entryID) {
+        if (entryID == 0) {
+            return new ArrayList<HistoryEntry>(_pastEntries);
+        }
+        for (int i = 0; i < _pastEntries.size(); i++) {
+            if (_pastEntries.get(i).id == entryID) {
+                return new ArrayList<HistoryEntry>(_pastEntries.subList(i + 1, _pastEntries.size()));
             }
+        }
+        return null;
+    }
 
-            for (int i = 0; i < _futureEntries.size(); i++) {
-                if (_futureEntries.get(i).id == lastDoneEntryID) {
-                    redo(i + 1);
-                    return;
+    /**
+     * Takes over the entries of another history of the same project, without
+     * applying or reverting any change. The project must already be in the
+     * state that the other history describes.
+     */
+    synchronized public void replaceEntries(History other) {
+        _pastEntries = new ArrayList<HistoryEntry>(other._pastEntries);
+        _futureEntries = new ArrayList<HistoryEntry>(other._futureEntries);
+    }
+
+    public void undoRedo(long lastDoneEntryID) {
+        Project project = ProjectManager.singleton.getProject(_projectID);
+        // as in addEntry, the project lock is acquired first, so that the
+        // rows and the entries done change together
+        synchronized (project) {
+            synchronized (this) {
+                if (lastDoneEntryID == 0) {
+                    // undo all the way back to the start of the project
+                    undo(_pastEntries.size());
+                } else {
+                    for (int i = 0; i < _pastEntries.size(); i++) {
+                        if (_pastEntries.get(i).id == lastDoneEntryID) {
+                            undo(_pastEntries.size() - i - 1);
+                            return;
+                        }
+                    }
+
+                    for (int i = 0; i < _futureEntries.size(); i++) {
+                        if (_futureEntries.get(i).id == lastDoneEntryID) {
+                            redo(i + 1);
+                            return;
+                        }
+                    }
                 }
             }
         }
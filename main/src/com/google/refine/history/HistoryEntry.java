@@ -46,6 +46,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.refine.Jsonizable;
 import com.google.refine.ProjectManager;
+import com.google.refine.browsing.util.FilterMatchCache;
 import com.google.refine.model.AbstractOperation;
 import com.google.refine.model.Project;
 import com.google.refine.operations.OperationRegistry;
@@ -133,19 +134,24 @@ public class HistoryEntry implements Jsonizable {
         }
 
         synchronized (project) {
-            getChange().apply(project);
+            try {
+                getChange().apply(project);
 
-            // When a change is applied, it can hang on to old data (in order to be able
-            // to revert later). Hence, we need to save the change out.
+                // When a change is applied, it can hang on to old data (in order to be able
+                // to revert later). Hence, we need to save the change out.
 
-            try {
-                _manager.saveChange(this);
-            } catch (Exception e) {
-                e.printStackTrace();
+                try {
+                    _manager.saveChange(this);
+                } catch (Exception e) {
+                    e.printStackTrace();
 
-                getChange().revert(project);
+                    getChange().revert(project);
 
-                throw new RuntimeException("Failed to apply change", e);
+                    throw new RuntimeException("Failed to apply change", e);
+                }
+            } finally {
+                // even a change failing halfway may have modified rows
+                FilterMatchCache.flush(project.id);
             }
         }
     }
@@ -154,7 +160,11 @@ public class HistoryEntry implements Jsonizable {
         if (getChange() == null) {
             _manager.loadChange(this);
         }
-        getChange().revert(project);
+        try {
+            getChange().revert(project);
+        } finally {
+            FilterMatchCache.flush(project.id);
+        }
     }
 
     static public HistoryEntry load(Project project, String s) throws Exception {
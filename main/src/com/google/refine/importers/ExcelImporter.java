@@ -35,25 +35,20 @@ package com.google.refine.importers;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PushbackInputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.poi.POIXMLDocument;
 import org.apache.poi.POIXMLException;
-import org.apache.poi.common.usermodel.Hyperlink;
-import org.apache.poi.hssf.usermodel.HSSFDateUtil;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.poifs.filesystem.POIFSFileSystem;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -62,7 +57,6 @@ import org.slf4j.LoggerFactory;
 
 import com.google.refine.importing.ImportingJob;
 import com.google.refine.importing.ImportingUtilities;
-import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
 import com.google.refine.model.Recon;
 import com.google.refine.model.Recon.Judgment;
@@ -73,6 +67,20 @@ import com.google.refine.util.JSONUtilities;
 public class ExcelImporter extends TabularImportingParserBase {
     static final Logger logger = LoggerFactory.getLogger(ExcelImporter.class);
     
+    /**
+     * Reads the sheets of a workbook one row at a time, so that importing
+     * them doesn't take memory in proportion to the size of the file.
+     */
+    static public interface WorkbookReader {
+        public List<String> getSheetNames();
+        
+        public int getRowCount(int sheetIndex) throws IOException;
+        
+        public TableDataReader readSheet(int sheetIndex, Map<String, Recon> reconMap) throws IOException;
+        
+        public void close();
+    }
+    
     public ExcelImporter() {
         super(true);
     }
@@ -95,26 +103,29 @@ public class ExcelImporter extends TabularImportingParserBase {
                 }
 
                 try {
-                    Workbook wb = POIXMLDocument.hasOOXMLHeader(is) ?
-                            new XSSFWorkbook(is) :
-                                new HSSFWorkbook(new POIFSFileSystem(is));
+                    WorkbookReader wb = POIXMLDocument.hasOOXMLHeader(is) ?
+                            new XlsxStreamingReader(file) :
+                                new XlsStreamingReader(is);
 
-                            int sheetCount = wb.getNumberOfSheets();
-                            for (int i = 0; i < sheetCount; i++) {
-                                Sheet sheet = wb.getSheetAt(i);
-                                int rows = sheet.getLastRowNum() - sheet.getFirstRowNum() + 1;
+                    try {
+                        List<String> sheetNames = wb.getSheetNames();
+                        for (int i = 0; i < sheetNames.size(); i++) {
+                            int rows = wb.getRowCount(i);
 
-                                JSONObject sheetRecord = new JSONObject();
-                                JSONUtilities.safePut(sheetRecord, "name",  file.getName() + "#" + sheet.getSheetName());
-                                JSONUtilities.safePut(sheetRecord, "fileNameAndSheetIndex", file.getName() + "#" + i);
-                                JSONUtilities.safePut(sheetRecord, "rows", rows);
-                                if (rows > 1) {
-                                    JSONUtilities.safePut(sheetRecord, "selected", true);
-                                } else {
-                                    JSONUtilities.safePut(sheetRecord, "selected", false);
-                                }
-                                JSONUtilities.append(sheetRecords, sheetRecord);
+                            JSONObject sheetRecord = new JSONObject();
+                            JSONUtilities.safePut(sheetRecord, "name",  file.getName() + "#" + sheetNames.get(i));
+                            JSONUtilities.safePut(sheetRecord, "fileNameAndSheetIndex", file.getName() + "#" + i);
+                            JSONUtilities.safePut(sheetRecord, "rows", rows);
+                            if (rows > 1) {
+                                JSONUtilities.safePut(sheetRecord, "selected", true);
+                            } else {
+                                JSONUtilities.safePut(sheetRecord, "selected", false);
                             }
+                            JSONUtilities.append(sheetRecords, sheetRecord);
+                        }
+                    } finally {
+                        wb.close();
+                    }
                 } finally {
                     is.close();
                 }
@@ -141,22 +152,32 @@ public class ExcelImporter extends TabularImportingParserBase {
         JSONObject options,
         List<Exception> exceptions
     ) {
-        Workbook wb = null;
+        WorkbookReader wb = null;
+        File xlsxFile = null;
         if (!inputStream.markSupported()) {
           inputStream = new PushbackInputStream(inputStream, 8);
         }
         
         try {
-            wb = POIXMLDocument.hasOOXMLHeader(inputStream) ?
-                new XSSFWorkbook(inputStream) :
-                new HSSFWorkbook(new POIFSFileSystem(inputStream));
+            if (POIXMLDocument.hasOOXMLHeader(inputStream)) {
+                // the package's parts are read from a file, to not hold them all in memory
+                xlsxFile = File.createTempFile("openrefine-excel-import", ".xlsx");
+                OutputStream os = new FileOutputStream(xlsxFile);
+                try {
+                    IOUtils.copy(inputStream, os);
+                } finally {
+                    os.close();
+                }
+                wb = new XlsxStreamingReader(xlsxFile);
+            } else {
+                wb = new XlsStreamingReader(inputStream);
+            }
         } catch (IOException e) {
             exceptions.add(new ImportException(
                 "Attempted to parse as an Excel file but failed. " +
                 "Try to use Excel to re-save the file as a different Excel version or as TSV and upload again.",
                 e
             ));
-            return;
         } catch (ArrayIndexOutOfBoundsException e){
             exceptions.add(new ImportException(
                "Attempted to parse file as an Excel file but failed. " +
@@ -165,23 +186,46 @@ public class ExcelImporter extends TabularImportingParserBase {
                "See https://issues.apache.org/bugzilla/show_bug.cgi?id=48261 for further details",
                e
            ));
-            return;
         } catch (IllegalArgumentException e) {
             exceptions.add(new ImportException(
                     "Attempted to parse as an Excel file but failed. " +
                     "Only Excel 97 and later formats are supported.",
                     e
                 ));
-                return;
         } catch (POIXMLException e) {
             exceptions.add(new ImportException(
                     "Attempted to parse as an Excel file but failed. " +
                     "Invalid XML.",
                     e
                 ));
-                return;
         }
         
+        try {
+            if (wb != null) {
+                readSheets(project, metadata, job, fileSource, wb, limit, options, exceptions);
+                
+                super.parseOneFile(project, metadata, job, fileSource, inputStream, limit, options, exceptions);
+            }
+        } finally {
+            if (wb != null) {
+                wb.close();
+            }
+            if (xlsxFile != null) {
+                xlsxFile.delete();
+            }
+        }
+    }
+    
+    protected void readSheets(
+        Project project,
+        ProjectMetadata metadata,
+        ImportingJob job,
+        String fileSource,
+        WorkbookReader wb,
+        int limit,
+        JSONObject options,
+        List<Exception> exceptions
+    ) {
         JSONArray sheets = JSONUtilities.getArray(options, "sheets");
         
         for(int i=0;i<sheets.length();i++)  {
@@ -197,141 +241,76 @@ public class ExcelImporter extends TabularImportingParserBase {
             if (!fileNameAndSheetIndex[0].equals(fileSource))
                 continue;
             
-            final Sheet sheet = wb.getSheetAt(Integer.parseInt(fileNameAndSheetIndex[1]));
-            final int lastRow = sheet.getLastRowNum();
-            
-            TableDataReader dataReader = new TableDataReader() {
-                int nextRow = 0;
-                Map<String, Recon> reconMap = new HashMap<String, Recon>();
-                
-                @Override
-                public List<Object> getNextRowOfCells() throws IOException {
-                    if (nextRow > lastRow) {
-                        return null;
-                    }
-                    
-                    List<Object> cells = new ArrayList<Object>();
-                    org.apache.poi.ss.usermodel.Row row = sheet.getRow(nextRow++);
-                    if (row != null) {
-                        short lastCell = row.getLastCellNum();
-                        for (short cellIndex = 0; cellIndex < lastCell; cellIndex++) {
-                            Cell cell = null;
-                            
-                            org.apache.poi.ss.usermodel.Cell sourceCell = row.getCell(cellIndex);
-                            if (sourceCell != null) {
-                                cell = extractCell(sourceCell, reconMap);
-                            }
-                            cells.add(cell);
-                        }
-                    }
-                    return cells;
-                }
-            };
+            int sheetIndex = Integer.parseInt(fileNameAndSheetIndex[1]);
+            TableDataReader dataReader;
+            try {
+                dataReader = wb.readSheet(sheetIndex, new HashMap<String, Recon>());
+            } catch (IOException e) {
+                exceptions.add(e);
+                continue;
+            }
             
             TabularImportingParserBase.readTable(
                 project,
                 metadata,
                 job,
                 dataReader,
-                fileSource + "#" + sheet.getSheetName(),
+                fileSource + "#" + wb.getSheetNames().get(sheetIndex),
                 limit,
                 options,
                 exceptions
             );
         }
-        
-        super.parseOneFile(project, metadata, job, fileSource, inputStream, limit, options, exceptions);
     }
     
-    static protected Serializable extractCell(org.apache.poi.ss.usermodel.Cell cell) {
-        int cellType = cell.getCellType();
-        if (cellType == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_FORMULA) {
-            cellType = cell.getCachedFormulaResultType();
-        }
-        if (cellType == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_ERROR ||
-            cellType == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_BLANK) {
-            return null;
-        }
+    /**
+     * @return whether a cell linking to the URL should be reconciled to the
+     *      topic it views
+     */
+    static protected boolean isReconLink(String url) {
+        return url != null && (url.startsWith("http://") || url.startsWith("https://")) &&
+                url.indexOf("freebase.com/view") > 0;
+    }
+    
+    /**
+     * @return the recon object of a cell with the value, linking to the URL,
+     *      or null if the link is not to a topic
+     */
+    static protected Recon extractRecon(String url, Serializable value, Map<String, Recon> reconMap) {
+        Recon recon = null;
         
-        Serializable value = null;
-        if (cellType == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_BOOLEAN) {
-            value = cell.getBooleanCellValue();
-        } else if (cellType == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_NUMERIC) {
-            double d = cell.getNumericCellValue();
+        if (isReconLink(url)) {
+            final String sig = "freebase.com/view";
             
-            if (HSSFDateUtil.isCellDateFormatted(cell)) {
-                value = HSSFDateUtil.getJavaDate(d);
-                // TODO: If we had a time datatype, we could use something like the following
-                // to distinguish times from dates (although Excel doesn't really make the distinction)
-                // Another alternative would be to look for values < 0.60
-//                String format = cell.getCellStyle().getDataFormatString();
-//                if (!format.contains("d") && !format.contains("m") && !format.contains("y") ) {
-//                    // It's just a time
-//                }
-            } else {
-                value = d;
+            int i = url.indexOf(sig);
+            String id = url.substring(i + sig.length());
+            
+            int q = id.indexOf('?');
+            if (q > 0) {
+                id = id.substring(0, q);
             }
-        } else {
-            String text = cell.getStringCellValue();
-            if (text.length() > 0) {
-                value = text;
+            int h = id.indexOf('#');
+            if (h > 0) {
+                id = id.substring(0, h);
             }
-        }
-        
-        return value;
-    }
-    
-    static protected Cell extractCell(org.apache.poi.ss.usermodel.Cell cell, Map<String, Recon> reconMap) {
-        Serializable value = extractCell(cell);
-        
-        if (value != null) {
-            Recon recon = null;
             
-            Hyperlink hyperlink = cell.getHyperlink();
-            if (hyperlink != null) {
-                String url = hyperlink.getAddress();
+            if (reconMap.containsKey(id)) {
+                recon = reconMap.get(id);
+                recon.judgmentBatchSize++;
+            } else {
+                recon = new Recon(0, null, null);
+                recon.service = "import";
+                recon.match = new ReconCandidate(id, value.toString(), new String[0], 100);
+                recon.matchRank = 0;
+                recon.judgment = Judgment.Matched;
+                recon.judgmentAction = "auto";
+                recon.judgmentBatchSize = 1;
+                recon.addCandidate(recon.match);
                 
-                if (url != null && (url.startsWith("http://") ||
-                    url.startsWith("https://"))) {
-                    
-                    final String sig = "freebase.com/view";
-                    
-                    int i = url.indexOf(sig);
-                    if (i > 0) {
-                        String id = url.substring(i + sig.length());
-                        
-                        int q = id.indexOf('?');
-                        if (q > 0) {
-                            id = id.substring(0, q);
-                        }
-                        int h = id.indexOf('#');
-                        if (h > 0) {
-                            id = id.substring(0, h);
-                        }
-                        
-                        if (reconMap.containsKey(id)) {
-                            recon = reconMap.get(id);
-                            recon.judgmentBatchSize++;
-                        } else {
-                            recon = new Recon(0, null, null);
-                            recon.service = "import";
-                            recon.match = new ReconCandidate(id, value.toString(), new String[0], 100);
-                            recon.matchRank = 0;
-                            recon.judgment = Judgment.Matched;
-                            recon.judgmentAction = "auto";
-                            recon.judgmentBatchSize = 1;
-                            recon.addCandidate(recon.match);
-                            
-                            reconMap.put(id, recon);
-                        }
-                        
-                    }
-                }
+                reconMap.put(id, recon);
             }
-            
-            return new Cell(value, recon);
-        } else {
-            return null;
         }
+        
+        return recon;
     }
 }
@@ -0,0 +1,276 @@
+package com.google.refine.importers;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import au.com.bytecode.opencsv.CSVParser;
+
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.importers.TabularImportingParserBase.TypeGuessingTableDataReader;
+import com.google.refine.importing.ImportingJob;
+import com.google.refine.model.Cell;
+import com.google.refine.preference.PreferenceStore;
+
+/**
+ * Reads the rows of a separated values file with several threads.
+ * <p>
+ * Lines are read on the calling thread and grouped into records, a record
+ * spanning several lines while a quoted value is left open. Chunks of
+ * records are then split into cells, and their values guessed, by a pool of
+ * threads shared by all imports, while the calling thread reads ahead a
+ * bounded number of chunks. A file fitting in a single chunk is split on the
+ * calling thread. Rows are handed out in the order of the file, so the table
+ * is built exactly as by a single thread.
+ */
+public class ParallelSeparatorReader implements TypeGuessingTableDataReader {
+    static final public String THREADS_PREFERENCE_KEY = "importing.threads";
+
+    /**
+     * Number of records split by a single task.
+     */
+    static final public int CHUNK_SIZE = 2000;
+
+    /**
+     * Seconds after which idle threads of the pool end.
+     */
+    static final protected long IDLE_SECONDS = 60;
+
+    static protected ExecutorService s_executor;
+    static protected int s_executorThreads;
+
+    final protected LineNumberReader _reader;
+    final protected ImportingJob _job;
+    final protected Supplier<CSVParser> _parsers;
+    final protected char _quote;
+    final protected boolean _processQuotes;
+    final protected int _maxPendingChunks;
+    final protected ExecutorService _executor;
+
+    final protected Deque<Future<Chunk>> _pending = new ArrayDeque<Future<Chunk>>();
+    protected Chunk _chunk;
+    protected int _next;
+    protected int _recordsRead;
+    protected int _rowsRead;
+    protected boolean _eof;
+    protected int _guessTypesFrom = -1;
+
+    /**
+     * @param parsers makes a parser for each chunk, since parsers keep state
+     */
+    public ParallelSeparatorReader(LineNumberReader reader, ImportingJob job, Supplier<CSVParser> parsers,
+            char quote, boolean processQuotes, int threads) {
+        _reader = reader;
+        _job = job;
+        _parsers = parsers;
+        _quote = quote;
+        _processQuotes = processQuotes;
+        _maxPendingChunks = threads * 2;
+        _executor = getExecutor(threads);
+    }
+
+    /**
+     * @return the number of threads to parse files with, 1 to parse them on
+     *      the importing thread
+     */
+    static public int getThreadsPreference() {
+        return Math.max(1, PreferenceStore.getIntPreference(THREADS_PREFERENCE_KEY,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Tells whether a file is worth parsing with several threads. When only
+     * a few rows are wanted, as for previews, they would be parsed long
+     * before chunks read ahead for the other threads.
+     * 
+     * @param limit the maximum number of rows wanted, or 0 or less for all
+     */
+    static public boolean isWorthParallel(int threads, int limit) {
+        return threads > 1 && (limit <= 0 || limit > CHUNK_SIZE);
+    }
+
+    /**
+     * @return the pool shared by all imports, made again if the number of
+     *      threads has changed. A pool replaced isn't shut down, since imports
+     *      under way still use it: its threads end once idle for a minute.
+     */
+    static synchronized protected ExecutorService getExecutor(int threads) {
+        if (s_executor == null || s_executorThreads != threads) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                        Thread thread = new Thread(r, "separator-import");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            s_executor = executor;
+            s_executorThreads = threads;
+        }
+        return s_executor;
+    }
+
+    @Override
+    public void guessCellValueTypesFrom(int rowIndex) {
+        _guessTypesFrom = rowIndex;
+    }
+
+    @Override
+    public List<Object> getNextRowOfCells() throws IOException {
+        while (_chunk == null || _next >= _chunk.rows.size()) {
+            readAhead();
+            if (_pending.isEmpty()) {
+                return null;
+            }
+
+            try {
+                _chunk = _pending.removeFirst().get();
+                _next = 0;
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ?
+                        (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        List<Object> cells = _chunk.rows.get(_next);
+        _chunk.rows.set(_next++, null); // let rows already built be collected
+        if (!_chunk.typesGuessed && _guessTypesFrom >= 0 && _rowsRead >= _guessTypesFrom) {
+            guessTypes(cells);
+        }
+        _rowsRead++;
+        return cells;
+    }
+
+    /**
+     * Abandons the chunks not read yet.
+     */
+    public void close() {
+        for (Future<Chunk> future : _pending) {
+            future.cancel(true);
+        }
+        _pending.clear();
+    }
+
+    protected void readAhead() throws IOException {
+        while (!_eof && !_job.canceled && _pending.size() < _maxPendingChunks) {
+            List<String[]> records = new ArrayList<String[]>(CHUNK_SIZE);
+            while (records.size() < CHUNK_SIZE) {
+                String[] lines = readRecord();
+                if (lines == null) {
+                    _eof = true;
+                    break;
+                }
+                records.add(lines);
+            }
+
+            if (!records.isEmpty()) {
+                int firstRecord = _recordsRead;
+                _recordsRead += records.size();
+                FutureTask<Chunk> task = new FutureTask<Chunk>(() -> parseRecords(records, firstRecord));
+                if (firstRecord == 0 && _eof) {
+                    // the whole file: not worth handing over
+                    task.run();
+                } else {
+                    _executor.execute(task);
+                }
+                _pending.addLast(task);
+            }
+        }
+    }
+
+    /**
+     * @return the lines of the next record, or null at the end of the file
+     */
+    protected String[] readRecord() throws IOException {
+        String line = _reader.readLine();
+        if (line == null) {
+            return null;
+        }
+
+        boolean inQuote = _processQuotes && hasOddQuotes(line, false);
+        if (!inQuote) {
+            return new String[] { line };
+        }
+
+        List<String> lines = new ArrayList<String>();
+        lines.add(line);
+        while (inQuote && (line = _reader.readLine()) != null) {
+            lines.add(line);
+            inQuote = hasOddQuotes(line, inQuote);
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    protected boolean hasOddQuotes(String line, boolean inQuote) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == _quote) {
+                inQuote = !inQuote;
+            }
+        }
+        return inQuote;
+    }
+
+    /**
+     * Splits records into cells. Values are guessed here only if all the
+     * rows of the chunk are to be guessed: as a record can make several rows,
+     * the index of its first row is only known to be at least that of the
+     * record. The rows of the other chunks are guessed as they are read.
+     */
+    protected Chunk parseRecords(List<String[]> records, int firstRecord) throws IOException {
+        CSVParser parser = _parsers.get();
+        List<List<Object>> rows = new ArrayList<List<Object>>(records.size());
+        boolean guessTypes = _guessTypesFrom >= 0 && firstRecord >= _guessTypesFrom;
+        for (int r = 0; r < records.size(); r++) {
+            String[] lines = records.get(r);
+
+            int l = 0;
+            while (l < lines.length) {
+                // as SeparatorBasedImporter.getCells, with the lines grouped above
+                List<Object> cells = new ArrayList<Object>();
+                cells.addAll(Arrays.asList(parser.parseLineMulti(lines[l++])));
+                while (parser.isPending()) {
+                    cells.addAll(Arrays.asList(parser.parseLineMulti(l < lines.length ? lines[l++] : null)));
+                }
+
+                if (guessTypes) {
+                    guessTypes(cells);
+                }
+                rows.add(cells);
+            }
+        }
+        return new Chunk(rows, guessTypes);
+    }
+
+    static protected void guessTypes(List<Object> cells) {
+        for (int c = 0; c < cells.size(); c++) {
+            Object value = cells.get(c);
+            if (ExpressionUtils.isNonBlankData(value)) {
+                cells.set(c, new Cell(ImporterUtilities.parseCellValue((String) value), null));
+            }
+        }
+    }
+
+    static protected class Chunk {
+        final List<List<Object>> rows;
+        final boolean typesGuessed;
+
+        Chunk(List<List<Object>> rows, boolean typesGuessed) {
+            this.rows = rows;
+            this.typesGuessed = typesGuessed;
+        }
+    }
+}
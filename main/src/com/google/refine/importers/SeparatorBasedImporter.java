@@ -48,6 +48,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -107,9 +108,11 @@ public class SeparatorBasedImporter extends TabularImportingParserBase {
             quote = quoteCharacter.trim().charAt(0);
         }
         
-        final CSVParser parser = new CSVParser(
-            sep,
-            quote,
+        final String separator = sep;
+        final char quoteChar = quote;
+        Supplier<CSVParser> parsers = () -> new CSVParser(
+            separator,
+            quoteChar,
             (char) 0, // we don't want escape processing
             strictQuotes,
             CSVParser.DEFAULT_IGNORE_LEADING_WHITESPACE,
@@ -117,19 +120,31 @@ public class SeparatorBasedImporter extends TabularImportingParserBase {
         
         final LineNumberReader lnReader = new LineNumberReader(reader);
         
-        TableDataReader dataReader = new TableDataReader() {
-            @Override
-            public List<Object> getNextRowOfCells() throws IOException {
-                String line = lnReader.readLine();
-                if (line == null) {
-                    return null;
-                } else {
-                    return getCells(line, parser, lnReader);
-                }
+        int threads = ParallelSeparatorReader.getThreadsPreference();
+        if (ParallelSeparatorReader.isWorthParallel(threads, limit)) {
+            ParallelSeparatorReader dataReader = new ParallelSeparatorReader(
+                    lnReader, job, parsers, quote, processQuotes, threads);
+            try {
+                TabularImportingParserBase.readTable(project, metadata, job, dataReader, fileSource, limit, options, exceptions);
+            } finally {
+                dataReader.close();
             }
-        };
-        
-        TabularImportingParserBase.readTable(project, metadata, job, dataReader, fileSource, limit, options, exceptions);
+        } else {
+            final CSVParser parser = parsers.get();
+            TableDataReader dataReader = new TableDataReader() {
+                @Override
+                public List<Object> getNextRowOfCells() throws IOException {
+                    String line = lnReader.readLine();
+                    if (line == null) {
+                        return null;
+                    } else {
+                        return getCells(line, parser, lnReader);
+                    }
+                }
+            };
+            
+            TabularImportingParserBase.readTable(project, metadata, job, dataReader, fileSource, limit, options, exceptions);
+        }
         super.parseOneFile(project, metadata, job, fileSource, lnReader, limit, options, exceptions);
     }
     
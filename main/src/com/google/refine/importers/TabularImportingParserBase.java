@@ -55,6 +55,20 @@ abstract public class TabularImportingParserBase extends ImportingParserBase {
         public List<Object> getNextRowOfCells() throws IOException;
     }
     
+    /**
+     * A reader which can guess the types of cell values itself, for instance
+     * on the threads parsing them. It then returns them as cells.
+     */
+    static public interface TypeGuessingTableDataReader extends TableDataReader {
+        /**
+         * Called before any row is read.
+         * 
+         * @param rowIndex index of the first row read whose values should be
+         *      guessed, the ones before being headers or ignored
+         */
+        public void guessCellValueTypesFrom(int rowIndex);
+    }
+    
     @Override
     public JSONObject createParserUIInitializationData(ImportingJob job,
             List<JSONObject> fileRecords, String format) {
@@ -117,6 +131,10 @@ abstract public class TabularImportingParserBase extends ImportingParserBase {
         List<Object> cells = null;
         int rowsWithData = 0;
         
+        if (guessCellValueTypes && reader instanceof TypeGuessingTableDataReader) {
+            ((TypeGuessingTableDataReader) reader).guessCellValueTypesFrom(Math.max(0, ignoreLines) + headerLines);
+        }
+        
         try {
             while (!job.canceled && (cells = reader.getNextRowOfCells()) != null) {
                 if (ignoreLines > 0) {
@@ -0,0 +1,353 @@
+package com.google.refine.importers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DimensionsRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.HyperlinkRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFDateUtil;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import com.google.refine.importers.ExcelImporter.WorkbookReader;
+import com.google.refine.importers.TabularImportingParserBase.TableDataReader;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Recon;
+
+/**
+ * Reads the sheets of an Excel 97-2003 (.xls) workbook a row at a time,
+ * straight from the records of its workbook stream, rather than building
+ * all its sheets and cells in memory.
+ * <p>
+ * A first pass over the records collects the workbook's shared strings,
+ * cell formats and sheet names, along with each sheet's dimensions and the
+ * hyperlinks that make recon objects, since those follow a sheet's cells.
+ */
+public class XlsStreamingReader implements WorkbookReader {
+    final protected POIFSFileSystem _fs;
+    final protected String _entryName;
+    final protected FormatTrackingHSSFListener _formats = new FormatTrackingHSSFListener(null);
+    protected SSTRecord _sst;
+
+    final protected List<String> _sheetNames = new ArrayList<String>();
+    final protected List<Integer> _rowCounts = new ArrayList<Integer>();
+    final protected List<Map<Long, String>> _links = new ArrayList<Map<Long, String>>();
+
+    public XlsStreamingReader(InputStream is) throws IOException {
+        _fs = new POIFSFileSystem(is);
+        _entryName = HSSFWorkbook.getWorkbookDirEntryName(_fs.getRoot());
+
+        List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+        RecordIterator records = new RecordIterator();
+        for (Record record; (record = records.next()) != null; ) {
+            int sheet = records.getSheet();
+            if (sheet < 0) {
+                _formats.processRecordInternally(record);
+                if (record instanceof SSTRecord) {
+                    _sst = (SSTRecord) record;
+                } else if (record instanceof BoundSheetRecord) {
+                    boundSheets.add((BoundSheetRecord) record);
+                }
+                continue;
+            }
+
+            while (_rowCounts.size() <= sheet) {
+                _rowCounts.add(0);
+                _links.add(new HashMap<Long, String>());
+            }
+            if (record instanceof DimensionsRecord) {
+                DimensionsRecord dimensions = (DimensionsRecord) record;
+                _rowCounts.set(sheet, dimensions.getLastRow() - dimensions.getFirstRow());
+            } else if (record instanceof HyperlinkRecord) {
+                HyperlinkRecord link = (HyperlinkRecord) record;
+                if (ExcelImporter.isReconLink(link.getAddress())) {
+                    _links.get(sheet).put(cellKey(link.getFirstRow(), link.getFirstColumn()), link.getAddress());
+                }
+            }
+        }
+
+        for (BoundSheetRecord boundSheet : BoundSheetRecord.orderByBofPosition(boundSheets)) {
+            _sheetNames.add(boundSheet.getSheetname());
+        }
+    }
+
+    @Override
+    public List<String> getSheetNames() {
+        return _sheetNames;
+    }
+
+    @Override
+    public int getRowCount(int sheetIndex) {
+        return sheetIndex < _rowCounts.size() ? _rowCounts.get(sheetIndex) : 0;
+    }
+
+    @Override
+    public TableDataReader readSheet(int sheetIndex, Map<String, Recon> reconMap) throws IOException {
+        Map<Long, String> links = sheetIndex < _links.size() ?
+                _links.get(sheetIndex) : new HashMap<Long, String>();
+        return new SheetReader(sheetIndex, links, reconMap);
+    }
+
+    @Override
+    public void close() {
+        // the file system is in memory
+    }
+
+    static protected long cellKey(int row, int column) {
+        return ((long) row << 16) | column;
+    }
+
+    /**
+     * Walks the records of the workbook stream, keeping track of the sheet
+     * they belong to. Records of charts and other objects embedded in a sheet
+     * are skipped.
+     */
+    protected class RecordIterator {
+        final protected RecordFactoryInputStream _records;
+        protected int _sheet = -1;
+        protected int _depth;
+
+        protected RecordIterator() throws IOException {
+            _records = new RecordFactoryInputStream(_fs.createDocumentInputStream(_entryName), true);
+        }
+
+        /**
+         * @return the index of the sheet of the last record, or -1 for the
+         *      workbook globals
+         */
+        public int getSheet() {
+            return _sheet;
+        }
+
+        public Record next() {
+            for (Record record; (record = _records.nextRecord()) != null; ) {
+                if (record instanceof BOFRecord) {
+                    if (_depth++ == 0 && ((BOFRecord) record).getType() != BOFRecord.TYPE_WORKBOOK) {
+                        _sheet++;
+                    }
+                } else if (record instanceof EOFRecord) {
+                    _depth--;
+                } else if (_depth == 1) {
+                    return record;
+                }
+            }
+            return null;
+        }
+    }
+
+    protected class SheetReader implements TableDataReader {
+        final protected int _sheetIndex;
+        final protected Map<Long, String> _links;
+        final protected Map<String, Recon> _reconMap;
+        final protected RecordIterator _records;
+        final protected Deque<CellValueRecordInterface> _cells = new ArrayDeque<CellValueRecordInterface>();
+
+        protected int _nextRow;
+        protected List<Object> _row;
+        protected int _rowIndex = -1;
+        protected boolean _done;
+
+        protected SheetReader(int sheetIndex, Map<Long, String> links, Map<String, Recon> reconMap)
+                throws IOException {
+            _sheetIndex = sheetIndex;
+            _links = links;
+            _reconMap = reconMap;
+            _records = new RecordIterator();
+        }
+
+        @Override
+        public List<Object> getNextRowOfCells() throws IOException {
+            if (_row == null && !_done) {
+                try {
+                    readRow();
+                } catch (RuntimeException e) {
+                    _done = true;
+                    throw new IOException(e);
+                }
+            }
+            if (_row == null) {
+                return null;
+            }
+
+            // rows without any cell are left out of the sheet
+            if (_nextRow++ < _rowIndex) {
+                return new ArrayList<Object>();
+            }
+            List<Object> row = _row;
+            _row = null;
+            return row;
+        }
+
+        /**
+         * Cells come in the order of their rows, so a row is complete once a
+         * cell of a later row is read. That cell is kept for the next row.
+         */
+        protected void readRow() {
+            CellValueRecordInterface cell;
+            while ((cell = nextCell()) != null) {
+                if (_row == null) {
+                    _rowIndex = cell.getRow();
+                    _row = new ArrayList<Object>();
+                } else if (cell.getRow() != _rowIndex) {
+                    _cells.addFirst(cell);
+                    return;
+                }
+
+                Serializable value = getValue(cell);
+                while (_row.size() <= cell.getColumn()) {
+                    _row.add(null);
+                }
+                if (value != null) {
+                    String url = _links.get(cellKey(cell.getRow(), cell.getColumn()));
+                    Recon recon = url != null ? ExcelImporter.extractRecon(url, value, _reconMap) : null;
+                    _row.set(cell.getColumn(), new Cell(value, recon));
+                }
+            }
+            _done = true;
+        }
+
+        protected CellValueRecordInterface nextCell() {
+            if (!_cells.isEmpty()) {
+                return _cells.removeFirst();
+            }
+
+            for (Record record; (record = _records.next()) != null; ) {
+                if (_records.getSheet() < _sheetIndex) {
+                    continue;
+                } else if (_records.getSheet() > _sheetIndex) {
+                    break;
+                }
+
+                if (record instanceof MulRKRecord) {
+                    _cells.addAll(Arrays.asList(RecordFactory.convertRKRecords((MulRKRecord) record)));
+                    return _cells.removeFirst();
+                } else if (record instanceof MulBlankRecord) {
+                    _cells.addAll(Arrays.asList(RecordFactory.convertBlankRecords((MulBlankRecord) record)));
+                    return _cells.removeFirst();
+                } else if (record instanceof RKRecord) {
+                    return RecordFactory.convertToNumberRecord((RKRecord) record);
+                } else if (record instanceof FormulaRecord &&
+                        ((FormulaRecord) record).getCachedResultType() == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_STRING) {
+                    // the string result follows the formula
+                    Record next = _records.next();
+                    return new FormulaString((FormulaRecord) record,
+                            next instanceof StringRecord ? ((StringRecord) next).getString() : null);
+                } else if (record instanceof CellValueRecordInterface) {
+                    return (CellValueRecordInterface) record;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A formula cell along with its string result.
+     */
+    static protected class FormulaString implements CellValueRecordInterface {
+        final protected FormulaRecord formula;
+        final protected String text;
+
+        protected FormulaString(FormulaRecord formula, String text) {
+            this.formula = formula;
+            this.text = text;
+        }
+
+        @Override
+        public int getRow() {
+            return formula.getRow();
+        }
+
+        @Override
+        public short getColumn() {
+            return formula.getColumn();
+        }
+
+        @Override
+        public void setRow(int row) {
+            formula.setRow(row);
+        }
+
+        @Override
+        public void setColumn(short column) {
+            formula.setColumn(column);
+        }
+
+        @Override
+        public void setXFIndex(short xf) {
+            formula.setXFIndex(xf);
+        }
+
+        @Override
+        public short getXFIndex() {
+            return formula.getXFIndex();
+        }
+    }
+
+    /**
+     * As {@link ExcelImporter}'s values of the usermodel's cells: numbers as
+     * doubles, or dates when formatted as such, and no value for errors and
+     * empty strings.
+     */
+    protected Serializable getValue(CellValueRecordInterface cell) {
+        if (cell instanceof NumberRecord) {
+            return getNumericValue(cell, ((NumberRecord) cell).getValue());
+        } else if (cell instanceof FormulaRecord) {
+            FormulaRecord formula = (FormulaRecord) cell;
+            int type = formula.getCachedResultType();
+            if (type == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_NUMERIC) {
+                return getNumericValue(cell, formula.getValue());
+            } else if (type == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_BOOLEAN) {
+                return formula.getCachedBooleanValue();
+            }
+            return null;
+        } else if (cell instanceof BoolErrRecord) {
+            BoolErrRecord boolErr = (BoolErrRecord) cell;
+            return boolErr.isBoolean() ? boolErr.getBooleanValue() : null;
+        }
+
+        String text = null;
+        if (cell instanceof FormulaString) {
+            text = ((FormulaString) cell).text;
+        } else if (cell instanceof LabelSSTRecord) {
+            text = _sst.getString(((LabelSSTRecord) cell).getSSTIndex()).getString();
+        } else if (cell instanceof LabelRecord) {
+            text = ((LabelRecord) cell).getValue();
+        }
+        return text != null && text.length() > 0 ? text : null;
+    }
+
+    protected Serializable getNumericValue(CellValueRecordInterface cell, double d) {
+        if (DateUtil.isValidExcelDate(d) &&
+                DateUtil.isADateFormat(_formats.getFormatIndex(cell), _formats.getFormatString(cell))) {
+            return HSSFDateUtil.getJavaDate(d);
+        }
+        return d;
+    }
+}
@@ -0,0 +1,446 @@
+package com.google.refine.importers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.hssf.usermodel.HSSFDateUtil;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.xml.sax.SAXException;
+
+import com.google.refine.importers.ExcelImporter.WorkbookReader;
+import com.google.refine.importers.TabularImportingParserBase.TableDataReader;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Recon;
+
+/**
+ * Reads the sheets of an Office Open XML (.xlsx) workbook a row at a time,
+ * pulling cells out of each sheet's XML as they are needed. Only the
+ * workbook's shared strings and the number formats of its cell styles are
+ * held in memory, not its cells.
+ * <p>
+ * The workbook and styles parts are read with the same pull parser rather
+ * than through their XMLBeans models, which would hold their whole DOM.
+ */
+public class XlsxStreamingReader implements WorkbookReader {
+    static final private String HYPERLINK_RELATIONSHIP =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships/hyperlink";
+    static final private String SHARED_STRINGS_RELATIONSHIP =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings";
+    static final private String STYLES_RELATIONSHIP =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles";
+    static final private String RELATIONSHIPS_NS =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    static final private XMLInputFactory s_factory = XMLInputFactory.newInstance();
+    static {
+        s_factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        s_factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    final protected OPCPackage _package;
+    protected ReadOnlySharedStringsTable _strings;
+    final protected List<String> _sheetNames = new ArrayList<String>();
+    final protected List<PackagePart> _sheetParts = new ArrayList<PackagePart>();
+
+    /**
+     * Number formats of the cell styles, and whether they format dates
+     */
+    final protected List<Integer> _styleFormats = new ArrayList<Integer>();
+    final protected Map<Integer, String> _formatCodes = new HashMap<Integer, String>();
+    final protected Map<Integer, Boolean> _dateStyles = new HashMap<Integer, Boolean>();
+
+    public XlsxStreamingReader(File file) throws IOException {
+        try {
+            _package = OPCPackage.open(file, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+
+        try {
+            PackagePart workbook = _package.getPart(
+                    _package.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT).getRelationship(0));
+
+            for (PackageRelationship relationship : workbook.getRelationshipsByType(SHARED_STRINGS_RELATIONSHIP)) {
+                _strings = new ReadOnlySharedStringsTable(workbook.getRelatedPart(relationship), relationship);
+            }
+            for (PackageRelationship relationship : workbook.getRelationshipsByType(STYLES_RELATIONSHIP)) {
+                readStyles(workbook.getRelatedPart(relationship));
+            }
+            readSheets(workbook);
+        } catch (OpenXML4JException | SAXException | XMLStreamException | RuntimeException e) {
+            close();
+            throw new IOException(e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    protected void readSheets(PackagePart workbook)
+            throws IOException, XMLStreamException, OpenXML4JException {
+        InputStream is = workbook.getInputStream();
+        try {
+            XMLStreamReader parser = s_factory.createXMLStreamReader(is);
+            try {
+                while (parser.hasNext()) {
+                    if (parser.next() == XMLStreamConstants.START_ELEMENT && "sheet".equals(parser.getLocalName())) {
+                        PackageRelationship relationship = workbook.getRelationship(
+                                parser.getAttributeValue(RELATIONSHIPS_NS, "id"));
+                        _sheetNames.add(parser.getAttributeValue(null, "name"));
+                        _sheetParts.add(workbook.getRelatedPart(relationship));
+                    }
+                }
+            } finally {
+                parser.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    protected void readStyles(PackagePart styles) throws IOException, XMLStreamException {
+        InputStream is = styles.getInputStream();
+        try {
+            XMLStreamReader parser = s_factory.createXMLStreamReader(is);
+            try {
+                boolean cellStyles = false;
+                while (parser.hasNext()) {
+                    int token = parser.next();
+                    if (token == XMLStreamConstants.START_ELEMENT) {
+                        String name = parser.getLocalName();
+                        if ("numFmt".equals(name)) {
+                            _formatCodes.put(Integer.parseInt(parser.getAttributeValue(null, "numFmtId")),
+                                    parser.getAttributeValue(null, "formatCode"));
+                        } else if ("cellXfs".equals(name)) {
+                            cellStyles = true;
+                        } else if ("xf".equals(name) && cellStyles) {
+                            String format = parser.getAttributeValue(null, "numFmtId");
+                            _styleFormats.add(format == null ? 0 : Integer.parseInt(format));
+                        }
+                    } else if (token == XMLStreamConstants.END_ELEMENT && "cellXfs".equals(parser.getLocalName())) {
+                        cellStyles = false;
+                    }
+                }
+            } finally {
+                parser.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    @Override
+    public List<String> getSheetNames() {
+        return _sheetNames;
+    }
+
+    /**
+     * @return the number of rows spanned by the sheet, as recorded in its
+     *      dimension, or else counted
+     */
+    @Override
+    public int getRowCount(int sheetIndex) throws IOException {
+        InputStream is = _sheetParts.get(sheetIndex).getInputStream();
+        try {
+            XMLStreamReader parser = s_factory.createXMLStreamReader(is);
+            try {
+                int rows = 0;
+                while (parser.hasNext()) {
+                    if (parser.next() == XMLStreamConstants.START_ELEMENT) {
+                        String name = parser.getLocalName();
+                        if ("dimension".equals(name)) {
+                            String ref = parser.getAttributeValue(null, "ref");
+                            int colon = ref == null ? -1 : ref.indexOf(':');
+                            if (colon > 0) {
+                                return rowIndex(ref.substring(colon + 1)) - rowIndex(ref.substring(0, colon)) + 1;
+                            }
+                        } else if ("row".equals(name)) {
+                            rows++;
+                        }
+                    }
+                }
+                return rows;
+            } finally {
+                parser.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Override
+    public TableDataReader readSheet(int sheetIndex, Map<String, Recon> reconMap) throws IOException {
+        PackagePart part = _sheetParts.get(sheetIndex);
+        try {
+            return new SheetReader(part, getReconLinks(part), reconMap);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        _package.revert();
+    }
+
+    /**
+     * Hyperlinks are listed after all the rows of a sheet, so those that make
+     * recon objects are looked up in an extra pass, and only if the sheet
+     * links to any such URL.
+     *
+     * @return URLs by the reference of the cell linking to them
+     */
+    protected Map<String, String> getReconLinks(PackagePart part) throws IOException {
+        Map<String, String> urls = new HashMap<String, String>();
+        try {
+            for (PackageRelationship relationship : part.getRelationshipsByType(HYPERLINK_RELATIONSHIP)) {
+                String url = relationship.getTargetURI().toString();
+                if (ExcelImporter.isReconLink(url)) {
+                    urls.put(relationship.getId(), url);
+                }
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+
+        Map<String, String> links = new HashMap<String, String>();
+        if (urls.isEmpty()) {
+            return links;
+        }
+
+        InputStream is = part.getInputStream();
+        try {
+            XMLStreamReader parser = s_factory.createXMLStreamReader(is);
+            try {
+                while (parser.hasNext()) {
+                    if (parser.next() == XMLStreamConstants.START_ELEMENT &&
+                            "hyperlink".equals(parser.getLocalName())) {
+                        String ref = parser.getAttributeValue(null, "ref");
+                        String url = urls.get(parser.getAttributeValue(RELATIONSHIPS_NS, "id"));
+                        if (ref != null && url != null) {
+                            int colon = ref.indexOf(':');
+                            links.put(colon > 0 ? ref.substring(0, colon) : ref, url);
+                        }
+                    }
+                }
+            } finally {
+                parser.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            is.close();
+        }
+        return links;
+    }
+
+    protected class SheetReader implements TableDataReader {
+        final protected InputStream _stream;
+        final protected XMLStreamReader _parser;
+        final protected Map<String, String> _links;
+        final protected Map<String, Recon> _reconMap;
+
+        protected int _nextRow;
+        protected List<Object> _row;
+        protected int _rowIndex = -1;
+        protected boolean _done;
+
+        protected SheetReader(PackagePart part, Map<String, String> links, Map<String, Recon> reconMap)
+                throws IOException, XMLStreamException {
+            _stream = part.getInputStream();
+            _parser = s_factory.createXMLStreamReader(_stream);
+            _links = links;
+            _reconMap = reconMap;
+        }
+
+        @Override
+        public List<Object> getNextRowOfCells() throws IOException {
+            if (_row == null && !_done) {
+                try {
+                    readRow();
+                } catch (XMLStreamException | RuntimeException e) {
+                    finish();
+                    throw new IOException(e);
+                }
+            }
+            if (_row == null) {
+                return null;
+            }
+
+            // rows without any cell are left out of the sheet
+            if (_nextRow++ < _rowIndex) {
+                return new ArrayList<Object>();
+            }
+            List<Object> row = _row;
+            _row = null;
+            return row;
+        }
+
+        protected void readRow() throws XMLStreamException, IOException {
+            while (_parser.hasNext()) {
+                int token = _parser.next();
+                if (token == XMLStreamConstants.START_ELEMENT && "row".equals(_parser.getLocalName())) {
+                    String r = _parser.getAttributeValue(null, "r");
+                    _rowIndex = r != null ? Integer.parseInt(r) - 1 : _rowIndex + 1;
+                    _row = new ArrayList<Object>();
+                    readCells();
+                    return;
+                } else if (token == XMLStreamConstants.END_ELEMENT && "sheetData".equals(_parser.getLocalName())) {
+                    break;
+                }
+            }
+            finish();
+        }
+
+        protected void readCells() throws XMLStreamException {
+            while (_parser.hasNext()) {
+                int token = _parser.next();
+                if (token == XMLStreamConstants.START_ELEMENT && "c".equals(_parser.getLocalName())) {
+                    String ref = _parser.getAttributeValue(null, "r");
+                    String type = _parser.getAttributeValue(null, "t");
+                    String style = _parser.getAttributeValue(null, "s");
+                    int column = ref != null ? columnIndex(ref) : _row.size();
+
+                    Serializable value = getValue(type, style, readCellText());
+                    while (_row.size() <= column) {
+                        _row.add(null);
+                    }
+                    if (value != null) {
+                        String url = ref != null ? _links.get(ref) : null;
+                        Recon recon = url != null ? ExcelImporter.extractRecon(url, value, _reconMap) : null;
+                        _row.set(column, new Cell(value, recon));
+                    }
+                } else if (token == XMLStreamConstants.END_ELEMENT && "row".equals(_parser.getLocalName())) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the text of the cell's value or inline string, or null if
+         *      it has none
+         */
+        protected String readCellText() throws XMLStreamException {
+            String text = null;
+            int depth = 0;
+            boolean phonetic = false;
+            while (_parser.hasNext()) {
+                int token = _parser.next();
+                if (token == XMLStreamConstants.START_ELEMENT) {
+                    String name = _parser.getLocalName();
+                    if ("rPh".equals(name)) {
+                        phonetic = true;
+                    } else if (("v".equals(name) && depth == 0) || ("t".equals(name) && !phonetic)) {
+                        text = (text == null ? "" : text) + _parser.getElementText();
+                        continue;
+                    }
+                    depth++;
+                } else if (token == XMLStreamConstants.END_ELEMENT) {
+                    if (depth-- == 0) {
+                        break;
+                    } else if ("rPh".equals(_parser.getLocalName())) {
+                        phonetic = false;
+                    }
+                }
+            }
+            return text;
+        }
+
+        protected void finish() {
+            _done = true;
+            try {
+                _parser.close();
+                _stream.close();
+            } catch (XMLStreamException | IOException e) {
+                // nothing more to read anyway
+            }
+        }
+    }
+
+    /**
+     * As {@link ExcelImporter}'s values of the usermodel's cells: numbers as
+     * doubles, or dates when formatted as such, and no value for errors and
+     * empty strings.
+     */
+    protected Serializable getValue(String type, String style, String text) {
+        if (text == null || "e".equals(type)) {
+            return null;
+        } else if ("b".equals(type)) {
+            return "1".equals(text.trim());
+        } else if ("s".equals(type)) {
+            text = _strings != null ? _strings.getEntryAt(Integer.parseInt(text.trim())) : null;
+            if (text == null) {
+                return null;
+            }
+        } else if (type == null || "n".equals(type)) {
+            try {
+                double d = Double.parseDouble(text);
+                if (isDateFormatted(style == null ? 0 : Integer.parseInt(style), d)) {
+                    return HSSFDateUtil.getJavaDate(d);
+                }
+                return d;
+            } catch (NumberFormatException e) {
+                // keep it as a string
+            }
+        }
+        return text.length() > 0 ? text : null;
+    }
+
+    protected boolean isDateFormatted(int styleIndex, double d) {
+        if (styleIndex >= _styleFormats.size() || !DateUtil.isValidExcelDate(d)) {
+            return false;
+        }
+
+        Boolean date = _dateStyles.get(styleIndex);
+        if (date == null) {
+            int format = _styleFormats.get(styleIndex);
+            String code = _formatCodes.get(format);
+            date = DateUtil.isADateFormat(format, code != null ? code : BuiltinFormats.getBuiltinFormat(format));
+            _dateStyles.put(styleIndex, date);
+        }
+        return date;
+    }
+
+    /**
+     * @return the 0-based column of a cell reference such as "AB12"
+     */
+    static protected int columnIndex(String ref) {
+        int column = 0;
+        for (int i = 0; i < ref.length() && Character.isLetter(ref.charAt(i)); i++) {
+            column = column * 26 + (Character.toUpperCase(ref.charAt(i)) - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    /**
+     * @return the 1-based row of a cell reference such as "AB12"
+     */
+    static protected int rowIndex(String ref) {
+        int i = 0;
+        while (i < ref.length() && !Character.isDigit(ref.charAt(i))) {
+            i++;
+        }
+        return i < ref.length() ? Integer.parseInt(ref.substring(i)) : 1;
+    }
+}
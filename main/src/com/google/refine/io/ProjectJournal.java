@@ -0,0 +1,122 @@
+package com.google.refine.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.RefineServlet;
+import com.google.refine.history.History;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.model.Project;
+import com.google.refine.util.Pool;
+
+/**
+ * Records a project's history since its data file was last written, so that
+ * saving a project after a few operations doesn't rewrite all of its rows.
+ * <p>
+ * The changes themselves are already on disk, since each history entry saves
+ * its change when it is applied. The journal only lists the entries done on
+ * top of the snapshot, and loading replays them onto the snapshot's rows.
+ * Only forward progress can be journaled: once an entry of the snapshot is
+ * undone, the data file must be written again.
+ */
+public class ProjectJournal {
+    static final public String FILE_NAME = "data.journal";
+
+    /**
+     * Past this many entries done on top of the snapshot, replaying them on
+     * load is likely to cost more than writing the data file again.
+     */
+    static final public int MAX_ENTRIES = 20;
+
+    final static Logger logger = LoggerFactory.getLogger("project_journal");
+
+    /**
+     * @return whether the project's current state can be recorded as a
+     *      journal over its last snapshot
+     */
+    static public boolean canSave(Project project) {
+        List<HistoryEntry> entries = project.history.getPastEntriesAfter(project.getSnapshotEntryID());
+        return entries != null && entries.size() <= MAX_ENTRIES;
+    }
+
+    static public void save(Project project, File file) throws IOException {
+        Properties options = new Properties();
+        options.setProperty("mode", "save");
+        options.put("pool", new Pool());
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write(RefineServlet.VERSION); writer.write('\n');
+            writer.write("snapshotEntryID="); writer.write(Long.toString(project.getSnapshotEntryID())); writer.write('\n');
+            project.history.save(writer, options);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Brings a project just loaded from its snapshot up to date with its
+     * journal. If the journal doesn't match the snapshot or any of its
+     * changes can't be loaded, the project is left untouched.
+     *
+     * @return whether the journal was replayed
+     */
+    static public boolean replay(Project project, File file) throws Exception {
+        History journal = new History(project);
+        long snapshotEntryID;
+
+        LineNumberReader reader = new LineNumberReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            /* String version = */ reader.readLine();
+
+            String line = reader.readLine();
+            if (line == null || !line.startsWith("snapshotEntryID=")) {
+                return false;
+            }
+            snapshotEntryID = Long.parseLong(line.substring(line.indexOf('=') + 1));
+
+            journal.load(project, reader);
+        } finally {
+            reader.close();
+        }
+
+        if (snapshotEntryID != project.history.getLastDoneEntryID()) {
+            logger.warn("Ignoring journal of project {} written over another snapshot", project.id);
+            return false;
+        }
+
+        List<HistoryEntry> entries = journal.getPastEntriesAfter(snapshotEntryID);
+        if (entries == null) {
+            return false;
+        }
+
+        // load every change before applying any, so a missing one can't leave
+        // the project half way
+        for (HistoryEntry entry : entries) {
+            if (entry.getChange() == null) {
+                ProjectManager.singleton.getHistoryEntryManager().loadChange(entry);
+            }
+        }
+
+        for (HistoryEntry entry : entries) {
+            entry.getChange().apply(project);
+        }
+        project.history.replaceEntries(journal);
+        project.setSnapshotEntryID(snapshotEntryID);
+        return true;
+    }
+}
@@ -128,8 +128,13 @@ public class ProjectMetadataUtilities {
             long ctime = System.currentTimeMillis();
             long mtime = 0;
 
-            File dataFile = new File(projectDir, "data.zip");
-            ctime = mtime = dataFile.lastModified();
+            for (String dataFile : ProjectUtilities.DATA_FILES) {
+                File file = new File(projectDir, dataFile);
+                if (file.exists()) {
+                    ctime = mtime = file.lastModified();
+                    break;
+                }
+            }
 
             File historyDir = new File(projectDir,"history");
             File[] files = historyDir.listFiles();
@@ -0,0 +1,416 @@
+package com.google.refine.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.google.common.io.CountingOutputStream;
+
+import com.google.refine.expr.EvalError;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Row;
+import com.google.refine.util.ParsingUtilities;
+import com.google.refine.util.Pool;
+
+/**
+ * Binary project data file, replacing the line-based JSON of data.zip.
+ * <p>
+ * Rows are stored in independently deflated blocks of binary encoded cells,
+ * followed by the column model, history and overlay models (in the usual
+ * text format, without rows), the recon pool, and a footer indexing all of
+ * the above. The last 8 bytes of the file hold the offset of the footer, so
+ * a reader can load the models and then only the blocks it needs.
+ * <p>
+ * Loading still puts all rows in {@link Project#rows}, which the rest of the
+ * code indexes directly, so rows aren't paged in from the file as they are
+ * needed. Only a few blocks are decoded ahead of the rows added, which keeps
+ * the heap used while loading close to that of the loaded project.
+ */
+public class ProjectSnapshot {
+    static final public String FILE_SUFFIX = ".bin";
+
+    static final private int MAGIC = 0x4f525344; // "ORSD"
+    static final private int FORMAT_VERSION = 1;
+
+    /**
+     * Number of rows deflated together.
+     */
+    static final private int BLOCK_ROWS = 4096;
+
+    static final private byte TYPE_NULL = 0;
+    static final private byte TYPE_STRING = 1;
+    static final private byte TYPE_LONG = 2;
+    static final private byte TYPE_DOUBLE = 3;
+    static final private byte TYPE_TRUE = 4;
+    static final private byte TYPE_FALSE = 5;
+    static final private byte TYPE_DATE = 6;
+    static final private byte TYPE_ERROR = 7;
+    static final private byte HAS_RECON = (byte) 0x80;
+
+    static final private byte FLAGGED = 1;
+    static final private byte STARRED = 2;
+
+    static private class Section {
+        long offset;
+        int length;
+        int rowCount;
+    }
+
+    /**
+     * Saves a consistent copy of the project. Only copying the rows and
+     * serializing the models is done under the project lock, so changes and
+     * other users of the lock aren't blocked while the rows are encoded,
+     * compressed and written out.
+     *
+     * @return the id of the last history entry done in the state saved
+     */
+    static public long save(Project project, File file) throws IOException {
+        Pool pool = new Pool();
+        List<Section> blocks = new ArrayList<Section>();
+
+        List<Row> rows;
+        byte[] models;
+        long entryID;
+        synchronized (project) {
+            entryID = project.history.getLastDoneEntryID();
+
+
+            // Changes set cells and flags of rows in place, but never modify a
+            // cell: copying each row's list of cells and its flags is enough,
+            // and the cells are shared rather than copied.
+            rows = new ArrayList<Row>(project.rows.size());
+            for (Row row : project.rows) {
+                rows.add(row.dup());
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            project.saveModelsToOutputStream(buffer, pool);
+            models = buffer.toByteArray();
+        }
+
+        CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try (DataOutputStream out = new DataOutputStream(counter)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream blockOut = new DataOutputStream(buffer);
+            int rowCount = rows.size();
+            for (int from = 0; from < rowCount; from += BLOCK_ROWS) {
+                int to = Math.min(rowCount, from + BLOCK_ROWS);
+
+                buffer.reset();
+                for (int r = from; r < to; r++) {
+                    writeRow(blockOut, rows.get(r), pool);
+                }
+                blockOut.flush();
+
+                Section block = writeSection(out, counter, buffer.toByteArray());
+                block.rowCount = to - from;
+                blocks.add(block);
+            }
+
+            Section modelsSection = writeSection(out, counter, models);
+
+            // The pool is written last, once all cells have added their recons
+            buffer.reset();
+            pool.save(buffer);
+            Section recons = writeSection(out, counter, buffer.toByteArray());
+
+            long footerOffset = counter.getCount();
+            out.writeInt(blocks.size());
+            for (Section block : blocks) {
+                writeSectionIndex(out, block);
+                out.writeInt(block.rowCount);
+            }
+            writeSectionIndex(out, modelsSection);
+            writeSectionIndex(out, recons);
+            out.writeLong(footerOffset);
+        }
+        return entryID;
+    }
+
+    /**
+     * @param file file written by {@link #save(Project, File)}
+     * @param id the project's id
+     * @param maxRows maximum number of rows to load, or -1 to load them all
+     */
+    static public Project load(File file, long id, int maxRows) throws Exception {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = read(channel, 0, 8);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a project data file: " + file);
+            }
+            int version = header.getInt();
+            if (version > FORMAT_VERSION) {
+                throw new IOException("Unsupported project data format version " + version + " in " + file);
+            }
+
+            long footerOffset = read(channel, size - 8, 8).getLong();
+            ByteBuffer footer = read(channel, footerOffset, (int) (size - 8 - footerOffset));
+
+            Section[] blocks = new Section[footer.getInt()];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = readSectionIndex(footer);
+                blocks[i].rowCount = footer.getInt();
+            }
+            Section models = readSectionIndex(footer);
+            Section recons = readSectionIndex(footer);
+
+            Pool pool = new Pool();
+            try (InputStream is = readSection(channel, recons)) {
+                pool.load(is);
+            }
+
+            Project project;
+            try (InputStream is = readSection(channel, models)) {
+                project = Project.loadFromInputStream(is, id, pool);
+            }
+
+            int blockCount = 0;
+            int rowCount = 0;
+            while (blockCount < blocks.length && (maxRows < 0 || rowCount < maxRows)) {
+                rowCount += blocks[blockCount++].rowCount;
+            }
+            if (maxRows >= 0) {
+                rowCount = Math.min(rowCount, maxRows);
+            }
+
+            // Blocks are independent, so they are read and decoded concurrently,
+            // a window of them at a time. Positional reads on the channel are
+            // thread-safe.
+            int window = 2 * ForkJoinPool.getCommonPoolParallelism();
+            ((ArrayList<Row>) project.rows).ensureCapacity(rowCount);
+            int maxCellCount = 0;
+            for (int from = 0; from < blockCount; from += window) {
+                List<Row[]> decoded;
+                try {
+                    decoded = IntStream.range(from, Math.min(blockCount, from + window)).parallel()
+                            .mapToObj(b -> readBlock(channel, blocks[b], pool))
+                            .collect(Collectors.toList());
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+
+                for (Row[] block : decoded) {
+                    for (Row row : block) {
+                        if (project.rows.size() == rowCount) {
+                            break;
+                        }
+                        project.rows.add(row);
+                        maxCellCount = Math.max(maxCellCount, row.cells.size());
+                    }
+                }
+            }
+
+            project.columnModel.setMaxCellIndex(maxCellCount - 1);
+            project.update();
+
+            return project;
+        }
+    }
+
+    static private Row[] readBlock(FileChannel channel, Section block, Pool pool) {
+        try (DataInputStream in = new DataInputStream(readSection(channel, block))) {
+            Row[] rows = new Row[block.rowCount];
+            for (int r = 0; r < rows.length; r++) {
+                rows[r] = readRow(in, pool);
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static private Section writeSection(DataOutputStream out, CountingOutputStream counter, byte[] bytes)
+            throws IOException {
+        Section section = new Section();
+        section.offset = counter.getCount();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater, 8192);
+            dos.write(bytes);
+            dos.finish();
+        } finally {
+            deflater.end();
+        }
+
+        section.length = (int) (counter.getCount() - section.offset);
+        return section;
+    }
+
+    static private void writeSectionIndex(DataOutputStream out, Section section) throws IOException {
+        out.writeLong(section.offset);
+        out.writeInt(section.length);
+    }
+
+    static private Section readSectionIndex(ByteBuffer buffer) {
+        Section section = new Section();
+        section.offset = buffer.getLong();
+        section.length = buffer.getInt();
+        return section;
+    }
+
+    static private ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated project data file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static private InputStream readSection(FileChannel channel, Section section) throws IOException {
+        return new InflaterInputStream(new ByteArrayInputStream(
+                read(channel, section.offset, section.length).array()));
+    }
+
+    static private void writeRow(DataOutputStream out, Row row, Pool pool) throws IOException {
+        out.writeByte((row.flagged ? FLAGGED : 0) | (row.starred ? STARRED : 0));
+        out.writeInt(row.cells.size());
+        for (Cell cell : row.cells) {
+            writeCell(out, cell, pool);
+        }
+    }
+
+    static private Row readRow(DataInputStream in, Pool pool) throws IOException {
+        byte flags = in.readByte();
+        int cellCount = in.readInt();
+
+        Row row = new Row(cellCount);
+        row.flagged = (flags & FLAGGED) != 0;
+        row.starred = (flags & STARRED) != 0;
+        for (int c = 0; c < cellCount; c++) {
+            row.cells.add(readCell(in, pool));
+        }
+        return row;
+    }
+
+    /*
+     * Mirrors Cell.write and Cell.loadStreaming: cells without a value are
+     * dropped, dates are stored as strings and numbers other than longs and
+     * doubles are widened.
+     */
+    static private void writeCell(DataOutputStream out, Cell cell, Pool pool) throws IOException {
+        Serializable value = cell == null ? null : cell.value;
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+            return;
+        }
+
+        byte recon = cell.recon != null ? HAS_RECON : 0;
+        if (value instanceof EvalError) {
+            out.writeByte(TYPE_ERROR | recon);
+            writeString(out, ((EvalError) value).message);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING | recon);
+            writeString(out, (String) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TYPE_DOUBLE | recon);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TYPE_LONG | recon);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(((Boolean) value ? TYPE_TRUE : TYPE_FALSE) | recon);
+        } else if (value instanceof OffsetDateTime) {
+            out.writeByte(TYPE_DATE | recon);
+            writeString(out, ParsingUtilities.dateToString((OffsetDateTime) value));
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(TYPE_DATE | recon);
+            writeString(out, ParsingUtilities.localDateToString((LocalDateTime) value));
+        } else {
+            out.writeByte(TYPE_STRING | recon);
+            writeString(out, value.toString());
+        }
+
+        if (cell.recon != null) {
+            out.writeLong(cell.recon.id);
+            pool.pool(cell.recon);
+        }
+    }
+
+    static private Cell readCell(DataInputStream in, Pool pool) throws IOException {
+        byte type = in.readByte();
+        if (type == TYPE_NULL) {
+            return null;
+        }
+
+        Serializable value;
+        switch (type & ~HAS_RECON) {
+        case TYPE_STRING:
+            value = readString(in);
+            break;
+        case TYPE_LONG:
+            value = in.readLong();
+            break;
+        case TYPE_DOUBLE:
+            value = in.readDouble();
+            break;
+        case TYPE_TRUE:
+            value = true;
+            break;
+        case TYPE_FALSE:
+            value = false;
+            break;
+        case TYPE_DATE:
+            value = ParsingUtilities.stringToDate(readString(in));
+            break;
+        case TYPE_ERROR:
+            value = new EvalError(readString(in));
+            break;
+        default:
+            throw new IOException("Unknown cell type " + type);
+        }
+
+        Recon recon = null;
+        if ((type & HAS_RECON) != 0) {
+            recon = pool.getRecon(Long.toString(in.readLong()));
+        }
+        return pool.getCell(value, recon);
+    }
+
+    // DataOutputStream.writeUTF is limited to 64KB, which cells can exceed
+    static private void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -34,13 +34,11 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.io;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,71 +54,101 @@ import com.google.refine.util.Pool;
 public class ProjectUtilities {
     final static Logger logger = LoggerFactory.getLogger("project_utilities");
 
+    /**
+     * Project data files in the order they should be tried when loading:
+     * binary snapshots first, then the legacy zipped text format.
+     */
+    final static public String[] DATA_FILES = {
+        "data" + ProjectSnapshot.FILE_SUFFIX,
+        "data.temp" + ProjectSnapshot.FILE_SUFFIX,
+        "data.old" + ProjectSnapshot.FILE_SUFFIX,
+        "data.zip",
+        "data.temp.zip",
+        "data.old.zip"
+    };
+
     synchronized public static void save(Project project) throws IOException {
-        synchronized (project) {
-            long id = project.id;
-            File dir = ((FileProjectManager)ProjectManager.singleton).getProjectDir(id);
+        long id = project.id;
+        File dir = ((FileProjectManager)ProjectManager.singleton).getProjectDir(id);
+
+        if (new File(dir, "data" + ProjectSnapshot.FILE_SUFFIX).exists()) {
+            // The history lock keeps entries from being done or undone while
+            // the journal is written, without blocking readers of the rows.
+            synchronized (project.history) {
+                if (ProjectJournal.canSave(project)) {
+                    saveJournal(project, dir);
+                    return;
+                }
+            }
+        }
 
-            File tempFile = new File(dir, "data.temp.zip");
+        File tempFile = new File(dir, "data.temp" + ProjectSnapshot.FILE_SUFFIX);
+        long entryID;
+        try {
+            entryID = ProjectSnapshot.save(project, tempFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            logger.warn("Failed to save project {}", id);
             try {
-                saveToFile(project, tempFile);
-            } catch (IOException e) {
-                e.printStackTrace();
-                logger.warn("Failed to save project {}", id);
-                try {
-                    tempFile.delete();
-                } catch (Exception e2) {
-                    // just ignore - file probably was never created.
-                }
-                throw e;
+                tempFile.delete();
+            } catch (Exception e2) {
+                // just ignore - file probably was never created.
             }
+            throw e;
+        }
 
-            File file = new File(dir, "data.zip");
-            File oldFile = new File(dir, "data.old.zip");
+        File file = new File(dir, "data" + ProjectSnapshot.FILE_SUFFIX);
+        File oldFile = new File(dir, "data.old" + ProjectSnapshot.FILE_SUFFIX);
 
-            if (file.exists()) {
-                file.renameTo(oldFile);
-            }
+        if (file.exists()) {
+            file.renameTo(oldFile);
+        }
 
-            tempFile.renameTo(file);
-            if (oldFile.exists()) {
-                oldFile.delete();
-            }
+        tempFile.renameTo(file);
+        if (oldFile.exists()) {
+            oldFile.delete();
+        }
 
-            project.setLastSave();
+        // the legacy data files and the journal are superseded by the snapshot
+        for (String legacyFile : new String[] { "data.zip", "data.temp.zip", "data.old.zip", ProjectJournal.FILE_NAME }) {
+            new File(dir, legacyFile).delete();
+        }
 
-            logger.info("Saved project '{}'",id);
+        // if the history moved while saving, the project stays modified and
+        // the next save journals the entries done since the snapshot
+        project.setSnapshotEntryID(entryID);
+        if (entryID == project.history.getLastDoneEntryID()) {
+            project.setLastSave();
         }
+
+        logger.info("Saved project '{}'",id);
     }
 
-    protected static void saveToFile(Project project, File file) throws IOException  {
-        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+    static protected void saveJournal(Project project, File dir) throws IOException {
+        File tempFile = new File(dir, "data.temp.journal");
         try {
-            Pool pool = new Pool();
+            ProjectJournal.save(project, tempFile);
+        } catch (IOException e) {
+            logger.warn("Failed to save journal of project {}", project.id);
+            tempFile.delete();
+            throw e;
+        }
 
-            out.putNextEntry(new ZipEntry("data.txt"));
-            try {
-                project.saveToOutputStream(out, pool);
-            } finally {
-                out.closeEntry();
-            }
+        File file = new File(dir, ProjectJournal.FILE_NAME);
+        file.delete();
+        tempFile.renameTo(file);
 
-            out.putNextEntry(new ZipEntry("pool.txt"));
-            try {
-                pool.save(out);
-            } finally {
-                out.closeEntry();
-            }
-        } finally {
-            out.close();
-        }
+        project.setLastSave();
+
+        logger.info("Saved journal of project '{}'", project.id);
     }
-    
+
     static public Project loadDataFile(File dir, String dataFile, long id) {
         try {
             File file = new File(dir, dataFile);
             if (file.exists()) {
-                return loadFromFile(file, id);
+                return dataFile.endsWith(ProjectSnapshot.FILE_SUFFIX) ?
+                        ProjectSnapshot.load(file, id, -1) : loadFromFile(file, id);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -130,11 +158,24 @@ public class ProjectUtilities {
     }
     
     static public Project load(File dir, long id) {
-        Project project =null;
+        Project project = null;
         
-        if ((project = loadDataFile(dir, "data.zip", id)) == null) {
-            if ((project = loadDataFile(dir, "data.temp.zip", id)) == null) {
-                project = loadDataFile(dir, "data.old.zip", id);
+        for (String dataFile : DATA_FILES) {
+            if ((project = loadDataFile(dir, dataFile, id)) != null) {
+                break;
+            }
+        }
+
+        if (project != null) {
+            project.setSnapshotEntryID(project.history.getLastDoneEntryID());
+
+            File journal = new File(dir, ProjectJournal.FILE_NAME);
+            if (journal.exists()) {
+                try {
+                    ProjectJournal.replay(project, journal);
+                } catch (Exception e) {
+                    logger.warn("Failed to replay journal of project " + id, e);
+                }
             }
         }
         return project;
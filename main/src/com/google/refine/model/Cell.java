@@ -187,7 +187,7 @@ public class Cell implements HasFields, Jsonizable {
             if (type != null && "date".equals(type)) {
                 value = ParsingUtilities.stringToDate((String) value); 
             }
-            return new Cell(value, recon);
+            return pool.getCell(value, recon);
         } else {
             return null;
         }
@@ -35,9 +35,11 @@ package com.google.refine.model;
 
 import java.io.Writer;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONException;
@@ -69,7 +71,11 @@ public class Column implements Jsonizable {
     private String description = "";
     private Map<String, Object> constraints = null;
     
-    transient protected Map<String, Object> _precomputes;
+    /**
+     * The keys of the values precomputed for the column, which are held by
+     * the {@link PrecomputeCache} and may have been evicted from it since.
+     */
+    transient protected Set<String> _precomputeKeys;
     
     public Column(int cellIndex, String originalName) {
         _cellIndex = cellIndex;
@@ -141,23 +147,47 @@ public class Column implements Jsonizable {
      * e.g. ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProjectColumn(project.id, column.getName())
      */
     public void clearPrecomputes() {
-        if (_precomputes != null) {
-            _precomputes.clear();
+        if (_precomputeKeys != null) {
+            PrecomputeCache.invalidate(this, _precomputeKeys);
+            _precomputeKeys.clear();
+        }
+    }
+    
+    /**
+     * Updates the precomputed values that can follow the changes of a few
+     * cells of the column, and clears the others.
+     * @param rowIndices the rows whose cells of the column changed
+     */
+    public void updatePrecomputes(Project project, int[] rowIndices) {
+        if (_precomputeKeys == null) {
+            return;
+        }
+        for (String key : _precomputeKeys) {
+            Object value = PrecomputeCache.get(this, key);
+            Precompute updated = value instanceof Precompute ?
+                    ((Precompute) value).update(project, rowIndices) : null;
+            if (updated != null) {
+                PrecomputeCache.put(this, key, updated);
+            } else {
+                _precomputeKeys.remove(key);
+                PrecomputeCache.invalidate(this, Collections.singleton(key));
+            }
         }
     }
     
     public Object getPrecompute(String key) {
-        if (_precomputes != null) {
-            return _precomputes.get(key);
+        if (_precomputeKeys != null) {
+            return PrecomputeCache.get(this, key);
         }
         return null;
     }
     
     public void setPrecompute(String key, Object value) {
-        if (_precomputes == null) {
-            _precomputes = new HashMap<String, Object>();
+        if (_precomputeKeys == null) {
+            _precomputeKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
         }
-        _precomputes.put(key, value);
+        _precomputeKeys.add(key);
+        PrecomputeCache.put(this, key, value);
     }
     
     
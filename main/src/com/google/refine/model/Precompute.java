@@ -0,0 +1,22 @@
+package com.google.refine.model;
+
+/**
+ * A value computed from the rows of a project and cached on one of its
+ * columns, such as the base bins of a facet, which tells how much memory it
+ * takes and may follow edits of a few cells of the column.
+ */
+public interface Precompute {
+    /**
+     * @return roughly how many bytes the value takes
+     */
+    long getMemorySize();
+
+    /**
+     * @param rowIndices the rows whose cells of the column changed, the
+     *      rows having kept their places: changes which move rows clear the
+     *      values instead
+     * @return the value updated for the new cells, leaving this one as it
+     *      was, or null if it has to be computed again
+     */
+    Precompute update(Project project, int[] rowIndices);
+}
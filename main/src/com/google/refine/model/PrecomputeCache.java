@@ -0,0 +1,126 @@
+package com.google.refine.model;
+
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.refine.preference.PreferenceStore;
+
+/**
+ * The precomputed values of all columns of all projects, held within a
+ * memory budget. Once the values weigh more than the budget, the least
+ * recently used ones are dropped, whatever their column, and computed again
+ * when next needed.
+ */
+public class PrecomputeCache {
+    final static Logger logger = LoggerFactory.getLogger("precompute-cache");
+
+    static final public String SIZE_PREFERENCE_KEY = "precompute.cacheSizeMB";
+
+    /**
+     * Values which don't tell their size are taken to weigh this much.
+     */
+    static final protected long DEFAULT_MEMORY_SIZE = 1024;
+
+    static protected Cache<Key, Object> s_cache;
+
+    static protected class Key {
+        final Column column;
+        final String key;
+
+        Key(Column column, String key) {
+            this.column = column;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).column == column && ((Key) o).key.equals(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(column) * 31 + key.hashCode();
+        }
+    }
+
+    /**
+     * @return the budget in bytes: the preference if set, an eighth of the
+     *      maximum heap otherwise
+     */
+    static public long getBudget() {
+        int megabytes = PreferenceStore.getIntPreference(SIZE_PREFERENCE_KEY, 0);
+        return megabytes > 0 ? megabytes * 1048576L : Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    static synchronized protected Cache<Key, Object> getCache() {
+        if (s_cache == null) {
+            s_cache = CacheBuilder.newBuilder()
+                // a single segment, so that the budget and the order of use are global
+                .concurrencyLevel(1)
+                .maximumWeight(Math.max(1, getBudget() / 1024))
+                .weigher(new Weigher<Key, Object>() {
+                    @Override
+                    public int weigh(Key key, Object value) {
+                        return (int) Math.min(Integer.MAX_VALUE, getMemorySize(value) / 1024 + 1);
+                    }
+                })
+                .removalListener(new RemovalListener<Key, Object>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Key, Object> notification) {
+                        if (notification.wasEvicted() && logger.isDebugEnabled()) {
+                            logger.debug("Evicted {} of column {}", notification.getKey().key,
+                                    notification.getKey().column.getName());
+                        }
+                    }
+                })
+                .recordStats()
+                .build();
+        }
+        return s_cache;
+    }
+
+    static public long getMemorySize(Object value) {
+        return value instanceof Precompute ? ((Precompute) value).getMemorySize() : DEFAULT_MEMORY_SIZE;
+    }
+
+    static public Object get(Column column, String key) {
+        return getCache().getIfPresent(new Key(column, key));
+    }
+
+    static public void put(Column column, String key, Object value) {
+        getCache().put(new Key(column, key), value);
+    }
+
+    static public void invalidate(Column column, Collection<String> keys) {
+        Cache<Key, Object> cache = getCache();
+        for (String key : keys) {
+            cache.invalidate(new Key(column, key));
+        }
+    }
+
+    /**
+     * @return the hits, misses and evictions so far
+     */
+    static public CacheStats getStats() {
+        return getCache().stats();
+    }
+
+    /**
+     * @return roughly how many bytes the values cached take
+     */
+    static public long getMemorySize() {
+        long size = 0;
+        for (Object value : getCache().asMap().values()) {
+            size += getMemorySize(value);
+        }
+        return size;
+    }
+}
@@ -56,6 +56,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.refine.ProjectManager;
 import com.google.refine.RefineServlet;
+import com.google.refine.browsing.util.FilterMatchCache;
 import com.google.refine.history.History;
 import com.google.refine.model.medadata.ProjectMetadata;
 import com.google.refine.process.ProcessManager;
@@ -65,6 +66,11 @@ import com.google.refine.util.Pool;
 public class Project {
     final static protected Map<String, Class<? extends OverlayModel>> 
         s_overlayModelClasses = new HashMap<String, Class<? extends OverlayModel>>();
+
+    /**
+     * Number of rows looked at when estimating the memory used by a project.
+     */
+    static final public int MEMORY_SAMPLE_ROWS = 1000;
     
     final public long                       id;
     final public List<Row>                  rows = new ArrayList<Row>();
@@ -75,6 +81,7 @@ public class Project {
     
     transient public ProcessManager processManager = new ProcessManager();
     transient private LocalDateTime _lastSave = LocalDateTime.now();
+    transient private long _snapshotEntryID = 0;
 
     final static Logger logger = LoggerFactory.getLogger("project");
     
@@ -107,6 +114,8 @@ public class Project {
             }
         }
         ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProject(this.id);
+        FilterMatchCache.dispose(this.id);
+        columnModel.clearPrecomputes();
         // The rest of the project should get garbage collected when we return.
     }
 
@@ -120,7 +129,33 @@ public class Project {
         this._lastSave = LocalDateTime.now();
     }
 
+    /**
+     * @return the ID of the last history entry done when the project's data
+     *      file was last written in full, or 0 if none was done
+     */
+    public long getSnapshotEntryID() {
+        return this._snapshotEntryID;
+    }
+
+    public void setSnapshotEntryID(long entryID) {
+        this._snapshotEntryID = entryID;
+    }
+
     public void saveToOutputStream(OutputStream out, Pool pool) throws IOException {
+        saveToOutputStream(out, pool, true);
+    }
+    
+    /**
+     * Saves everything but the rows, in the same format as
+     * {@link #saveToOutputStream(OutputStream, Pool)}. Loading the result
+     * with {@link #loadFromInputStream(InputStream, long, Pool)} gives a
+     * project without rows.
+     */
+    public void saveModelsToOutputStream(OutputStream out, Pool pool) throws IOException {
+        saveToOutputStream(out, pool, false);
+    }
+    
+    private void saveToOutputStream(OutputStream out, Pool pool, boolean includeRows) throws IOException {
         for (OverlayModel overlayModel : overlayModels.values()) {
             try {
                 overlayModel.onBeforeSave(this);
@@ -135,7 +170,11 @@ public class Project {
             options.setProperty("mode", "save");
             options.put("pool", pool);
 
-            saveToWriter(writer, options);
+            if (includeRows) {
+                saveToWriter(writer, options);
+            } else {
+                saveModelsToWriter(writer, options);
+            }
         } finally {
             writer.flush();
         }
@@ -150,6 +189,15 @@ public class Project {
     }
 
     protected void saveToWriter(Writer writer, Properties options) throws IOException {
+        saveModelsToWriter(writer, options);
+        
+        writer.write("rowCount="); writer.write(Integer.toString(rows.size())); writer.write('\n');
+        for (Row row : rows) {
+            row.save(writer, options); writer.write('\n');
+        }
+    }
+    
+    protected void saveModelsToWriter(Writer writer, Properties options) throws IOException {
         writer.write(RefineServlet.VERSION); writer.write('\n');
         
         writer.write("columnModel=\n"); columnModel.save(writer, options);
@@ -169,11 +217,6 @@ public class Project {
             }
             writer.write('\n');
         }
-        
-        writer.write("rowCount="); writer.write(Integer.toString(rows.size())); writer.write('\n');
-        for (Row row : rows) {
-            row.save(writer, options); writer.write('\n');
-        }
     }
     
     static public Project loadFromInputStream(InputStream is, long id, Pool pool) throws Exception {
@@ -263,4 +306,50 @@ public class Project {
     public ProjectMetadata getMetadata() {
         return ProjectManager.singleton.getProjectMetadata(id);
     }
+
+    /**
+     * Estimates the heap used by the rows of this project, extrapolating from
+     * at most {@link #MEMORY_SAMPLE_ROWS} rows evenly spread over the project.
+     * Cells and recons shared between rows are counted each time they occur,
+     * so this errs on the high side.
+     *
+     * @return estimated size in bytes
+     */
+    public long estimateMemoryUsage() {
+        int count = rows.size();
+        if (count == 0) {
+            return 0;
+        }
+
+        int step = Math.max(1, count / MEMORY_SAMPLE_ROWS);
+        long sampled = 0;
+        int sampledRows = 0;
+        for (int i = 0; i < count; i += step) {
+            sampled += estimateMemoryUsage(rows.get(i));
+            sampledRows++;
+        }
+        return sampled * count / sampledRows;
+    }
+
+    static private long estimateMemoryUsage(Row row) {
+        long size = 64 + 8L * row.cells.size(); // row, cell list and its slots
+        for (Cell cell : row.cells) {
+            if (cell == null) {
+                continue;
+            }
+            size += 24;
+            if (cell.value instanceof String) {
+                size += 40 + 2L * ((String) cell.value).length();
+            } else if (cell.value != null) {
+                size += 24;
+            }
+            if (cell.recon != null) {
+                size += 128;
+                if (cell.recon.candidates != null) {
+                    size += 96L * cell.recon.candidates.size();
+                }
+            }
+        }
+        return size;
+    }
 }
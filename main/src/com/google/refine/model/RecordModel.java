@@ -77,43 +77,69 @@ public class RecordModel implements Jsonizable {
         }
     }
 
-    protected List<RowDependency> _rowDependencies;
-    protected List<Record> _records;
+    /**
+     * Row dependencies and records computed together by {@link RecordModel#update(Project)}.
+     * An update builds a new index and then publishes it, so that readers never see
+     * a half-built one and don't need to wait for the update to finish.
+     */
+    static protected class Index {
+        final List<RowDependency> rowDependencies;
+        final List<Record> records;
+
+        Index(List<RowDependency> rowDependencies, List<Record> records) {
+            this.rowDependencies = rowDependencies;
+            this.records = records;
+        }
+
+        RowDependency getRowDependency(int rowIndex) {
+            return rowIndex >= 0 && rowIndex < rowDependencies.size() ?
+                    rowDependencies.get(rowIndex) : null;
+        }
+
+        Record getRecord(int recordIndex) {
+            return recordIndex >= 0 && recordIndex < records.size() ?
+                    records.get(recordIndex) : null;
+        }
+    }
+
+    protected volatile Index _index;
 
     public RowDependency getRowDependency(int rowIndex) {
-        return _rowDependencies != null && rowIndex >= 0 && rowIndex < _rowDependencies.size() ?
-                _rowDependencies.get(rowIndex) : null;
+        Index index = _index;
+        return index != null ? index.getRowDependency(rowIndex) : null;
     }
 
     public int getRecordCount() {
-        return _records.size();
+        return _index.records.size();
     }
 
     public Record getRecord(int recordIndex) {
-        return _records != null && recordIndex >= 0 && recordIndex < _records.size() ?
-                _records.get(recordIndex) : null;
+        Index index = _index;
+        return index != null ? index.getRecord(recordIndex) : null;
     }
 
     public Record getRecordOfRow(int rowIndex) {
-        RowDependency rd = getRowDependency(rowIndex);
+        Index index = _index;
+        RowDependency rd = index != null ? index.getRowDependency(rowIndex) : null;
         if (rd != null) {
             if (rd.recordIndex < 0) {
-                rd = getRowDependency(rd.contextRows.get(0));
+                rd = index.getRowDependency(rd.contextRows.get(0));
             }
-            return getRecord(rd.recordIndex);
+            return index.getRecord(rd.recordIndex);
         }
         return null;
     }
 
     @Override
-    synchronized public void write(JSONWriter writer, Properties options)
+    public void write(JSONWriter writer, Properties options)
     throws JSONException {
+        Index index = _index;
 
         writer.object();
         writer.key("hasRecords");
         writer.value(
-            _records != null && _rowDependencies != null &&
-            _records.size() < _rowDependencies.size());
+            index != null &&
+            index.records.size() < index.rowDependencies.size());
         writer.endObject();
     }
 
@@ -145,7 +171,7 @@ public class RecordModel implements Jsonizable {
                 lastNonBlankRowsByGroup[i] = -1;
             }
 
-            _rowDependencies = new ArrayList<RowDependency>(rowCount);
+            List<RowDependency> rowDependencies = new ArrayList<RowDependency>(rowCount);
 
             int recordIndex = 0;
             for (int r = 0; r < rowCount; r++) {
@@ -189,26 +215,28 @@ public class RecordModel implements Jsonizable {
                     rowDependency.recordIndex = recordIndex++;
                 }
 
-                _rowDependencies.add(rowDependency);
+                rowDependencies.add(rowDependency);
             }
 
-            _records = new ArrayList<Record>(recordIndex);
+            List<Record> records = new ArrayList<Record>(recordIndex);
             if (recordIndex > 0) {
                 recordIndex = 0;
 
                 int recordRowIndex = 0;
                 for (int r = 1; r < rowCount; r++) {
-                    RowDependency rd = _rowDependencies.get(r);
+                    RowDependency rd = rowDependencies.get(r);
                     if (rd.recordIndex >= 0) {
-                        _records.add(new Record(recordRowIndex, r, recordIndex++));
+                        records.add(new Record(recordRowIndex, r, recordIndex++));
 
                         recordIndex = rd.recordIndex;
                         recordRowIndex = r;
                     }
                 }
 
-                _records.add(new Record(recordRowIndex, rowCount, recordIndex++));
+                records.add(new Record(recordRowIndex, rowCount, recordIndex++));
             }
+
+            _index = new Index(rowDependencies, records);
         }
     }
 
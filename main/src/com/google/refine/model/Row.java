@@ -251,7 +251,13 @@ public class Row implements HasFields, Jsonizable {
             }
         }
         
-        return (cells.size() > 0) ? new Row(cells, flagged, starred) : new Row(0);
+        if (cells.size() > 0) {
+            // rows are rarely extended after loading, so don't keep the
+            // list's spare growth capacity around for the lifetime of the project
+            ((ArrayList<Cell>) cells).trimToSize();
+            return new Row(cells, flagged, starred);
+        }
+        return new Row(0);
     }
     
     @Override
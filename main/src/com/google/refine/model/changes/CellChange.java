@@ -63,7 +63,7 @@ public class CellChange implements Change {
         project.rows.get(row).setCell(cellIndex, newCell);
         
         Column column = project.columnModel.getColumnByCellIndex(cellIndex);
-        column.clearPrecomputes();
+        column.updatePrecomputes(project, new int[] { row });
         ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProjectColumn(project.id, column.getName());
     }
 
@@ -72,7 +72,7 @@ public class CellChange implements Change {
         project.rows.get(row).setCell(cellIndex, oldCell);
         
         Column column = project.columnModel.getColumnByCellIndex(cellIndex);
-        column.clearPrecomputes();
+        column.updatePrecomputes(project, new int[] { row });
         ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProjectColumn(project.id, column.getName());
     }
     
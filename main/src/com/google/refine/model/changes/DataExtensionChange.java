@@ -214,6 +214,7 @@ public class DataExtensionChange implements Change {
             project.rows.clear();
             project.rows.addAll(_newRows);
             
+            project.columnModel.clearPrecomputes();
             for (int i = 0; i < _columnNames.size(); i++) {
                 String name = _columnNames.get(i);
                 int cellIndex = _firstNewCellIndex + i;
@@ -286,6 +287,7 @@ public class DataExtensionChange implements Change {
             project.rows.clear();
             project.rows.addAll(_oldRows);
             
+            project.columnModel.clearPrecomputes();
             for (int i = 0; i < _columnNames.size(); i++) {
                 project.columnModel.columns.remove(_columnInsertIndex);
             }
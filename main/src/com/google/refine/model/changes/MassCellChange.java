@@ -93,7 +93,7 @@ public class MassCellChange implements Change {
             
             if (_commonColumnName != null) {
                 Column column = project.columnModel.getColumnByName(_commonColumnName);
-                column.clearPrecomputes();
+                updatePrecomputes(project, column);
                 ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProjectColumn(project.id, _commonColumnName);
             }
             
@@ -114,7 +114,7 @@ public class MassCellChange implements Change {
             
             if (_commonColumnName != null) {
                 Column column = project.columnModel.getColumnByName(_commonColumnName);
-                column.clearPrecomputes();
+                updatePrecomputes(project, column);
                 ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProjectColumn(project.id, _commonColumnName);
             }
             
@@ -124,6 +124,18 @@ public class MassCellChange implements Change {
         }
     }
     
+    protected void updatePrecomputes(Project project, Column column) {
+        int[] rowIndices = new int[_cellChanges.length];
+        for (int i = 0; i < _cellChanges.length; i++) {
+            if (_cellChanges[i].cellIndex != column.getCellIndex()) {
+                column.clearPrecomputes();
+                return;
+            }
+            rowIndices[i] = _cellChanges[i].row;
+        }
+        column.updatePrecomputes(project, rowIndices);
+    }
+    
     @Override
     public void save(Writer writer, Properties options) throws IOException {
         if (_commonColumnName != null) {
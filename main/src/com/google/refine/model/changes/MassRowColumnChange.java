@@ -81,6 +81,7 @@ public class MassRowColumnChange implements Change {
             project.rows.clear();
             project.rows.addAll(_newRows);
             
+            project.columnModel.clearPrecomputes();
             ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProject(project.id);
             
             project.update();
@@ -99,6 +100,7 @@ public class MassRowColumnChange implements Change {
             project.rows.clear();
             project.rows.addAll(_oldRows);
             
+            project.columnModel.clearPrecomputes();
             ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProject(project.id);
             
             project.update();
@@ -0,0 +1,229 @@
+package com.google.refine.model.recon;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.model.Recon;
+import com.google.refine.preference.PreferenceStore;
+
+/**
+ * Sends batches of recon jobs to a reconciliation service, keeping several
+ * batches in flight at once.
+ * <p>
+ * Batches grow while the service answers quickly and shrink when it
+ * slows down. When the service reports that it is busy, the batch is queued
+ * again, fewer batches are kept in flight and no new batch is sent until a
+ * growing delay has passed. Jobs turned away more than a set number of times
+ * are given up on, and passed to the listener without recons.
+ */
+public class ReconBatchScheduler {
+    final static Logger logger = LoggerFactory.getLogger("recon-batch-scheduler");
+
+    static final public String CONCURRENCY_PREFERENCE_KEY = "recon.concurrency";
+    static final public int DEFAULT_CONCURRENCY = 2;
+
+    static final public String MAX_BUSY_RETRIES_PREFERENCE_KEY = "recon.maxBusyRetries";
+    static final public int DEFAULT_MAX_BUSY_RETRIES = 10;
+
+    /**
+     * Batches answered faster than this grow, batches answered more than
+     * twice as slowly shrink.
+     */
+    static final public long TARGET_LATENCY = 2000;
+
+    /**
+     * Batches don't grow past this multiple of the config's batch size.
+     */
+    static final public int MAX_BATCH_SIZE_FACTOR = 4;
+
+    static final public long MIN_BACKOFF = 1000;
+    static final public long MAX_BACKOFF = 60000;
+
+    /**
+     * Receives the results of each batch, on the thread running the
+     * scheduler. Jobs added back to the queue are sent again.
+     */
+    public interface BatchListener {
+        /**
+         * @param recons the recons, in the order of the jobs; some may be
+         *      missing or null if the batch failed
+         */
+        void batchDone(List<ReconJob> jobs, List<Recon> recons, Deque<ReconJob> queue);
+    }
+
+    final protected ReconConfig _config;
+    final protected long _historyEntryID;
+    final protected int _maxConcurrency;
+    final protected int _maxBatchSize;
+    final protected int _maxBusyRetries;
+
+    /**
+     * The number of times each job was turned away by the busy service.
+     */
+    final protected Map<ReconJob, Integer> _busyRetries = new HashMap<ReconJob, Integer>();
+
+    protected int _concurrency;
+    protected int _batchSize;
+    protected long _backoff;
+    protected long _resumeAt;
+
+    public ReconBatchScheduler(ReconConfig config, long historyEntryID) {
+        this(config, historyEntryID, getConcurrencyPreference());
+    }
+
+    public ReconBatchScheduler(ReconConfig config, long historyEntryID, int maxConcurrency) {
+        this(config, historyEntryID, maxConcurrency, Math.max(0,
+                PreferenceStore.getIntPreference(MAX_BUSY_RETRIES_PREFERENCE_KEY, DEFAULT_MAX_BUSY_RETRIES)));
+    }
+
+    public ReconBatchScheduler(ReconConfig config, long historyEntryID, int maxConcurrency, int maxBusyRetries) {
+        _config = config;
+        _historyEntryID = historyEntryID;
+        _maxConcurrency = Math.max(1, maxConcurrency);
+        _batchSize = Math.max(1, config.getBatchSize());
+        _maxBatchSize = _batchSize * MAX_BATCH_SIZE_FACTOR;
+        _concurrency = _maxConcurrency;
+        _maxBusyRetries = maxBusyRetries;
+    }
+
+    static public int getConcurrencyPreference() {
+        return PreferenceStore.getIntPreference(CONCURRENCY_PREFERENCE_KEY, DEFAULT_CONCURRENCY);
+    }
+
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    public int getConcurrency() {
+        return _concurrency;
+    }
+
+    static protected class Batch {
+        final List<ReconJob> jobs;
+        final long started = System.currentTimeMillis();
+
+        Batch(List<ReconJob> jobs) {
+            this.jobs = jobs;
+        }
+    }
+
+    /**
+     * Sends all jobs of the queue, and those the listener queues again,
+     * until none is left.
+     *
+     * @throws InterruptedException if the thread was interrupted, in which
+     *      case batches still in flight are abandoned
+     */
+    public void run(Deque<ReconJob> queue, BatchListener listener) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(_maxConcurrency, r -> {
+            Thread thread = new Thread(r, "recon-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<List<Recon>> completion = new ExecutorCompletionService<List<Recon>>(executor);
+        List<Future<List<Recon>>> inFlight = new ArrayList<Future<List<Recon>>>();
+        List<Batch> inFlightBatches = new ArrayList<Batch>();
+
+        try {
+            while (!queue.isEmpty() || !inFlight.isEmpty()) {
+                while (inFlight.size() < _concurrency && !queue.isEmpty()
+                        && System.currentTimeMillis() >= _resumeAt) {
+                    List<ReconJob> jobs = new ArrayList<ReconJob>(_batchSize);
+                    while (jobs.size() < _batchSize && !queue.isEmpty()) {
+                        jobs.add(queue.removeFirst());
+                    }
+                    inFlight.add(completion.submit(() -> _config.tryBatchRecon(jobs, _historyEntryID)));
+                    inFlightBatches.add(new Batch(jobs));
+                }
+
+                Future<List<Recon>> future = completion.poll(100, TimeUnit.MILLISECONDS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (future == null) {
+                    continue;
+                }
+
+                int i = inFlight.indexOf(future);
+                Batch batch = inFlightBatches.remove(i);
+                inFlight.remove(i);
+
+                List<Recon> recons;
+                try {
+                    recons = future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof ReconServiceBusyException) {
+                        List<ReconJob> abandoned = onBusy(batch, (ReconServiceBusyException) e.getCause(), queue);
+                        if (!abandoned.isEmpty()) {
+                            logger.warn("Giving up on {} job(s) after the service was busy {} times",
+                                    abandoned.size(), _maxBusyRetries + 1);
+                            listener.batchDone(abandoned, new ArrayList<Recon>(), queue);
+                        }
+                        continue;
+                    }
+                    logger.warn("Failed to reconcile batch", e.getCause());
+                    recons = new ArrayList<Recon>();
+                }
+
+                onDone(batch, System.currentTimeMillis() - batch.started);
+                listener.batchDone(batch.jobs, recons, queue);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the jobs of the batch turned away too many times, which are
+     *      not queued again
+     */
+    protected List<ReconJob> onBusy(Batch batch, ReconServiceBusyException e, Deque<ReconJob> queue) {
+        List<ReconJob> abandoned = new ArrayList<ReconJob>();
+        for (int j = batch.jobs.size() - 1; j >= 0; j--) {
+            ReconJob job = batch.jobs.get(j);
+            Integer retries = _busyRetries.get(job);
+            retries = retries == null ? 1 : retries + 1;
+            // kept when abandoned, so that jobs the listener queues again are given up on at once
+            _busyRetries.put(job, retries);
+            if (retries > _maxBusyRetries) {
+                abandoned.add(0, job);
+            } else {
+                queue.addFirst(job);
+            }
+        }
+
+        _concurrency = Math.max(1, _concurrency / 2);
+        _backoff = _backoff == 0 ? MIN_BACKOFF : Math.min(MAX_BACKOFF, _backoff * 2);
+        _resumeAt = System.currentTimeMillis() + Math.max(_backoff, e.retryAfter);
+
+        logger.info("Reconciliation service busy, waiting {}ms with {} batch(es) in flight",
+                Math.max(_backoff, e.retryAfter), _concurrency);
+        return abandoned;
+    }
+
+    protected void onDone(Batch batch, long latency) {
+        _backoff = 0;
+        if (_concurrency < _maxConcurrency) {
+            _concurrency++;
+        }
+
+        if (latency < TARGET_LATENCY && batch.jobs.size() >= _batchSize) {
+            _batchSize = Math.min(_maxBatchSize, _batchSize + 1);
+        } else if (latency > 2 * TARGET_LATENCY) {
+            _batchSize = Math.max(1, _batchSize / 2);
+        }
+    }
+}
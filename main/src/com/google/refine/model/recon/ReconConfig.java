@@ -120,6 +120,15 @@ abstract public class ReconConfig implements Jsonizable {
     
     abstract public List<Recon> batchRecon(List<ReconJob> jobs, long historyEntryID);
     
+    /**
+     * Like {@link #batchRecon(List, long)}, but throws a
+     * {@link ReconServiceBusyException} rather than failing the batch when
+     * the service asks for fewer requests, so that it can be sent again.
+     */
+    public List<Recon> tryBatchRecon(List<ReconJob> jobs, long historyEntryID) {
+        return batchRecon(jobs, historyEntryID);
+    }
+    
     abstract public Recon createNewRecon(long historyEntryID);
     
     public void save(Writer writer) {
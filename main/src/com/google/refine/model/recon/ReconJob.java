@@ -34,6 +34,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.model.recon;
 
 abstract public class ReconJob {
+    protected boolean cached;
+    
     public int getKey() {
         return this.hashCode();
     }
@@ -46,4 +48,12 @@ abstract public class ReconJob {
     public String getStringKey() {
         return Integer.toString(getKey());
     }
+    
+    /**
+     * @return whether the results of the job were last taken from a cache
+     *      rather than asked of the service
+     */
+    public boolean isCached() {
+        return cached;
+    }
 }
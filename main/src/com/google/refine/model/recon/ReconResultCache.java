@@ -0,0 +1,65 @@
+package com.google.refine.model.recon;
+
+import java.io.File;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.io.FileProjectManager;
+import com.google.refine.preference.PreferenceStore;
+import com.google.refine.util.DiskCache;
+
+/**
+ * Results of reconciliation queries kept on disk, in the workspace's cache
+ * directory, so that values reconciled once against a service are not sent
+ * to it again by any project until the results get too old. A result is
+ * keyed by the service and the query sent for it, which holds the text, the
+ * type and the values of the property columns.
+ */
+public class ReconResultCache extends DiskCache {
+    static final public String MAX_AGE_PREFERENCE_KEY = "recon.cacheMaxAgeHours";
+    static final public String MAX_SIZE_PREFERENCE_KEY = "recon.cacheMaxSizeMB";
+
+    static final public int DEFAULT_MAX_AGE_HOURS = 24 * 7;
+    static final public int DEFAULT_MAX_SIZE_MB = 100;
+
+    static protected ReconResultCache s_workspaceCache;
+
+    public ReconResultCache(File dir, long maxAgeMillis, long maxBytes) {
+        super(dir, maxAgeMillis, maxBytes);
+    }
+
+    /**
+     * @return the cache of the workspace, or null when projects aren't kept
+     *      in a workspace directory or the cache is turned off
+     */
+    static synchronized public ReconResultCache getWorkspaceCache() {
+        if (!(ProjectManager.singleton instanceof FileProjectManager)) {
+            return null;
+        }
+        long maxAgeMillis = Math.max(0, PreferenceStore.getIntPreference(MAX_AGE_PREFERENCE_KEY, DEFAULT_MAX_AGE_HOURS)) * 3600000L;
+        long maxBytes = Math.max(0, PreferenceStore.getIntPreference(MAX_SIZE_PREFERENCE_KEY, DEFAULT_MAX_SIZE_MB)) * 1048576L;
+        if (maxAgeMillis == 0 || maxBytes == 0) {
+            return null;
+        }
+
+        File workspaceDir = ((FileProjectManager) ProjectManager.singleton).getWorkspaceDir();
+        File dir = new File(new File(workspaceDir, "cache"), "recon");
+        if (s_workspaceCache == null || !s_workspaceCache._dir.equals(dir) ||
+                s_workspaceCache._maxAgeMillis != maxAgeMillis || s_workspaceCache._maxBytes != maxBytes) {
+            s_workspaceCache = new ReconResultCache(dir, maxAgeMillis, maxBytes);
+        }
+        return s_workspaceCache;
+    }
+
+    /**
+     * @param service the URL of the service
+     * @param query the query sent to the service, in JSON
+     * @return the results cached, or null if there are none or they are too old
+     */
+    public String get(String service, String query) {
+        return get(service + "\n" + query);
+    }
+
+    public void put(String service, String query, String results) {
+        put(service + "\n" + query, results);
+    }
+}
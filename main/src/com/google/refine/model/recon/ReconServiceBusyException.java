@@ -0,0 +1,23 @@
+package com.google.refine.model.recon;
+
+
+/**
+ * Thrown by {@link ReconConfig#tryBatchRecon} when the reconciliation service
+ * asks for fewer requests (HTTP 429 or 503). The batch should be sent again
+ * later rather than counted as failed.
+ */
+public class ReconServiceBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * How long the service asked to wait before retrying, in milliseconds,
+     * or 0 if it didn't say.
+     */
+    final public long retryAfter;
+
+    public ReconServiceBusyException(String message, long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
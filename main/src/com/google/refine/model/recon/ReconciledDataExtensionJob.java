@@ -46,15 +46,19 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONWriter;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.refine.model.ReconType;
 import com.google.refine.model.ReconCandidate;
 import com.google.refine.model.recon.StandardReconConfig;
@@ -83,21 +87,67 @@ public class ReconciledDataExtensionJob {
         }
     }
     
+    /**
+     * Extensions of ids fetched lately, keyed by service, properties and id,
+     * shared by all jobs so that extending other columns or projects with the
+     * same properties doesn't fetch them again.
+     */
+    static final protected Cache<String, DataExtension> s_extensions = CacheBuilder.newBuilder()
+            .maximumSize(100000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
+    /**
+     * The columns of the cached extensions, keyed by service and properties.
+     */
+    static final protected Cache<String, List<ColumnInfo>> s_columns = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
     final public JSONObject         extension;
     final public String             endpoint;
     final public List<ColumnInfo>   columns = new ArrayList<ColumnInfo>();
+    final protected String          _cacheKey;
     
     public ReconciledDataExtensionJob(JSONObject obj, String endpoint) throws JSONException {
         this.extension = obj;
         this.endpoint = endpoint;
+        this._cacheKey = endpoint + " " + obj.getJSONArray("properties").toString();
     }
     
+    /**
+     * Fetches the extensions of the ids not in the cache. Several batches
+     * of ids can be extended at once from different threads.
+     */
     public Map<String, ReconciledDataExtensionJob.DataExtension> extend(
         Set<String> ids,
         Map<String, ReconCandidate> reconCandidateMap
     ) throws Exception {
+        Map<String, ReconciledDataExtensionJob.DataExtension> map = new HashMap<String, ReconciledDataExtensionJob.DataExtension>();
+        Set<String> missingIds = new LinkedHashSet<String>();
+        synchronized (this) {
+            if (columns.size() == 0) {
+                List<ColumnInfo> cachedColumns = s_columns.getIfPresent(_cacheKey);
+                if (cachedColumns != null) {
+                    columns.addAll(cachedColumns);
+                }
+            }
+            for (String id : ids) {
+                DataExtension ext = columns.size() == 0 ? null : s_extensions.getIfPresent(_cacheKey + " " + id);
+                if (ext != null) {
+                    map.put(id, ext);
+                } else {
+                    missingIds.add(id);
+                }
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return map;
+        }
+
         StringWriter writer = new StringWriter();
-        formulateQuery(ids, extension, writer);
+        formulateQuery(missingIds, extension, writer);
 
         String query = writer.toString();
         InputStream is = performQuery(this.endpoint, query);
@@ -105,24 +155,28 @@ public class ReconciledDataExtensionJob {
             String s = ParsingUtilities.inputStreamToString(is);
             JSONObject o = ParsingUtilities.evaluateJsonStringToObject(s);
           
-            if(columns.size() == 0) {
-                // Extract the column metadata
-                gatherColumnInfo(o.getJSONArray("meta"), columns);    
-            }
-          
-            Map<String, ReconciledDataExtensionJob.DataExtension> map = new HashMap<String, ReconciledDataExtensionJob.DataExtension>();
-            if (o.has("rows")){
-                JSONObject records = o.getJSONObject("rows");
-                
-                // for each identifier
-                for (String id : ids) {
-                    if (records.has(id)) {
-                        JSONObject record = records.getJSONObject(id);
-                        
-                        ReconciledDataExtensionJob.DataExtension ext = collectResult(record, reconCandidateMap);
-                        
-                        if (ext != null) {
-                            map.put(id, ext);
+            // the columns and candidates are shared by concurrent batches
+            synchronized (this) {
+                if(columns.size() == 0) {
+                    // Extract the column metadata
+                    gatherColumnInfo(o.getJSONArray("meta"), columns);    
+                    s_columns.put(_cacheKey, new ArrayList<ColumnInfo>(columns));
+                }
+              
+                if (o.has("rows")){
+                    JSONObject records = o.getJSONObject("rows");
+                    
+                    // for each identifier
+                    for (String id : missingIds) {
+                        if (records.has(id)) {
+                            JSONObject record = records.getJSONObject(id);
+                            
+                            ReconciledDataExtensionJob.DataExtension ext = collectResult(record, reconCandidateMap);
+                            
+                            if (ext != null) {
+                                map.put(id, ext);
+                                s_extensions.put(_cacheKey + " " + id, ext);
+                            }
                         }
                     }
                 }
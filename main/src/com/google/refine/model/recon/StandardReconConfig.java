@@ -340,95 +340,166 @@ public class StandardReconConfig extends ReconConfig {
         return job;
     }
     
+    /**
+     * @param value a Retry-After header giving a number of seconds, or null
+     * @return the delay in milliseconds, or 0 if none could be parsed
+     */
+    static protected long parseRetryAfter(String value) {
+        if (value != null) {
+            try {
+                return Math.max(0, Long.parseLong(value.trim()) * 1000);
+            } catch (NumberFormatException e) {
+                // an HTTP date: just back off as usual
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the cache of results consulted before querying the service,
+     *      or null not to cache them
+     */
+    protected ReconResultCache getResultCache() {
+        return ReconResultCache.getWorkspaceCache();
+    }
+
     @Override
     public List<Recon> batchRecon(List<ReconJob> jobs, long historyEntryID) {
+        return batchRecon(jobs, historyEntryID, false);
+    }
+
+    @Override
+    public List<Recon> tryBatchRecon(List<ReconJob> jobs, long historyEntryID) {
+        return batchRecon(jobs, historyEntryID, true);
+    }
+
+    /**
+     * @param throwIfBusy whether to throw a {@link ReconServiceBusyException}
+     *      when the service asks for fewer requests, rather than failing
+     *      the jobs not answered from the cache
+     */
+    protected List<Recon> batchRecon(List<ReconJob> jobs, long historyEntryID, boolean throwIfBusy) {
         List<Recon> recons = new ArrayList<Recon>(jobs.size());
         
+        // the results of each job, from the cache or else from the service
+        JSONArray[] results = new JSONArray[jobs.size()];
+        boolean[] failed = new boolean[jobs.size()];
+        ReconResultCache cache = getResultCache();
+        
         StringWriter stringWriter = new StringWriter();
         
         stringWriter.write("{");
+        int queryCount = 0;
         for (int i = 0; i < jobs.size(); i++) {
             StandardReconJob job = (StandardReconJob) jobs.get(i);
-            if (i > 0) {
+            job.cached = false;
+            if (cache != null) {
+                String cached = cache.get(service, job.code);
+                if (cached != null) {
+                    try {
+                        results[i] = new JSONArray(cached);
+                        job.cached = true;
+                        continue;
+                    } catch (JSONException e) {
+                        // query the service again
+                    }
+                }
+            }
+            if (queryCount++ > 0) {
                 stringWriter.write(",");
             }
             stringWriter.write("\"q" + i + "\":");
             stringWriter.write(job.code);
+            failed[i] = true;
         }
         stringWriter.write("}");
         String queriesString = stringWriter.toString();
         
-        try {
-            URL url = new URL(service);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            {
-                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
-                connection.setConnectTimeout(30000);
-                connection.setDoOutput(true);
-                
-                DataOutputStream dos = new DataOutputStream(connection.getOutputStream());
-                try {
-                    String body = "queries=" + ParsingUtilities.encode(queriesString);
+        if (queryCount > 0) {
+            try {
+                URL url = new URL(service);
+                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                {
+                    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+                    connection.setConnectTimeout(30000);
+                    connection.setDoOutput(true);
+                    
+                    DataOutputStream dos = new DataOutputStream(connection.getOutputStream());
+                    try {
+                        String body = "queries=" + ParsingUtilities.encode(queriesString);
+                        
+                        dos.writeBytes(body);
+                    } finally {
+                        dos.flush();
+                        dos.close();
+                    }
                     
-                    dos.writeBytes(body);
-                } finally {
-                    dos.flush();
-                    dos.close();
+                    connection.connect();
                 }
                 
-                connection.connect();
-            }
-            
-            if (connection.getResponseCode() >= 400) {
-                InputStream is = connection.getErrorStream();
-                logger.error("Failed  - code:" 
-                        + Integer.toString(connection.getResponseCode()) 
-                        + " message: " + is == null ? ""
-                                : ParsingUtilities.inputStreamToString(is));
-            } else {
-                InputStream is = connection.getInputStream();
-                try {
-                    String s = ParsingUtilities.inputStreamToString(is);
-                    JSONObject o = ParsingUtilities.evaluateJsonStringToObject(s);
-
-                    for (int i = 0; i < jobs.size(); i++) {
-                        StandardReconJob job = (StandardReconJob) jobs.get(i);
-                        Recon recon = null;
-
-                        String text = job.text;
-                        String key = "q" + i;
-                        if (o.has(key)) {
-                            JSONObject o2 = o.getJSONObject(key);
-                            if (o2.has("result")) {
-                                JSONArray results = o2.getJSONArray("result");
-
-                                recon = createReconServiceResults(text, results, historyEntryID);
+                int responseCode = connection.getResponseCode();
+                if (throwIfBusy && (responseCode == 429 || responseCode == 503)) {
+                    throw new ReconServiceBusyException(
+                            "Reconciliation service busy - code:" + responseCode,
+                            parseRetryAfter(connection.getHeaderField("Retry-After")));
+                } else if (responseCode >= 400) {
+                    InputStream is = connection.getErrorStream();
+                    logger.error("Failed  - code:" 
+                            + Integer.toString(connection.getResponseCode()) 
+                            + " message: " + is == null ? ""
+                                    : ParsingUtilities.inputStreamToString(is));
+                } else {
+                    InputStream is = connection.getInputStream();
+                    try {
+                        String s = ParsingUtilities.inputStreamToString(is);
+                        JSONObject o = ParsingUtilities.evaluateJsonStringToObject(s);
+    
+                        for (int i = 0; i < jobs.size(); i++) {
+                            if (!failed[i]) {
+                                continue;
+                            }
+                            StandardReconJob job = (StandardReconJob) jobs.get(i);
+                            // answered, even if with an error
+                            failed[i] = false;
+    
+                            String text = job.text;
+                            String key = "q" + i;
+                            if (o.has(key)) {
+                                JSONObject o2 = o.getJSONObject(key);
+                                if (o2.has("result")) {
+                                    results[i] = o2.getJSONArray("result");
+                                    if (cache != null) {
+                                        cache.put(service, job.code, results[i].toString());
+                                    }
+                                } else {
+                                    logger.warn("Service error for text: " + text + "\n  Job code: " + job.code + "\n  Response: " + o2.toString());
+                                }
                             } else {
-                                logger.warn("Service error for text: " + text + "\n  Job code: " + job.code + "\n  Response: " + o2.toString());
+                                logger.warn("Service error for text: " + text + "\n  Job code: " + job.code);
                             }
-                        } else {
-                            logger.warn("Service error for text: " + text + "\n  Job code: " + job.code);
                         }
-
-                        if (recon != null) {
-                            recon.service = service;
-                        }
-                        recons.add(recon);
+                    } finally {
+                        is.close();
                     }
-                } finally {
-                    is.close();
                 }
+            } catch (ReconServiceBusyException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.error("Failed to batch recon with load:\n" + queriesString, e);
             }
-        } catch (Exception e) {
-            logger.error("Failed to batch recon with load:\n" + queriesString, e);
         }
 
-        while (recons.size() < jobs.size()) {
-            Recon recon = new Recon(historyEntryID, identifierSpace, schemaSpace);
-            recon.service = service;
-            recon.identifierSpace = identifierSpace;
-            recon.schemaSpace = schemaSpace;
-
+        for (int i = 0; i < jobs.size(); i++) {
+            Recon recon = null;
+            if (results[i] != null) {
+                recon = createReconServiceResults(((StandardReconJob) jobs.get(i)).text, results[i], historyEntryID);
+                recon.service = service;
+            } else if (failed[i]) {
+                recon = new Recon(historyEntryID, identifierSpace, schemaSpace);
+                recon.service = service;
+                recon.identifierSpace = identifierSpace;
+                recon.schemaSpace = schemaSpace;
+            }
             recons.add(recon);
         }
         
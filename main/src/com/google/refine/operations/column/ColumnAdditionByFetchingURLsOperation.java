@@ -33,13 +33,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.operations.column;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.io.Serializable;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +42,9 @@ import java.util.HashMap;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -75,12 +73,12 @@ import com.google.refine.operations.EngineDependentOperation;
 import com.google.refine.operations.OnError;
 import com.google.refine.operations.OperationRegistry;
 import com.google.refine.operations.cell.TextTransformOperation;
+import com.google.refine.preference.PreferenceStore;
 import com.google.refine.process.LongRunningProcess;
 import com.google.refine.process.Process;
-import com.google.refine.util.ParsingUtilities;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.CacheLoader;
+import com.google.refine.util.HostRateLimiter;
+import com.google.refine.util.UrlFetcher;
+import com.google.refine.util.UrlResponseCache;
 
 
 public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperation {
@@ -187,13 +185,20 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
         );
     }
 
+    /**
+     * Fetches the URLs on several connections at once. With responses cached,
+     * each distinct URL is only fetched once, and responses are kept in the
+     * workspace for later fetches of any project.
+     */
     public class ColumnAdditionByFetchingURLsProcess extends LongRunningProcess implements Runnable {
         final protected Project       _project;
         final protected Engine        _engine;
         final protected Evaluable     _eval;
         final protected long          _historyEntryID;
+        final protected boolean       _cacheResponses;
+        final protected Map<String, String> _httpHeaders;
         protected int                 _cellIndex;
-        protected LoadingCache<String, Serializable> _urlCache;
+        protected UrlFetcher          _fetcher;
 
         public ColumnAdditionByFetchingURLsProcess(
             Project project,
@@ -208,35 +213,16 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
             _engine = engine;
             _eval = eval;
             _historyEntryID = HistoryEntry.allocateID();
-            _urlCache = null;
-            if (cacheResponses) {
-                _urlCache = CacheBuilder.newBuilder()
-                .maximumSize(2048)
-                .expireAfterWrite(10, TimeUnit.MINUTES)
-                .build(
-                     new CacheLoader<String, Serializable>() {
-                        public Serializable load(String urlString) throws Exception {
-                            Serializable result = fetch(urlString);
-                            try {
-                                // Always sleep for the delay, no matter how long the
-                                // request took. This is more responsible than substracting
-                                // the time spend requesting the URL, because it naturally
-                                // slows us down if the server is busy and takes a long time
-                                // to reply.
-                                if (_delay > 0) {
-                                    Thread.sleep(_delay);
-                                }
-                            } catch (InterruptedException e) {
-                                result = null;
-                            }
-
-                            if (result == null) {
-                                // the load method should not return any null value
-                                throw new Exception("null result returned by fetch");
-                            }
-                            return result;
-                        }
-                        });
+            _cacheResponses = cacheResponses;
+            _httpHeaders = new HashMap<String, String>();
+            if (httpHeadersJson != null) {
+                for (int i = 0; i < httpHeadersJson.length(); i++) {
+                    String headerLabel = httpHeadersJson.getJSONObject(i).getString("name");
+                    HttpHeaderInfo info = HttpHeadersSupport.getHttpHeaderInfo(headerLabel);
+                    if (info != null) {
+                        _httpHeaders.put(info.header, httpHeadersJson.getJSONObject(i).getString("value"));
+                    }
+                }
             }
         }
 
@@ -275,31 +261,65 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
             FilteredRows filteredRows = _engine.getAllFilteredRows();
             filteredRows.accept(_project, createRowVisitor(urls));
 
+            int connections = Math.max(1, PreferenceStore.getIntPreference(
+                    UrlFetcher.CONNECTIONS_PREFERENCE_KEY, UrlFetcher.DEFAULT_CONNECTIONS));
+            UrlResponseCache cache = _cacheResponses ? UrlResponseCache.getWorkspaceCache(
+                    TimeUnit.HOURS.toMillis(Math.max(0, PreferenceStore.getIntPreference(
+                            UrlFetcher.CACHE_MAX_AGE_PREFERENCE_KEY, UrlFetcher.DEFAULT_CACHE_MAX_AGE_HOURS))),
+                    Math.max(0, PreferenceStore.getIntPreference(
+                            UrlFetcher.CACHE_MAX_SIZE_PREFERENCE_KEY, UrlFetcher.DEFAULT_CACHE_MAX_SIZE_MB)) * 1048576L) : null;
+            _fetcher = new UrlFetcher(
+                    connections,
+                    new HostRateLimiter(_delay, 1),
+                    Math.max(0, PreferenceStore.getIntPreference(UrlFetcher.RETRIES_PREFERENCE_KEY, UrlFetcher.DEFAULT_RETRIES)),
+                    cache);
+            ExecutorService executor = Executors.newFixedThreadPool(connections, r -> {
+                Thread thread = new Thread(r, "url-fetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+
             List<CellAtRow> responseBodies = new ArrayList<CellAtRow>(urls.size());
-            for (int i = 0; i < urls.size(); i++) {
-                CellAtRow urlData = urls.get(i);
-                String urlString = urlData.cell.value.toString();
-
-                Serializable response = null;
-                if (_urlCache != null) {
-                    response = cachedFetch(urlString);
-                } else {
-                    response = fetch(urlString);
+            try {
+                Map<String, Future<Serializable>> fetches = new HashMap<String, Future<Serializable>>();
+                List<Future<Serializable>> responses = new ArrayList<Future<Serializable>>(urls.size());
+                for (CellAtRow urlData : urls) {
+                    final String urlString = urlData.cell.value.toString();
+                    Future<Serializable> response = _cacheResponses ? fetches.get(urlString) : null;
+                    if (response == null) {
+                        response = executor.submit(() -> fetch(urlString));
+                        if (_cacheResponses) {
+                            fetches.put(urlString, response);
+                        }
+                    }
+                    responses.add(response);
                 }
 
-                if (response != null) {
-                    CellAtRow cellAtRow = new CellAtRow(
-                            urlData.row,
-                            new Cell(response, null));
+                for (int i = 0; i < urls.size() && !_canceled; i++) {
+                    Serializable response;
+                    try {
+                        response = responses.get(i).get();
+                    } catch (InterruptedException e) {
+                        _canceled = true;
+                        break;
+                    } catch (ExecutionException e) {
+                        response = _onError == OnError.StoreError ?
+                                new EvalError(e.getCause().getMessage()) : null;
+                    }
 
-                    responseBodies.add(cellAtRow);
-                }
+                    if (response != null) {
+                        CellAtRow cellAtRow = new CellAtRow(
+                                urls.get(i).row,
+                                new Cell(response, null));
 
-                _progress = i * 100 / urls.size();
+                        responseBodies.add(cellAtRow);
+                    }
 
-                if (_canceled) {
-                    break;
+                    _progress = i * 100 / urls.size();
                 }
+            } finally {
+                executor.shutdownNow();
+                _fetcher.close();
             }
 
             if (!_canceled) {
@@ -319,76 +339,13 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
             }
         }
 
-        Serializable cachedFetch(String urlString) {
-            try {
-                return  _urlCache.get(urlString);
-            } catch(Exception e) {
-                return null;
-            }
-        }
-
         Serializable fetch(String urlString) {
-            URL url = null;
             try {
-                url = new URL(urlString);
+                return _fetcher.fetch(urlString, _httpHeaders);
             } catch (MalformedURLException e) {
                 return null;
-            }
-
-            try {
-                URLConnection urlConnection = url.openConnection();
-                if (_httpHeadersJson != null) {
-                    Map<String, String> httpHeaders = new HashMap<>();
-                    for (int i = 0; i < _httpHeadersJson.length(); i++) {            
-                        String headerLabel = _httpHeadersJson.getJSONObject(i).getString("name");
-                        String headerValue = _httpHeadersJson.getJSONObject(i).getString("value");
-                        httpHeaders.put(headerLabel, headerValue);
-                    }
-                    for (String headerLabel : HttpHeadersSupport.getHttpHeaderLabels()) {
-                        HttpHeaderInfo info = HttpHeadersSupport.getHttpHeaderInfo(headerLabel);
-
-                        urlConnection.setRequestProperty(info.header, httpHeaders.get(headerLabel));
-                    }
-                }
-
-                try {
-                    InputStream is = urlConnection.getInputStream();
-                    try {
-                        String encoding = urlConnection.getContentEncoding();
-                        if (encoding == null) {
-                            String contentType = urlConnection.getContentType();
-                            if (contentType != null) {
-                                final String charsetEqual = "charset=";
-                                int c = contentType.lastIndexOf(charsetEqual);
-                                if (c > 0) {
-                                    encoding = contentType.substring(c + charsetEqual.length());
-                                }
-                            }
-                        }
-                        return ParsingUtilities.inputStreamToString(
-                                                is, (encoding == null) || ( encoding.equalsIgnoreCase("\"UTF-8\"")) ? "UTF-8" : encoding);
-
-                    } finally {
-                        is.close();
-                    }
-                } catch (IOException e) {
-                    String message;
-                    if (urlConnection instanceof HttpURLConnection) {
-                        int status = ((HttpURLConnection)urlConnection).getResponseCode();
-                        String errorString = "";
-                        InputStream errorStream = ((HttpURLConnection)urlConnection).getErrorStream();
-                        if (errorStream != null) {
-                            errorString = ParsingUtilities.inputStreamToString(errorStream);
-                        }
-                        message = String.format("HTTP error %d : %s | %s",status,
-                                ((HttpURLConnection)urlConnection).getResponseMessage(),
-                                errorString);
-                    } else {
-                        message = e.toString();
-                    }
-                    return _onError == OnError.StoreError ?
-                            new EvalError(message) : null;
-                }
+            } catch (InterruptedException e) {
+                return null;
             } catch (Exception e) {
                 return _onError == OnError.StoreError ?
                         new EvalError(e.getMessage()) : null;
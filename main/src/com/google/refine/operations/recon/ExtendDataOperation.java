@@ -35,11 +35,16 @@ package com.google.refine.operations.recon;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONException;
@@ -64,10 +69,16 @@ import com.google.refine.model.Row;
 import com.google.refine.model.changes.CellAtRow;
 import com.google.refine.operations.EngineDependentOperation;
 import com.google.refine.operations.OperationRegistry;
+import com.google.refine.preference.PreferenceStore;
 import com.google.refine.process.LongRunningProcess;
 import com.google.refine.process.Process;
 
 public class ExtendDataOperation extends EngineDependentOperation {
+    static final public String BATCH_SIZE_PREFERENCE_KEY = "extension.batchSize";
+    static final public String CONCURRENCY_PREFERENCE_KEY = "extension.concurrency";
+    static final public int DEFAULT_BATCH_SIZE = 50;
+    static final public int DEFAULT_CONCURRENCY = 4;
+
     final protected String     _baseColumnName;
     final protected String     _endpoint;
     final protected String     _identifierSpace;
@@ -146,6 +157,11 @@ public class ExtendDataOperation extends EngineDependentOperation {
         );
     }
     
+    /**
+     * Extends each distinct matched id once, in batches of which several are
+     * in flight at once, and hands the extensions out to all rows matched to
+     * the same id.
+     */
     public class ExtendDataProcess extends LongRunningProcess implements Runnable {
         final protected Project     _project;
         final protected JSONObject  _engineConfig;
@@ -226,45 +242,58 @@ public class ExtendDataOperation extends EngineDependentOperation {
             }.init(rowIndices));
         }
         
-        protected int extendRows(
-            List<Integer> rowIndices, 
-            List<DataExtension> dataExtensions, 
-            int from, 
-            int limit,
-            Map<String, ReconCandidate> reconCandidateMap
-        ) {
-            Set<String> ids = new HashSet<String>();
-            
-            int end;
-            for (end = from; end < limit && ids.size() < 10; end++) {
-                int index = rowIndices.get(end);
-                Row row = _project.rows.get(index);
-                Cell cell = row.getCell(_cellIndex);
-                
-                ids.add(cell.recon.match.id);
-            }
-            
-            Map<String, DataExtension> map = null;
+        /**
+         * @return the extensions of the ids, leaving out those of batches that failed
+         */
+        protected Map<String, DataExtension> extendIds(Set<String> ids) throws InterruptedException {
+            int batchSize = Math.max(1, PreferenceStore.getIntPreference(BATCH_SIZE_PREFERENCE_KEY, DEFAULT_BATCH_SIZE));
+            int concurrency = Math.max(1, PreferenceStore.getIntPreference(CONCURRENCY_PREFERENCE_KEY, DEFAULT_CONCURRENCY));
+            final Map<String, ReconCandidate> reconCandidateMap = new HashMap<String, ReconCandidate>();
+
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency, r -> {
+                Thread thread = new Thread(r, "data-extension");
+                thread.setDaemon(true);
+                return thread;
+            });
+            CompletionService<Map<String, DataExtension>> completion =
+                    new ExecutorCompletionService<Map<String, DataExtension>>(executor);
+            Map<String, DataExtension> extensions = new HashMap<String, DataExtension>();
             try {
-                map = _job.extend(ids, reconCandidateMap);
-            } catch (Exception e) {
-                map = new HashMap<String, DataExtension>();
-            }
-            
-            for (int i = from; i < end; i++) {
-                int index = rowIndices.get(i);
-                Row row = _project.rows.get(index);
-                Cell cell = row.getCell(_cellIndex);
-                String guid = cell.recon.match.id;
-                
-                if (map.containsKey(guid)) {
-                    dataExtensions.add(map.get(guid));
-                } else {
-                    dataExtensions.add(null);
+                int batches = 0;
+                Set<String> batch = new LinkedHashSet<String>();
+                for (String id : ids) {
+                    batch.add(id);
+                    if (batch.size() == batchSize) {
+                        submit(completion, batch, reconCandidateMap);
+                        batch = new LinkedHashSet<String>();
+                        batches++;
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    submit(completion, batch, reconCandidateMap);
+                    batches++;
                 }
+
+                for (int done = 1; done <= batches; done++) {
+                    try {
+                        extensions.putAll(completion.take().get());
+                    } catch (ExecutionException e) {
+                        // the rows of the batch get no data
+                    }
+                    _progress = done * 100 / batches;
+                }
+            } finally {
+                executor.shutdownNow();
             }
-            
-            return end;
+            return extensions;
+        }
+
+        protected void submit(
+            CompletionService<Map<String, DataExtension>> completion,
+            final Set<String> ids,
+            final Map<String, ReconCandidate> reconCandidateMap
+        ) {
+            completion.submit(() -> _job.extend(ids, reconCandidateMap));
         }
         
         @Override
@@ -279,21 +308,19 @@ public class ExtendDataOperation extends EngineDependentOperation {
                 e2.printStackTrace();
             }
             
-            int start = 0;
-            Map<String, ReconCandidate> reconCandidateMap = new HashMap<String, ReconCandidate>();
+            Set<String> ids = new LinkedHashSet<String>();
+            for (int index : rowIndices) {
+                ids.add(_project.rows.get(index).getCell(_cellIndex).recon.match.id);
+            }
             
-            while (start < rowIndices.size()) {
-                int end = extendRows(rowIndices, dataExtensions, start, rowIndices.size(), reconCandidateMap);
-                start = end;
-                
-                _progress = end * 100 / rowIndices.size();
-                try {
-                    Thread.sleep(200);
-                } catch (InterruptedException e) {
-                    if (_canceled) {
-                        break;
-                    }
+            try {
+                Map<String, DataExtension> extensions = extendIds(ids);
+                for (int index : rowIndices) {
+                    Cell cell = _project.rows.get(index).getCell(_cellIndex);
+                    dataExtensions.add(extensions.get(cell.recon.match.id));
                 }
+            } catch (InterruptedException e) {
+                _canceled = true;
             }
             
             if (!_canceled) {
@@ -33,7 +33,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.operations.recon;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +61,7 @@ import com.google.refine.model.Recon;
 import com.google.refine.model.Row;
 import com.google.refine.model.changes.CellChange;
 import com.google.refine.model.changes.ReconChange;
+import com.google.refine.model.recon.ReconBatchScheduler;
 import com.google.refine.model.recon.ReconConfig;
 import com.google.refine.model.recon.ReconJob;
 import com.google.refine.model.recon.StandardReconConfig;
@@ -245,6 +248,30 @@ public class ReconOperation extends EngineDependentOperation {
         
         @Override
         public void run() {
+            Exception failure = null;
+            try {
+                reconcile();
+            } catch (InterruptedException e) {
+                if (!_canceled) {
+                    logger.warn("Reconciliation interrupted", e);
+                    failure = e;
+                }
+            } catch (Exception e) {
+                logger.error("Reconciliation failed", e);
+                failure = e;
+            } finally {
+                // canceled processes are dropped by the process manager
+                if (!_canceled) {
+                    if (failure == null) {
+                        _project.processManager.onDoneProcess(this);
+                    } else {
+                        _project.processManager.onFailedProcess(this, failure);
+                    }
+                }
+            }
+        }
+        
+        protected void reconcile() throws InterruptedException {
             try {
                 populateEntries();
             } catch (Exception e2) {
@@ -272,25 +299,21 @@ public class ReconOperation extends EngineDependentOperation {
                 group.entries.add(entry);
             }
             
-            int batchSize = _reconConfig.getBatchSize();
-            int done = 0;
-            
             List<CellChange> cellChanges = new ArrayList<CellChange>(_entries.size());
             List<JobGroup> groups = new ArrayList<JobGroup>(jobKeyToGroup.values());
             
-            List<ReconJob> jobs = new ArrayList<ReconJob>(batchSize);
+            Deque<ReconJob> queue = new ArrayDeque<ReconJob>(groups.size());
             Map<ReconJob, JobGroup> jobToGroup = new HashMap<ReconJob, ReconOperation.JobGroup>();
+            for (JobGroup group : groups) {
+                queue.add(group.job);
+                jobToGroup.put(group.job, group);
+            }
             
-            for (int i = 0; i < groups.size(); /* don't increment here */) {
-                while (jobs.size() < batchSize && i < groups.size()) {
-                    JobGroup group = groups.get(i++);
-                    
-                    jobs.add(group.job);
-                    jobToGroup.put(group.job, group);
-                }
-                
-                List<Recon> recons = _reconConfig.batchRecon(jobs, _historyEntryID);
-                for (int j = jobs.size() - 1; j >= 0; j--) {
+            // jobs answered, and those of them answered from the cache of results
+            int[] answeredCounts = new int[2];
+            
+            new ReconBatchScheduler(_reconConfig, _historyEntryID).run(queue, (jobs, recons, retries) -> {
+                for (int j = 0; j < jobs.size(); j++) {
                     ReconJob job = jobs.get(j);
                     Recon    recon = j < recons.size() ? recons.get(j) : null;
                     JobGroup group = jobToGroup.get(job);
@@ -300,17 +323,21 @@ public class ReconOperation extends EngineDependentOperation {
                         group.trials++;
                         if (group.trials < 3) {
                             logger.warn("Re-trying job including cell containing: " + entries.get(0).cell.value);
-                            continue; // try again next time
+                            retries.add(job); // try again later
+                            continue;
                         }
                         logger.warn("Failed after 3 trials for job including cell containing: " + entries.get(0).cell.value);
                     }
                     
                     jobToGroup.remove(job);
-                    jobs.remove(j);
-                    done++;
                     
                     if (recon == null) {
                         recon = _reconConfig.createNewRecon(_historyEntryID);
+                    } else {
+                        answeredCounts[0]++;
+                        if (job.isCached()) {
+                            answeredCounts[1]++;
+                        }
                     }
                     recon.judgmentBatchSize = entries.size();
                     
@@ -328,14 +355,12 @@ public class ReconOperation extends EngineDependentOperation {
                     }
                 }
                 
-                _progress = done * 100 / groups.size();
-                try {
-                    Thread.sleep(50);
-                } catch (InterruptedException e) {
-                    if (_canceled) {
-                        break;
-                    }
-                }
+                _progress = (groups.size() - jobToGroup.size()) * 100 / groups.size();
+            });
+            
+            if (answeredCounts[1] > 0) {
+                logger.info("{} of {} queries answered from the reconciliation cache",
+                        answeredCounts[1], answeredCounts[0]);
             }
             
             if (!_canceled) {
@@ -355,7 +380,6 @@ public class ReconOperation extends EngineDependentOperation {
                 );
                 
                 _project.history.addEntry(historyEntry);
-                _project.processManager.onDoneProcess(this);
             }
         }
     }
@@ -52,8 +52,6 @@ import com.google.refine.model.Record;
 import com.google.refine.model.Row;
 import com.google.refine.model.changes.RowReorderChange;
 import com.google.refine.operations.OperationRegistry;
-import com.google.refine.sorting.SortingRecordVisitor;
-import com.google.refine.sorting.SortingRowVisitor;
 
 public class RowReorderOperation extends AbstractOperation {
     static public AbstractOperation reconstruct(Project project, JSONObject obj) throws Exception {
@@ -94,31 +92,28 @@ public class RowReorderOperation extends AbstractOperation {
         Engine engine = new Engine(project);
         engine.setMode(_mode);
 
+        // reuse the order computed for showing the sorted rows if there is one
+        int[] order = _sorting == null ? null : engine.getSortOrder(_sorting);
+
         List<Integer> rowIndices = new ArrayList<Integer>();
         if (_mode == Mode.RowBased) {
             RowVisitor visitor = new IndexingVisitor(rowIndices);
-            if (_sorting != null) {
-                SortingRowVisitor srv = new SortingRowVisitor(visitor);
-
-                srv.initializeFromJSON(project, _sorting);
-                if (srv.hasCriteria()) {
-                    visitor = srv;
+            if (order == null) {
+                engine.getAllRows().accept(project, visitor);
+            } else {
+                for (int rowIndex : order) {
+                    visitor.visit(project, rowIndex, project.rows.get(rowIndex));
                 }
             }
-
-            engine.getAllRows().accept(project, visitor);
         } else {
             RecordVisitor visitor = new IndexingVisitor(rowIndices);
-            if (_sorting != null) {
-                SortingRecordVisitor srv = new SortingRecordVisitor(visitor);
-
-                srv.initializeFromJSON(project, _sorting);
-                if (srv.hasCriteria()) {
-                    visitor = srv;
+            if (order == null) {
+                engine.getAllRecords().accept(project, visitor);
+            } else {
+                for (int recordIndex : order) {
+                    visitor.visit(project, project.recordModel.getRecord(recordIndex));
                 }
             }
-
-            engine.getAllRecords().accept(project, visitor);
         }
 
         return new HistoryEntry(
@@ -45,6 +45,7 @@ import org.json.JSONObject;
 import org.json.JSONWriter;
 
 import com.google.refine.Jsonizable;
+import com.google.refine.ProjectManager;
 import com.google.refine.RefineServlet;
 
 public class PreferenceStore implements Jsonizable {
@@ -73,6 +74,44 @@ public class PreferenceStore implements Jsonizable {
         return _prefs.keySet();
     }
     
+    /**
+     * @return the value of an integer preference of the workspace, or the
+     *      default if it isn't set or isn't a number
+     */
+    static public int getIntPreference(String key, int defaultValue) {
+        Object v = getWorkspacePreference(key);
+        if (v != null) {
+            try {
+                return Integer.parseInt(v.toString());
+            } catch (NumberFormatException e) {
+                // use default
+            }
+        }
+        return defaultValue;
+    }
+    
+    /**
+     * @return the value of a boolean preference of the workspace, or the
+     *      default if it isn't set
+     */
+    static public boolean getBooleanPreference(String key, boolean defaultValue) {
+        Object v = getWorkspacePreference(key);
+        if (v instanceof Boolean) {
+            return (Boolean) v;
+        } else if (v != null) {
+            return Boolean.parseBoolean(v.toString());
+        }
+        return defaultValue;
+    }
+    
+    static protected Object getWorkspacePreference(String key) {
+        if (ProjectManager.singleton == null) {
+            return null;
+        }
+        PreferenceStore ps = ProjectManager.singleton.getPreferenceStore();
+        return ps == null ? null : ps.get(key);
+    }
+    
     @Override
     public void write(JSONWriter writer, Properties options) throws JSONException {
         writer.object();
@@ -33,7 +33,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.sorting;
 
-import java.util.List;
+import java.text.CollationKey;
+import java.util.Date;
+import java.util.stream.IntStream;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -44,63 +46,39 @@ import com.google.refine.model.Project;
 import com.google.refine.sorting.Criterion.KeyMaker;
 
 abstract public class BaseSorter {
-    protected Criterion[] _criteria;
-    protected KeyMaker[] _keyMakers;
-    protected ComparatorWrapper[] _comparatorWrappers;
-    protected List<Object[]> _keys;
+    /**
+     * Below this many rows or records, keys are made and sorted on the
+     * calling thread.
+     */
+    static final public int MIN_PARALLEL_COUNT = 10000;
 
-    public class ComparatorWrapper {
-        final public int criterionIndex;
-        final protected int multiplier;
+    /**
+     * Number of rows or records whose keys are made by a single task.
+     */
+    static final public int CHUNK_SIZE = 4096;
 
-        public ComparatorWrapper(int criterionIndex) {
-            this.criterionIndex = criterionIndex;
-            this.multiplier = _criteria[criterionIndex].reverse ? -1 : 1;
-        }
+    static final private byte VALUE = 0;
+    static final private byte BLANK = 1;
+    static final private byte ERROR = 2;
 
-        public Object getKey(Project project, Object o, int index) {
-            while (index >= _keys.size()) {
-                _keys.add(null);
-            }
-
-            Object[] keys = _keys.get(index);
-            if (keys == null) {
-                keys = makeKeys(project, o, index);
-                _keys.set(index, keys);
-            }
-            return keys[criterionIndex];
-        }
+    protected Criterion[] _criteria;
 
-        public int compare(Project project, Object o1, int i1, Object o2, int i2) {
-            Criterion c = _criteria[criterionIndex];
-            Object key1 = getKey(project, o1, i1);
-            Object key2 = getKey(project, o2, i2);
+    /**
+     * The keys of one criterion for all the rows or records being sorted.
+     * Values are held in whichever primitive array fits the key maker's
+     * keys, so that comparing them doesn't go through their objects.
+     */
+    static protected class Keys {
+        final byte[] kinds;
+        Object[] objects;
+        double[] doubles;
+        long[] longs;
+        byte[][] bytes;
+        KeyMaker keyMaker; // compares the objects when no primitive array fits
 
-            if (key1 == null) {
-                if (key2 == null) {
-                    return 0;
-                } else if (key2 instanceof EvalError) {
-                    return c.blankPosition - c.errorPosition;
-                } else {
-                    return c.blankPosition;
-                }
-            } else if (key1 instanceof EvalError) {
-                if (key2 == null) {
-                    return c.errorPosition - c.blankPosition;
-                } else if (key2 instanceof EvalError) {
-                    return 0;
-                } else {
-                    return c.errorPosition;
-                }
-            } else {
-                if (key2 == null) {
-                    return -c.blankPosition;
-                } else if (key2 instanceof EvalError) {
-                    return -c.errorPosition;
-                } else {
-                    return _keyMakers[criterionIndex].compareKeys(key1, key2) * multiplier;
-                }
-            }
+        Keys(int count) {
+            kinds = new byte[count];
+            objects = new Object[count];
         }
     }
 
@@ -110,20 +88,11 @@ abstract public class BaseSorter {
             int count = a.length();
 
             _criteria = new Criterion[count];
-            _keyMakers = new KeyMaker[count];
-            _comparatorWrappers = new ComparatorWrapper[count];
-
             for (int i = 0; i < count; i++) {
-                JSONObject obj2 = a.getJSONObject(i);
-
-                _criteria[i] = createCriterionFromJSON(project, obj2);
-                _keyMakers[i] = _criteria[i].createKeyMaker();
-                _comparatorWrappers[i] = new ComparatorWrapper(i);
+                _criteria[i] = createCriterionFromJSON(project, a.getJSONObject(i));
             }
         } else {
             _criteria = new Criterion[0];
-            _keyMakers = new KeyMaker[0];
-            _comparatorWrappers = new ComparatorWrapper[0];
         }
     }
 
@@ -155,19 +124,193 @@ abstract public class BaseSorter {
     abstract protected Object makeKey(
             Project project, KeyMaker keyMaker, Criterion c, Object o, int index);
 
-    protected Object[] makeKeys(Project project, Object o, int index) {
-        Object[] keys = new Object[_keyMakers.length];
-        for (int i = 0; i < keys.length; i++) {
-            keys[i] = makeKey(project, _keyMakers[i], _criteria[i], o, index);
+    /**
+     * @return the row or record at the given index
+     */
+    abstract protected Object getObject(Project project, int index);
+
+    /**
+     * Sorts row or record indices by the criteria. Rows or records comparing
+     * equal keep their relative order.
+     *
+     * @param indices the indices, sorted in place
+     */
+    public void sort(Project project, int[] indices) {
+        if (indices.length < 2 || !hasCriteria()) {
+            return;
+        }
+
+        boolean parallel = indices.length >= MIN_PARALLEL_COUNT;
+        Keys[] keys = makeKeys(project, indices, parallel);
+        for (Keys k : keys) {
+            // other criteria's key makers aren't known to be thread-safe
+            parallel &= k.keyMaker == null;
+        }
+
+        // sort positions in the indices array, then map them back to indices
+        int[] positions = new int[indices.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        ParallelMergeSort.sort(positions, (p1, p2) -> compare(keys, p1, p2), parallel);
+
+        int[] sorted = new int[indices.length];
+        for (int i = 0; i < positions.length; i++) {
+            sorted[i] = indices[positions[i]];
+        }
+        System.arraycopy(sorted, 0, indices, 0, sorted.length);
+    }
+
+    protected Keys[] makeKeys(Project project, int[] indices, boolean parallel) {
+        int count = indices.length;
+        Keys[] keys = new Keys[_criteria.length];
+        for (int c = 0; c < keys.length; c++) {
+            keys[c] = new Keys(count);
+        }
+
+        int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream stream = IntStream.range(0, chunks);
+        (parallel ? stream.parallel() : stream).forEach(chunk -> {
+            // key makers may hold state that can't be shared, such as collators
+            KeyMaker[] keyMakers = new KeyMaker[_criteria.length];
+            for (int c = 0; c < keyMakers.length; c++) {
+                keyMakers[c] = _criteria[c].createKeyMaker();
+            }
+
+            int to = Math.min(count, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < to; i++) {
+                Object o = getObject(project, indices[i]);
+                for (int c = 0; c < keyMakers.length; c++) {
+                    Object key = makeKey(project, keyMakers[c], _criteria[c], o, indices[i]);
+                    if (key == null || "".equals(key)) {
+                        keys[c].kinds[i] = BLANK;
+                    } else if (key instanceof EvalError) {
+                        keys[c].kinds[i] = ERROR;
+                    } else {
+                        keys[c].objects[i] = key;
+                    }
+                }
+            }
+        });
+
+        for (int c = 0; c < keys.length; c++) {
+            if (!toPrimitives(keys[c])) {
+                keys[c].keyMaker = _criteria[c].createKeyMaker();
+            }
         }
         return keys;
     }
 
-    protected int compare(Project project, Object o1, int i1, Object o2, int i2) {
+    /**
+     * Moves the keys into a primitive array if they are all of one of the
+     * types the built-in criteria make.
+     *
+     * @return whether the keys were moved
+     */
+    static protected boolean toPrimitives(Keys keys) {
+        Object[] objects = keys.objects;
+        boolean numbers = true, dates = true, booleans = true, collationKeys = true;
+        for (Object o : objects) {
+            if (o != null) {
+                numbers &= o instanceof Number;
+                dates &= o instanceof Date;
+                booleans &= o instanceof Boolean;
+                collationKeys &= o instanceof CollationKey;
+            }
+        }
+
+        int count = objects.length;
+        if (numbers) {
+            keys.doubles = new double[count];
+            for (int i = 0; i < count; i++) {
+                if (objects[i] != null) {
+                    keys.doubles[i] = ((Number) objects[i]).doubleValue();
+                }
+            }
+        } else if (dates || booleans) {
+            keys.longs = new long[count];
+            for (int i = 0; i < count; i++) {
+                if (objects[i] != null) {
+                    keys.longs[i] = dates ? ((Date) objects[i]).getTime() : (((Boolean) objects[i]) ? 1 : 0);
+                }
+            }
+        } else if (collationKeys) {
+            keys.bytes = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                if (objects[i] != null) {
+                    keys.bytes[i] = ((CollationKey) objects[i]).toByteArray();
+                }
+            }
+        } else {
+            return false;
+        }
+        keys.objects = null;
+        return true;
+    }
+
+    protected int compare(Keys[] keys, int p1, int p2) {
         int c = 0;
-        for (int i = 0; c == 0 && i < _comparatorWrappers.length; i++) {
-            c = _comparatorWrappers[i].compare(project, o1, i1, o2, i2);
+        for (int i = 0; c == 0 && i < keys.length; i++) {
+            c = compare(i, keys[i], p1, p2);
         }
         return c;
     }
+
+    protected int compare(int criterionIndex, Keys keys, int p1, int p2) {
+        Criterion c = _criteria[criterionIndex];
+        byte kind1 = keys.kinds[p1];
+        byte kind2 = keys.kinds[p2];
+
+        if (kind1 == BLANK) {
+            if (kind2 == BLANK) {
+                return 0;
+            } else if (kind2 == ERROR) {
+                return c.blankPosition - c.errorPosition;
+            } else {
+                return c.blankPosition;
+            }
+        } else if (kind1 == ERROR) {
+            if (kind2 == BLANK) {
+                return c.errorPosition - c.blankPosition;
+            } else if (kind2 == ERROR) {
+                return 0;
+            } else {
+                return c.errorPosition;
+            }
+        } else {
+            if (kind2 == BLANK) {
+                return -c.blankPosition;
+            } else if (kind2 == ERROR) {
+                return -c.errorPosition;
+            } else {
+                int r;
+                if (keys.doubles != null) {
+                    double d1 = keys.doubles[p1];
+                    double d2 = keys.doubles[p2];
+                    r = d1 < d2 ? -1 : (d1 > d2 ? 1 : 0);
+                } else if (keys.longs != null) {
+                    r = Long.compare(keys.longs[p1], keys.longs[p2]);
+                } else if (keys.bytes != null) {
+                    r = compareBytes(keys.bytes[p1], keys.bytes[p2]);
+                } else {
+                    r = keys.keyMaker.compareKeys(keys.objects[p1], keys.objects[p2]);
+                }
+                return c.reverse ? -r : r;
+            }
+        }
+    }
+
+    /**
+     * Compares collation keys in their byte form, which orders them as
+     * {@link CollationKey#compareTo} does.
+     */
+    static protected int compareBytes(byte[] b1, byte[] b2) {
+        int l = Math.min(b1.length, b2.length);
+        for (int i = 0; i < l; i++) {
+            if (b1[i] != b2[i]) {
+                return (b1[i] & 0xff) - (b2[i] & 0xff);
+            }
+        }
+        return b1.length - b2.length;
+    }
 }
@@ -0,0 +1,94 @@
+package com.google.refine.sorting;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stable merge sort of an array of ints with a custom comparator, sorting
+ * halves concurrently on the common fork/join pool when they are large
+ * enough. Sorting indices this way avoids boxing them.
+ */
+public class ParallelMergeSort {
+    static final public int SEQUENTIAL_THRESHOLD = 8192;
+    static final private int INSERTION_THRESHOLD = 16;
+
+    public interface IntComparator {
+        int compare(int a, int b);
+    }
+
+    static public void sort(int[] a, IntComparator comparator, boolean parallel) {
+        int[] tmp = new int[a.length];
+        if (parallel && a.length > SEQUENTIAL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new SortTask(a, tmp, 0, a.length, comparator));
+        } else {
+            sort(a, tmp, 0, a.length, comparator);
+        }
+    }
+
+    static private class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int[] a;
+        final int[] tmp;
+        final int from;
+        final int to;
+        final IntComparator comparator;
+
+        SortTask(int[] a, int[] tmp, int from, int to, IntComparator comparator) {
+            this.a = a;
+            this.tmp = tmp;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                sort(a, tmp, from, to, comparator);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                    new SortTask(a, tmp, from, mid, comparator),
+                    new SortTask(a, tmp, mid, to, comparator));
+                merge(a, tmp, from, mid, to, comparator);
+            }
+        }
+    }
+
+    static private void sort(int[] a, int[] tmp, int from, int to, IntComparator comparator) {
+        if (to - from <= INSERTION_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(a[j], v) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+        } else {
+            int mid = (from + to) >>> 1;
+            sort(a, tmp, from, mid, comparator);
+            sort(a, tmp, mid, to, comparator);
+            merge(a, tmp, from, mid, to, comparator);
+        }
+    }
+
+    static private void merge(int[] a, int[] tmp, int from, int mid, int to, IntComparator comparator) {
+        if (comparator.compare(a[mid - 1], a[mid]) <= 0) {
+            return; // already in order
+        }
+
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && comparator.compare(tmp[i], tmp[j]) <= 0)) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+}
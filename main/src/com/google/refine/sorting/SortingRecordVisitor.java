@@ -33,10 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.sorting;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.util.Arrays;
 
 import com.google.refine.browsing.RecordVisitor;
 import com.google.refine.model.Project;
@@ -45,7 +42,8 @@ import com.google.refine.sorting.Criterion.KeyMaker;
 
 public class SortingRecordVisitor extends BaseSorter implements RecordVisitor {
     final protected RecordVisitor _visitor;
-    protected List<Record> _records;
+    protected int[] _recordIndices;
+    protected int _count;
 
     public SortingRecordVisitor(RecordVisitor visitor) {
         _visitor = visitor;
@@ -53,42 +51,42 @@ public class SortingRecordVisitor extends BaseSorter implements RecordVisitor {
 
     @Override
     public void start(Project project) {
-        int count = project.recordModel.getRecordCount();
-        _records = new ArrayList<Record>(count);
-        _keys = new ArrayList<Object[]>(count);
+        _recordIndices = new int[project.recordModel.getRecordCount()];
+        _count = 0;
     }
 
     @Override
     public void end(Project project) {
-        _visitor.start(project);
-
-        Collections.sort(_records, new Comparator<Record>() {
-            Project project;
-
-            Comparator<Record> init(Project project) {
-                this.project = project;
-                return this;
-            }
+        int[] recordIndices = Arrays.copyOf(_recordIndices, _count);
+        _recordIndices = null;
+        sort(project, recordIndices);
 
-            @Override
-            public int compare(Record o1, Record o2) {
-                return SortingRecordVisitor.this.compare(project, o1, o1.recordIndex, o2, o2.recordIndex);
+        _visitor.start(project);
+        try {
+            for (int recordIndex : recordIndices) {
+                if (_visitor.visit(project, project.recordModel.getRecord(recordIndex))) {
+                    break;
+                }
             }
-        }.init(project));
-
-        for (Record record : _records) {
-            _visitor.visit(project, record);
+        } finally {
+            _visitor.end(project);
         }
-
-        _visitor.end(project);
     }
 
     @Override
     public boolean visit(Project project, Record record) {
-        _records.add(record);
+        if (_count == _recordIndices.length) {
+            _recordIndices = Arrays.copyOf(_recordIndices, Math.max(16, _count * 2));
+        }
+        _recordIndices[_count++] = record.recordIndex;
         return false;
     }
 
+    @Override
+    protected Object getObject(Project project, int index) {
+        return project.recordModel.getRecord(index);
+    }
+
     @Override
     protected Object makeKey(
             Project project, KeyMaker keyMaker, Criterion c, Object o, int index) {
@@ -68,10 +68,13 @@ public class StringCriterion extends Criterion {
 
     @Override
     public KeyMaker createKeyMaker() {
+        // one collator per key maker, so that keys can be made concurrently
+        // without contending for it
+        final Collator keyCollator = (Collator) collator.clone();
         return new KeyMaker() {
             @Override
             protected Object makeKey(Object value) {
-                return collator.getCollationKey((ExpressionUtils.isNonBlankData(value) 
+                return keyCollator.getCollationKey((ExpressionUtils.isNonBlankData(value) 
                         && !(value instanceof String)) ? value.toString() : (String) value);
             }
 
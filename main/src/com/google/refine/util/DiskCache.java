@@ -0,0 +1,264 @@
+package com.google.refine.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Strings kept on disk, one file per key named after the hash of the key,
+ * so that they are shared by all projects and outlive restarts.
+ * <p>
+ * Entries are dropped once older than the maximum age, and the least
+ * recently used ones once they take more than the maximum size. Expired
+ * entries which aren't read again are swept out when the cache is first
+ * used, and then every so often as entries are added.
+ * <p>
+ * Each entry is written to a temporary file first and then moved in place,
+ * so that concurrent readers never read half an entry.
+ */
+public class DiskCache {
+    final static Logger logger = LoggerFactory.getLogger("disk-cache");
+
+    /**
+     * Expired entries are swept out at most this often.
+     */
+    static final public long SWEEP_INTERVAL = 3600000;
+
+    final protected File _dir;
+    final protected long _maxAgeMillis;
+    final protected long _maxBytes;
+
+    /**
+     * The size of each file, least recently used first, read from the
+     * directory when first needed.
+     */
+    protected LinkedHashMap<String, Long> _sizes;
+    protected long _totalBytes;
+    protected long _lastSweep;
+
+    final protected AtomicLong _hits = new AtomicLong();
+    final protected AtomicLong _misses = new AtomicLong();
+    final protected AtomicLong _evictions = new AtomicLong();
+
+    public DiskCache(File dir, long maxAgeMillis, long maxBytes) {
+        _dir = dir;
+        _maxAgeMillis = maxAgeMillis;
+        _maxBytes = maxBytes;
+    }
+
+    public File getDir() {
+        return _dir;
+    }
+
+    public long getMaxAgeMillis() {
+        return _maxAgeMillis;
+    }
+
+    public long getMaxBytes() {
+        return _maxBytes;
+    }
+
+    /**
+     * @param key the key, which is hashed to name the file
+     * @return the string cached, or null if there is none or it is too old
+     */
+    public String get(String key) {
+        File file = getFile(hash(key));
+        synchronized (this) {
+            if (getSizes().get(file.getName()) == null) {
+                _misses.incrementAndGet();
+                return null;
+            }
+        }
+        if (System.currentTimeMillis() - file.lastModified() > _maxAgeMillis) {
+            remove(file.getName());
+            _misses.incrementAndGet();
+            return null;
+        }
+        try {
+            String value = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            _hits.incrementAndGet();
+            return value;
+        } catch (IOException e) {
+            // evicted meanwhile
+            remove(file.getName());
+            _misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(String key, String value) {
+        File file = getFile(hash(key));
+        File dir = file.getParentFile();
+        dir.mkdirs();
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        try {
+            File temp = File.createTempFile("entry", ".tmp", dir);
+            try {
+                OutputStream os = new FileOutputStream(temp);
+                try {
+                    os.write(bytes);
+                } finally {
+                    os.close();
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to cache an entry in " + _dir, e);
+            return;
+        }
+
+        boolean sweep;
+        synchronized (this) {
+            Long previous = getSizes().put(file.getName(), (long) bytes.length);
+            _totalBytes += bytes.length - (previous == null ? 0 : previous);
+
+            Iterator<Map.Entry<String, Long>> i = _sizes.entrySet().iterator();
+            while (_totalBytes > _maxBytes && i.hasNext()) {
+                Map.Entry<String, Long> eldest = i.next();
+                if (eldest.getKey().equals(file.getName())) {
+                    continue;
+                }
+                i.remove();
+                _totalBytes -= eldest.getValue();
+                getFile(eldest.getKey()).delete();
+                _evictions.incrementAndGet();
+            }
+
+            sweep = System.currentTimeMillis() - _lastSweep > SWEEP_INTERVAL;
+        }
+        if (sweep) {
+            sweep();
+        }
+    }
+
+    /**
+     * Deletes the entries older than the maximum age.
+     */
+    public void sweep() {
+        List<String> names;
+        synchronized (this) {
+            _lastSweep = System.currentTimeMillis();
+            names = new ArrayList<String>(getSizes().keySet());
+        }
+        long now = System.currentTimeMillis();
+        for (String name : names) {
+            if (now - getFile(name).lastModified() > _maxAgeMillis) {
+                remove(name);
+            }
+        }
+    }
+
+    public long getHits() {
+        return _hits.get();
+    }
+
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    public long getEvictions() {
+        return _evictions.get();
+    }
+
+    /**
+     * @return the share of lookups answered from the cache, 0 before any
+     */
+    public double getHitRate() {
+        long hits = _hits.get();
+        long lookups = hits + _misses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    synchronized public long getTotalBytes() {
+        getSizes();
+        return _totalBytes;
+    }
+
+    protected void remove(String name) {
+        synchronized (this) {
+            Long size = getSizes().remove(name);
+            if (size != null) {
+                _totalBytes -= size;
+            }
+        }
+        getFile(name).delete();
+    }
+
+    /**
+     * @return the sizes of the files, read from the directory, oldest first,
+     *      the first time, leaving out those too old
+     */
+    protected LinkedHashMap<String, Long> getSizes() {
+        if (_sizes == null) {
+            long now = System.currentTimeMillis();
+            List<File> files = new ArrayList<File>();
+            File[] subdirs = _dir.listFiles();
+            if (subdirs != null) {
+                for (File subdir : subdirs) {
+                    File[] children = subdir.listFiles();
+                    if (children != null) {
+                        for (File file : children) {
+                            if (file.getName().endsWith(".tmp") ||
+                                    now - file.lastModified() > _maxAgeMillis) {
+                                // left by a crash, or expired
+                                file.delete();
+                            } else {
+                                files.add(file);
+                            }
+                        }
+                    }
+                }
+            }
+            files.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+            _sizes = new LinkedHashMap<String, Long>(16, 0.75f, true);
+            _totalBytes = 0;
+            _lastSweep = now;
+            for (File file : files) {
+                _sizes.put(file.getName(), file.length());
+                _totalBytes += file.length();
+            }
+        }
+        return _sizes;
+    }
+
+    protected File getFile(String hash) {
+        // spread the files over subdirectories
+        return new File(new File(_dir, hash.substring(0, 2)), hash);
+    }
+
+    /**
+     * @return the SHA-1 hash of the key, in hexadecimal
+     */
+    static public String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.google.refine.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Spaces out requests to each host with a token bucket, so that a host gets
+ * at most one request per interval on average, and no more than a burst of
+ * requests at once, however many threads send them. Hosts are limited
+ * independently of each other.
+ */
+public class HostRateLimiter {
+    final protected long _intervalNanos;
+    final protected int _burst;
+    final protected ConcurrentMap<String, Bucket> _buckets = new ConcurrentHashMap<String, Bucket>();
+
+    /**
+     * @param intervalMillis the time between two requests to a host, 0 not to
+     *      limit requests
+     * @param burst the number of requests a host can get at once after a lull
+     */
+    public HostRateLimiter(long intervalMillis, int burst) {
+        _intervalNanos = intervalMillis * 1000000L;
+        _burst = Math.max(1, burst);
+    }
+
+    /**
+     * Waits until a request can be sent to the host.
+     */
+    public void acquire(String host) throws InterruptedException {
+        if (_intervalNanos <= 0) {
+            return;
+        }
+
+        Bucket bucket = _buckets.get(host);
+        if (bucket == null) {
+            Bucket newBucket = new Bucket();
+            bucket = _buckets.putIfAbsent(host, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+
+        long waitNanos = bucket.reserve();
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+        }
+    }
+
+    protected class Bucket {
+        /**
+         * When the next request is due were requests evenly spaced. Tokens
+         * are reserved by moving it forward, so waiting threads take turns.
+         */
+        protected long _due = System.nanoTime();
+
+        /**
+         * @return how long to wait for the token reserved
+         */
+        synchronized protected long reserve() {
+            long now = System.nanoTime();
+            long due = Math.max(_due, now);
+            _due = due + _intervalNanos;
+            // a burst lets requests go ahead of their due time
+            return Math.max(0, due - _intervalNanos * (_burst - 1) - now);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.google.refine.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+import com.google.refine.Jsonizable;
+
+/**
+ * A thread-safe map holding at most a given number of entries, dropping the
+ * least recently used one when full. It counts hits and misses so that its
+ * effectiveness can be reported.
+ */
+public class LRUCache<K, V> implements Jsonizable {
+    final protected int _maxSize;
+    final protected Map<K, V> _map;
+
+    protected long _hits;
+    protected long _misses;
+
+    public LRUCache(int maxSize) {
+        _maxSize = maxSize;
+        _map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > _maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value, or null if there is none
+     */
+    synchronized public V get(K key) {
+        V value = _map.get(key);
+        if (value != null) {
+            _hits++;
+        } else {
+            _misses++;
+        }
+        return value;
+    }
+
+    synchronized public void put(K key, V value) {
+        _map.put(key, value);
+    }
+
+    synchronized public void clear() {
+        _map.clear();
+    }
+
+    synchronized public int size() {
+        return _map.size();
+    }
+
+    public int getMaxSize() {
+        return _maxSize;
+    }
+
+    synchronized public long getHits() {
+        return _hits;
+    }
+
+    synchronized public long getMisses() {
+        return _misses;
+    }
+
+    @Override
+    synchronized public void write(JSONWriter writer, Properties options) throws JSONException {
+        writer.object();
+        writer.key("size"); writer.value(_map.size());
+        writer.key("maxSize"); writer.value(_maxSize);
+        writer.key("hits"); writer.value(_hits);
+        writer.key("misses"); writer.value(_misses);
+        writer.endObject();
+    }
+}
@@ -40,18 +40,21 @@ import java.io.LineNumberReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Serializable;
 import java.io.Writer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONException;
 import org.json.JSONWriter;
 
 import com.google.refine.Jsonizable;
 import com.google.refine.RefineServlet;
+import com.google.refine.model.Cell;
 import com.google.refine.model.Recon;
 import com.google.refine.model.ReconCandidate;
 
@@ -60,8 +63,19 @@ import com.google.refine.model.ReconCandidate;
  *
  */
 public class Pool implements Jsonizable {
+    /**
+     * Upper bound on the number of distinct cell values shared while loading,
+     * so that columns of unique values don't make the dictionary itself
+     * larger than the cells it saves.
+     */
+    static final public int MAX_SHARED_CELLS = 1 << 20;
+    
     final protected Map<String, Recon> recons = new HashMap<String, Recon>();
     
+    // Cells are immutable, so rows loaded through the same pool can share
+    // a single instance per distinct plain value. Rows may be loaded concurrently.
+    final protected Map<Serializable, Cell> cells = new ConcurrentHashMap<Serializable, Cell>();
+    
     // This is only for backward compatibility while loading old project files
     final protected Map<String, ReconCandidate> candidates = new HashMap<String, ReconCandidate>();
     
@@ -93,6 +107,34 @@ public class Pool implements Jsonizable {
         return candidates.get(topicID);
     }
     
+    /**
+     * Returns a cell holding the given value and recon, reusing a previously
+     * loaded instance when the value is a plain string, number or boolean
+     * and the cell is not reconciled.
+     */
+    public Cell getCell(Serializable value, Recon recon) {
+        if (recon != null || !isShareable(value)) {
+            return new Cell(value, recon);
+        }
+        
+        Cell cell = cells.get(value);
+        if (cell == null) {
+            cell = new Cell(value, null);
+            if (cells.size() < MAX_SHARED_CELLS) {
+                Cell existing = cells.putIfAbsent(value, cell);
+                if (existing != null) {
+                    cell = existing;
+                }
+            }
+        }
+        return cell;
+    }
+    
+    static private boolean isShareable(Serializable value) {
+        return value instanceof String || value instanceof Long
+            || value instanceof Double || value instanceof Boolean;
+    }
+    
     public void save(OutputStream out) throws IOException {
         Writer writer = new OutputStreamWriter(out, "UTF-8");
         try {
@@ -0,0 +1,216 @@
+package com.google.refine.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Fetches the bodies of URLs from several threads at once. HTTP requests go
+ * through a pool of kept-alive connections, spaced out per host by a rate
+ * limiter, and are retried with an increasing delay when the server is
+ * overloaded or the connection drops. Responses can be cached on disk.
+ */
+public class UrlFetcher {
+    static final public String CONNECTIONS_PREFERENCE_KEY = "fetching.connections";
+    static final public String RETRIES_PREFERENCE_KEY = "fetching.retries";
+    static final public String CACHE_MAX_AGE_PREFERENCE_KEY = "fetching.cacheMaxAgeHours";
+    static final public String CACHE_MAX_SIZE_PREFERENCE_KEY = "fetching.cacheMaxSizeMB";
+
+    static final public int DEFAULT_CONNECTIONS = 8;
+    static final public int DEFAULT_RETRIES = 2;
+    static final public int DEFAULT_CACHE_MAX_AGE_HOURS = 24;
+    static final public int DEFAULT_CACHE_MAX_SIZE_MB = 100;
+
+    static final protected long BACKOFF_MILLIS = 1000;
+    static final protected long MAX_BACKOFF_MILLIS = 60000;
+    static final protected int CONNECT_TIMEOUT_MILLIS = 30000;
+    static final protected int READ_TIMEOUT_MILLIS = 60000;
+
+    final protected PoolingClientConnectionManager _connectionManager;
+    final protected HttpClient _client;
+    final protected HostRateLimiter _limiter;
+    final protected int _retries;
+    final protected UrlResponseCache _cache;
+
+    /**
+     * @param connections the number of connections to keep open, at most
+     * @param limiter the limiter spacing out requests to each host
+     * @param retries the number of times a request is tried again
+     * @param cache the cache of responses, or null not to cache them
+     */
+    public UrlFetcher(int connections, HostRateLimiter limiter, int retries, UrlResponseCache cache) {
+        _connectionManager = new PoolingClientConnectionManager();
+        _connectionManager.setMaxTotal(connections);
+        _connectionManager.setDefaultMaxPerRoute(connections);
+
+        DefaultHttpClient client = new DefaultHttpClient(_connectionManager);
+        HttpParams params = client.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT_MILLIS);
+        HttpConnectionParams.setSoTimeout(params, READ_TIMEOUT_MILLIS);
+        _client = new DecompressingHttpClient(client);
+
+        _limiter = limiter;
+        _retries = retries;
+        _cache = cache;
+    }
+
+    /**
+     * @param headers the request headers, whose null values are left out
+     * @return the body of the response
+     * @throws MalformedURLException if the string isn't a URL
+     * @throws IOException if the request failed, or the server responded
+     *      with an HTTP error
+     */
+    public String fetch(String urlString, Map<String, String> headers)
+            throws IOException, InterruptedException {
+        URL url = new URL(urlString);
+        if (_cache != null) {
+            String cached = _cache.get(urlString, headers);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        String protocol = url.getProtocol();
+        String body = "http".equals(protocol) || "https".equals(protocol) ?
+                fetchHttp(url, headers) : fetchOther(url, headers);
+
+        if (_cache != null) {
+            _cache.put(urlString, headers, body);
+        }
+        return body;
+    }
+
+    protected String fetchHttp(URL url, Map<String, String> headers)
+            throws IOException, InterruptedException {
+        URI uri = toURI(url);
+        for (int attempt = 0; ; attempt++) {
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, BACKOFF_MILLIS << attempt);
+
+            _limiter.acquire(url.getHost());
+            HttpGet get = new HttpGet(uri);
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    if (header.getValue() != null) {
+                        get.setHeader(header.getKey(), header.getValue());
+                    }
+                }
+            }
+
+            HttpResponse response;
+            String body;
+            try {
+                response = _client.execute(get);
+                HttpEntity entity = response.getEntity();
+                // reading the whole entity releases the connection to the pool
+                body = entity == null ? "" : EntityUtils.toString(entity, "UTF-8");
+            } catch (IOException e) {
+                get.abort();
+                if (attempt >= _retries || !isTransient(e)) {
+                    throw e;
+                }
+                Thread.sleep(backoff);
+                continue;
+            }
+
+            int status = response.getStatusLine().getStatusCode();
+            if (status < 400) {
+                return body;
+            } else if (attempt >= _retries || !isTransient(status)) {
+                throw new IOException(String.format("HTTP error %d : %s | %s", status,
+                        response.getStatusLine().getReasonPhrase(), body));
+            }
+            Thread.sleep(Math.max(backoff, getRetryAfter(response)));
+        }
+    }
+
+    /**
+     * Fetches URLs of other protocols, such as files, as they were always.
+     */
+    protected String fetchOther(URL url, Map<String, String> headers) throws IOException {
+        URLConnection urlConnection = url.openConnection();
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        InputStream is = urlConnection.getInputStream();
+        try {
+            return ParsingUtilities.inputStreamToString(is, "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    public void close() {
+        _connectionManager.shutdown();
+    }
+
+    /**
+     * Escapes the characters browsers let through in URLs but URIs forbid.
+     */
+    static protected URI toURI(URL url) throws MalformedURLException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            try {
+                return new URI(url.getProtocol(), url.getUserInfo(), url.getHost(), url.getPort(),
+                        url.getPath(), url.getQuery(), url.getRef());
+            } catch (URISyntaxException e2) {
+                throw new MalformedURLException(e2.getMessage());
+            }
+        }
+    }
+
+    static protected boolean isTransient(int status) {
+        return status == 429 ||
+                status == HttpStatus.SC_BAD_GATEWAY ||
+                status == HttpStatus.SC_SERVICE_UNAVAILABLE ||
+                status == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+
+    static protected boolean isTransient(IOException e) {
+        return e instanceof SocketTimeoutException ||
+                e instanceof ConnectTimeoutException ||
+                e instanceof NoHttpResponseException ||
+                (e instanceof SocketException && !(e instanceof ConnectException));
+    }
+
+    /**
+     * @return the delay the server asked for in seconds, in milliseconds
+     */
+    static protected long getRetryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header != null) {
+            try {
+                return Math.min(MAX_BACKOFF_MILLIS, Long.parseLong(header.getValue().trim()) * 1000);
+            } catch (NumberFormatException e) {
+                // an HTTP date, not worth parsing
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,59 @@
+package com.google.refine.util;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.io.FileProjectManager;
+
+/**
+ * Responses to URL fetches kept on disk, in the workspace's cache directory,
+ * so that they are shared by all projects and outlive restarts. A response
+ * is keyed by its URL and the request headers.
+ */
+public class UrlResponseCache extends DiskCache {
+    static protected UrlResponseCache s_workspaceCache;
+
+    public UrlResponseCache(File dir, long maxAgeMillis, long maxBytes) {
+        super(dir, maxAgeMillis, maxBytes);
+    }
+
+    /**
+     * @return the cache of the workspace, or null when projects aren't kept
+     *      in a workspace directory
+     */
+    static synchronized public UrlResponseCache getWorkspaceCache(long maxAgeMillis, long maxBytes) {
+        if (!(ProjectManager.singleton instanceof FileProjectManager)) {
+            return null;
+        }
+        File workspaceDir = ((FileProjectManager) ProjectManager.singleton).getWorkspaceDir();
+        File dir = new File(new File(workspaceDir, "cache"), "urls");
+        if (s_workspaceCache == null || !s_workspaceCache._dir.equals(dir) ||
+                s_workspaceCache._maxAgeMillis != maxAgeMillis || s_workspaceCache._maxBytes != maxBytes) {
+            s_workspaceCache = new UrlResponseCache(dir, maxAgeMillis, maxBytes);
+        }
+        return s_workspaceCache;
+    }
+
+    /**
+     * @return the response cached, or null if there is none or it is too old
+     */
+    public String get(String url, Map<String, String> headers) {
+        return get(getKey(url, headers));
+    }
+
+    public void put(String url, Map<String, String> headers, String response) {
+        put(getKey(url, headers), response);
+    }
+
+    protected String getKey(String url, Map<String, String> headers) {
+        StringBuilder key = new StringBuilder(url);
+        if (headers != null) {
+            for (Map.Entry<String, String> header : new TreeMap<String, String>(headers).entrySet()) {
+                key.append('\n').append(header.getKey()).append(": ").append(header.getValue());
+            }
+        }
+        return key.toString();
+    }
+}
@@ -52,7 +52,9 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
 import com.google.refine.ProjectManager;
+import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
+import com.google.refine.model.Row;
 import com.google.refine.model.medadata.ProjectMetadata;
 import com.google.refine.process.ProcessManager;
 import com.google.refine.tests.model.ProjectStub;
@@ -205,8 +207,38 @@ public class ProjectManagerTests extends RefineTest {
     }
     //TODO test canSaveAllModifiedWithRaceCondition
 
+    @Test
+    public void flushesLeastRecentlyUsedProjectsOverBudget(){
+        Project p1 = projectWithRows(100);
+        Project p2 = projectWithRows(100);
+        Project p3 = projectWithRows(100);
+        long size = p1.estimateMemoryUsage();
+
+        pm.setProjectsMemoryBudget(size * 5 / 2);
+        pm.registerProject(p1, new ProjectMetadata());
+        pm.registerProject(p2, new ProjectMetadata());
+        pm.getProject(p1.id);
+        pm.registerProject(p3, new ProjectMetadata());
+
+        Assert.assertSame(pm.getProject(p1.id), p1);
+        Assert.assertNull(pm.getProject(p2.id));
+        Assert.assertSame(pm.getProject(p3.id), p3);
+        Assert.assertEquals(pm.getProjectsMemoryUsage(), 2 * size);
+    }
+
     //-------------helpers-------------
 
+    protected Project projectWithRows(int count) {
+        Project proj = new Project();
+        for (int i = 0; i < count; i++) {
+            Row row = new Row(2);
+            row.setCell(0, new Cell("value " + i, null));
+            row.setCell(1, new Cell((long) i, null));
+            proj.rows.add(row);
+        }
+        return proj;
+    }
+
     protected void registerProject(){
         SUT.registerProject(project, metadata);
     }
@@ -0,0 +1,108 @@
+package com.google.refine.tests.browsing;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.model.Project;
+import com.google.refine.tests.RefineTest;
+
+public class EngineTests extends RefineTest {
+    private Project project;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        project = createCSVProject("EngineTests",
+                "foo,bar\n"
+              + "a,x\n"
+              + "a,y\n"
+              + "b,x\n"
+              + "b,x\n"
+              + "c,y\n");
+    }
+
+    static private String listFacet(String columnName, String selected) {
+        String selection = selected == null ? "[]" :
+            "[{\"v\":{\"v\":\"" + selected + "\",\"l\":\"" + selected + "\"}}]";
+        return "{\"type\":\"list\",\"name\":\"" + columnName + "\",\"columnName\":\"" + columnName + "\","
+                + "\"expression\":\"value\",\"selection\":" + selection + "}";
+    }
+
+    static private Map<String, Integer> choiceCounts(JSONObject facet) throws Exception {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        JSONArray choices = facet.getJSONArray("choices");
+        for (int i = 0; i < choices.length(); i++) {
+            JSONObject choice = choices.getJSONObject(i);
+            counts.put(choice.getJSONObject("v").getString("v"), choice.getInt("c"));
+        }
+        return counts;
+    }
+
+    private JSONArray computeFacets(String mode, String... facets) throws Exception {
+        Engine engine = new Engine(project);
+        engine.initializeFromJSON(new JSONObject(
+                "{\"mode\":\"" + mode + "\",\"facets\":[" + String.join(",", facets) + "]}"));
+        engine.computeFacets();
+
+        JSONStringer writer = new JSONStringer();
+        engine.write(writer, new Properties());
+        return new JSONObject(writer.toString()).getJSONArray("facets");
+    }
+
+    @Test
+    public void eachFacetIsFilteredByAllOthers() throws Exception {
+        JSONArray facets = computeFacets(Engine.MODE_ROW_BASED,
+                listFacet("foo", "a"), listFacet("bar", "x"), listFacet("foo", null));
+
+        Map<String, Integer> foo = choiceCounts(facets.getJSONObject(0));
+        Assert.assertEquals(foo.size(), 2);
+        Assert.assertEquals(foo.get("a"), Integer.valueOf(1));
+        Assert.assertEquals(foo.get("b"), Integer.valueOf(2));
+
+        Map<String, Integer> bar = choiceCounts(facets.getJSONObject(1));
+        Assert.assertEquals(bar.size(), 2);
+        Assert.assertEquals(bar.get("x"), Integer.valueOf(1));
+        Assert.assertEquals(bar.get("y"), Integer.valueOf(1));
+
+        Map<String, Integer> unselected = choiceCounts(facets.getJSONObject(2));
+        Assert.assertEquals(unselected.size(), 1);
+        Assert.assertEquals(unselected.get("a"), Integer.valueOf(1));
+    }
+
+    @Test
+    public void singleFacetSeesAllRecords() throws Exception {
+        JSONArray facets = computeFacets(Engine.MODE_RECORD_BASED, listFacet("foo", "a"));
+
+        Map<String, Integer> foo = choiceCounts(facets.getJSONObject(0));
+        Assert.assertEquals(foo.get("a"), Integer.valueOf(2));
+        Assert.assertEquals(foo.get("b"), Integer.valueOf(2));
+        Assert.assertEquals(foo.get("c"), Integer.valueOf(1));
+    }
+
+    @Test
+    public void cachedMatchesGiveSameChoices() throws Exception {
+        JSONArray first = computeFacets(Engine.MODE_ROW_BASED, listFacet("foo", "a"), listFacet("bar", "x"));
+        JSONArray second = computeFacets(Engine.MODE_ROW_BASED, listFacet("foo", "a"), listFacet("bar", "y"));
+
+        Assert.assertEquals(choiceCounts(first.getJSONObject(1)), choiceCounts(second.getJSONObject(1)));
+        Map<String, Integer> foo = choiceCounts(second.getJSONObject(0));
+        Assert.assertEquals(foo.get("a"), Integer.valueOf(1));
+        Assert.assertEquals(foo.get("c"), Integer.valueOf(1));
+    }
+}
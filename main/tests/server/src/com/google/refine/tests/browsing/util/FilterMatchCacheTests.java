@@ -0,0 +1,82 @@
+package com.google.refine.tests.browsing.util;
+
+import java.util.BitSet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.browsing.util.FilterMatchCache;
+import com.google.refine.model.Project;
+import com.google.refine.tests.RefineTest;
+
+public class FilterMatchCacheTests extends RefineTest {
+    static final long PROJECT_ID = 1234L;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        FilterMatchCache.dispose(PROJECT_ID);
+    }
+
+    @Test
+    public void flushDropsEntries() {
+        BitSet matches = new BitSet();
+        matches.set(3);
+        FilterMatchCache.put(PROJECT_ID, FilterMatchCache.getVersion(PROJECT_ID), "facet", matches);
+        Assert.assertEquals(FilterMatchCache.get(PROJECT_ID, "facet"), matches);
+
+        FilterMatchCache.flush(PROJECT_ID);
+        Assert.assertNull(FilterMatchCache.get(PROJECT_ID, "facet"));
+    }
+
+    @Test
+    public void staleMatchesAreNotCached() {
+        long version = FilterMatchCache.getVersion(PROJECT_ID);
+        FilterMatchCache.flush(PROJECT_ID);
+        FilterMatchCache.put(PROJECT_ID, version, "facet", new BitSet());
+        Assert.assertNull(FilterMatchCache.get(PROJECT_ID, "facet"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        long version = FilterMatchCache.getVersion(PROJECT_ID);
+        for (int i = 0; i <= FilterMatchCache.MAX_ENTRIES_PER_PROJECT; i++) {
+            FilterMatchCache.put(PROJECT_ID, version, "facet" + i, new BitSet());
+            // keep the first entry warm
+            FilterMatchCache.get(PROJECT_ID, "facet0");
+        }
+        Assert.assertNotNull(FilterMatchCache.get(PROJECT_ID, "facet0"));
+        Assert.assertNull(FilterMatchCache.get(PROJECT_ID, "facet1"));
+    }
+
+    private JSONObject listFacet(String expression) {
+        return new JSONObject()
+            .put("type", "list").put("name", "n").put("columnName", "n").put("expression", expression)
+            .put("selection", new JSONArray().put(new JSONObject().put("v", new JSONObject().put("v", "a").put("l", "a"))));
+    }
+
+    @Test
+    public void skipExpressionsNotOfOneRow() throws Exception {
+        Project project = createCSVProject("n\na\nb\n");
+        JSONObject rowOnly = listFacet("value");
+        JSONObject clock = listFacet("now().toString()");
+        Engine engine = new Engine(project);
+        engine.initializeFromJSON(new JSONObject().put("facets", new JSONArray().put(rowOnly).put(clock)));
+        engine.computeFacets();
+
+        Assert.assertNotNull(FilterMatchCache.get(project.id, "row-based:" + rowOnly.toString()));
+        Assert.assertNull(FilterMatchCache.get(project.id, "row-based:" + clock.toString()));
+        FilterMatchCache.dispose(project.id);
+    }
+}
@@ -0,0 +1,121 @@
+package com.google.refine.tests.browsing.util;
+
+import java.util.Arrays;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.util.ExpressionBasedRowEvaluable;
+import com.google.refine.browsing.util.NumericBinIndex;
+import com.google.refine.browsing.util.NumericBinRowIndex;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.model.changes.RowReorderChange;
+import com.google.refine.tests.RefineTest;
+
+public class NumericBinIndexTests extends RefineTest {
+    static final String KEY = "numeric-bin:row-based:value.toNumber()";
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    private NumericBinRowIndex index(Project project) throws Exception {
+        return new NumericBinRowIndex(project,
+                new ExpressionBasedRowEvaluable("n", 0, MetaParser.parse("value.toNumber()")), true);
+    }
+
+    private void assertSameBins(NumericBinIndex index, NumericBinIndex expected) {
+        Assert.assertEquals(index.getMin(), expected.getMin());
+        Assert.assertEquals(index.getMax(), expected.getMax());
+        Assert.assertEquals(index.getStep(), expected.getStep());
+        Assert.assertEquals(index.getBins(), expected.getBins());
+        Assert.assertEquals(index.getNumericRowCount(), expected.getNumericRowCount());
+        Assert.assertEquals(index.getNonNumericRowCount(), expected.getNonNumericRowCount());
+        Assert.assertEquals(index.getBlankRowCount(), expected.getBlankRowCount());
+        Assert.assertEquals(index.getErrorRowCount(), expected.getErrorRowCount());
+        Assert.assertEquals(index.isNumeric(), expected.isNumeric());
+    }
+
+    private void edit(Project project, int row, String value) {
+        Cell oldCell = project.rows.get(row).getCell(0);
+        new CellChange(row, 0, oldCell, new Cell(value, null)).apply(project);
+    }
+
+    @Test
+    public void followCellEdits() throws Exception {
+        Project project = createCSVProject("n,m\n1,a\n5,b\n12,c\n,d\nabc,e\n40,f\n7,g\n");
+        Column column = project.columnModel.getColumnByName("n");
+        NumericBinRowIndex original = index(project);
+        int[] originalBins = original.getBins().clone();
+        double originalMax = original.getMax();
+        column.setPrecompute(KEY, original);
+
+        // within the range, out of it, from blank to number and to text
+        String[][] edits = { { "1", "6" }, { "5", "1000" }, { "3", "2" }, { "6", "xyz" }, { "4", "-3.5" } };
+        for (String[] edit : edits) {
+            edit(project, Integer.parseInt(edit[0]), edit[1]);
+
+            NumericBinIndex updated = (NumericBinIndex) column.getPrecompute(KEY);
+            Assert.assertNotNull(updated, "dropped after editing row " + edit[0]);
+            assertSameBins(updated, index(project));
+        }
+
+        // readers of the first index are unaffected
+        Assert.assertEquals(original.getBins(), originalBins);
+        Assert.assertEquals(original.getMax(), originalMax);
+    }
+
+    @Test
+    public void dropIndexesWhenRowsMove() throws Exception {
+        Project project = createCSVProject("n,m\n1,a\nabc,b\n5,c\n");
+        Column column = project.columnModel.getColumnByName("n");
+        column.setPrecompute(KEY, index(project));
+
+        RowReorderChange reorder = new RowReorderChange(Arrays.asList(1, 0, 2));
+        reorder.apply(project);
+        Assert.assertNull(column.getPrecompute(KEY));
+
+        // as a facet would, before the cell is edited
+        column.setPrecompute(KEY, index(project));
+        edit(project, 0, "2");
+        NumericBinIndex updated = (NumericBinIndex) column.getPrecompute(KEY);
+        assertSameBins(updated, index(project));
+        Assert.assertEquals(updated.getNumericRowCount(), 3);
+        Assert.assertEquals(updated.getMin(), 1.0);
+
+        reorder.revert(project);
+        Assert.assertNull(column.getPrecompute(KEY));
+    }
+
+    @Test
+    public void dropIndexesWhichCannotFollow() throws Exception {
+        Project project = createCSVProject("n\n1\n2\n3\n");
+        Column column = project.columnModel.getColumnByName("n");
+        column.setPrecompute(KEY, new NumericBinRowIndex(project,
+                new ExpressionBasedRowEvaluable("n", 0, MetaParser.parse("value.toNumber()"))));
+        column.setPrecompute("other", "not an index");
+
+        edit(project, 0, "4");
+        Assert.assertNull(column.getPrecompute(KEY));
+        Assert.assertNull(column.getPrecompute("other"));
+    }
+
+    @Test
+    public void tellExpressionsOfOneRow() {
+        Assert.assertTrue(MetaParser.dependsOnRowOnly("value.toNumber()"));
+        Assert.assertTrue(MetaParser.dependsOnRowOnly("grel:cells['a'].value + value"));
+        Assert.assertFalse(MetaParser.dependsOnRowOnly("row.index"));
+        Assert.assertFalse(MetaParser.dependsOnRowOnly("facetCount(value, 'value', 'n')"));
+        Assert.assertFalse(MetaParser.dependsOnRowOnly("grel:row.record.cells['a'].value"));
+        Assert.assertFalse(MetaParser.dependsOnRowOnly("clojure:value"));
+        Assert.assertFalse(MetaParser.dependsOnRowOnly("now().toString()"));
+    }
+}
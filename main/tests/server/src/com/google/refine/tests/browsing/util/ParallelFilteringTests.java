@@ -0,0 +1,44 @@
+package com.google.refine.tests.browsing.util;
+
+import java.util.BitSet;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.util.ParallelFiltering;
+import com.google.refine.tests.RefineTest;
+
+public class ParallelFilteringTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void matchesSameIndicesAsSequentialScan() {
+        int count = ParallelFiltering.CHUNK_SIZE * 3 + 17;
+        BitSet matches = ParallelFiltering.match(count, i -> i % 3 == 0 || i == count - 1);
+
+        BitSet expected = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            if (i % 3 == 0 || i == count - 1) {
+                expected.set(i);
+            }
+        }
+        Assert.assertEquals(matches, expected);
+    }
+
+    @Test
+    public void matchesNothingOnEmptyInput() {
+        Assert.assertTrue(ParallelFiltering.match(0, i -> true).isEmpty());
+    }
+
+    @Test
+    public void disabledForSmallProjects() {
+        Assert.assertFalse(ParallelFiltering.isEnabled(ParallelFiltering.MIN_COUNT - 1));
+    }
+}
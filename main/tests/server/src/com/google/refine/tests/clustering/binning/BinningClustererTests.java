@@ -0,0 +1,84 @@
+package com.google.refine.tests.clustering.binning;
+
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.clustering.binning.BinningClusterer;
+import com.google.refine.model.Project;
+import com.google.refine.tests.RefineTest;
+
+public class BinningClustererTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void clusterByFingerprint() throws Exception {
+        Project project = createCSVProject("name\n"
+                + "Acme Inc\n"
+                + "inc acme\n"
+                + "Acme Inc\n"
+                + "Other\n"
+                + "\"ACME, Inc.\"\n"
+                + "Foo Bar\n"
+                + "bar foo\n");
+
+        JSONArray clusters = computeClusters(project, "fingerprint");
+
+        Assert.assertEquals(clusters.length(), 2);
+        JSONArray acme = clusters.getJSONArray(0);
+        Assert.assertEquals(acme.length(), 3);
+        Assert.assertEquals(acme.getJSONObject(0).getString("v"), "Acme Inc");
+        Assert.assertEquals(acme.getJSONObject(0).getInt("c"), 2);
+        Assert.assertEquals(acme.getJSONObject(1).getString("v"), "ACME, Inc.");
+        Assert.assertEquals(acme.getJSONObject(2).getString("v"), "inc acme");
+        Assert.assertEquals(clusters.getJSONArray(1).length(), 2);
+    }
+
+    @Test
+    public void clusterManyValues() throws Exception {
+        StringBuilder sb = new StringBuilder("name\n");
+        for (int i = 0; i < 20000; i++) {
+            sb.append("value ").append(i % 5000).append('\n');
+            sb.append(i % 5000).append(" VALUE\n");
+        }
+        Project project = createCSVProject(sb.toString());
+
+        JSONArray clusters = computeClusters(project, "fingerprint");
+
+        Assert.assertEquals(clusters.length(), 5000);
+        for (int i = 0; i < clusters.length(); i++) {
+            JSONArray cluster = clusters.getJSONArray(i);
+            Assert.assertEquals(cluster.length(), 2);
+            Assert.assertEquals(cluster.getJSONObject(0).getInt("c"), 4);
+        }
+    }
+
+    protected JSONArray computeClusters(Project project, String function) throws Exception {
+        JSONObject config = new JSONObject();
+        config.put("type", "binning");
+        config.put("function", function);
+        config.put("column", "name");
+        config.put("params", new JSONObject());
+
+        BinningClusterer clusterer = new BinningClusterer();
+        clusterer.initializeFromJSON(project, config);
+        clusterer.computeClusters(new Engine(project));
+
+        StringWriter writer = new StringWriter();
+        clusterer.write(new JSONWriter(writer), new Properties());
+        return new JSONArray(writer.toString());
+    }
+}
@@ -0,0 +1,97 @@
+package com.google.refine.tests.clustering.knn;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Properties;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.clustering.knn.NGramBlockingClusterer;
+import com.google.refine.clustering.knn.NGramBlockingClusterer.DisjointSets;
+import com.google.refine.clustering.knn.kNNClusterer;
+import com.google.refine.model.Project;
+import com.google.refine.tests.RefineTest;
+
+import edu.mit.simile.vicino.distances.LevenshteinDistance;
+
+public class kNNClustererTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void clusterByLevenshtein() throws Exception {
+        Project project = createCSVProject("name\n"
+                + "kitten\n"
+                + "sitten\n"
+                + "sittin\n"
+                + "sitten\n"
+                + "foobar\n"
+                + "other value\n");
+
+        JSONObject params = new JSONObject();
+        params.put("radius", 1);
+        params.put("blocking-ngram-size", 2);
+        JSONObject config = new JSONObject();
+        config.put("type", "knn");
+        config.put("function", "levenshtein");
+        config.put("column", "name");
+        config.put("params", params);
+
+        kNNClusterer clusterer = new kNNClusterer();
+        clusterer.initializeFromJSON(project, config);
+        clusterer.computeClusters(new Engine(project));
+        StringWriter writer = new StringWriter();
+        clusterer.write(new JSONWriter(writer), new Properties());
+        JSONArray clusters = new JSONArray(writer.toString());
+
+        // kitten and sittin are two edits apart, but both are one from sitten
+        Assert.assertEquals(clusters.length(), 1);
+        JSONArray cluster = clusters.getJSONArray(0);
+        Assert.assertEquals(cluster.length(), 3);
+        Assert.assertEquals(cluster.getJSONObject(0).getString("v"), "sitten");
+        Assert.assertEquals(cluster.getJSONObject(0).getInt("c"), 2);
+        Assert.assertEquals(cluster.getJSONObject(1).getString("v"), "kitten");
+        Assert.assertEquals(cluster.getJSONObject(2).getString("v"), "sittin");
+    }
+
+    @Test
+    public void leaveOutLargeBlocks() {
+        String[] values = new String[] { "abcd", "abce", "abcf", "xbcg" };
+
+        List<int[]> clusters = new NGramBlockingClusterer(new LevenshteinDistance(), 1, 3, 2)
+                .getClusters(values);
+
+        // the n-gram "abc" is held by three values, more than allowed
+        Assert.assertEquals(clusters.size(), 0);
+
+        clusters = new NGramBlockingClusterer(new LevenshteinDistance(), 1, 3, 3).getClusters(values);
+        Assert.assertEquals(clusters.size(), 1);
+        Assert.assertEquals(clusters.get(0), new int[] { 0, 1, 2 });
+    }
+
+    @Test
+    public void joinSets() {
+        DisjointSets sets = new DisjointSets(6);
+        sets.union(0, 3);
+        sets.union(4, 3);
+        sets.union(1, 5);
+
+        Assert.assertEquals(sets.find(0), sets.find(4));
+        Assert.assertNotEquals(sets.find(0), sets.find(1));
+        List<int[]> result = sets.getSets();
+        Assert.assertEquals(result.size(), 2);
+        Assert.assertEquals(result.get(0), new int[] { 0, 3, 4 });
+        Assert.assertEquals(result.get(1), new int[] { 1, 5 });
+    }
+}
@@ -0,0 +1,106 @@
+package com.google.refine.tests.commands.row;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.commands.row.GetRowsCommand;
+import com.google.refine.model.Project;
+import com.google.refine.tests.RefineTest;
+
+public class GetRowsCommandTests extends RefineTest {
+    private Project project;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        StringBuilder csv = new StringBuilder("name,parity\n");
+        for (int i = 0; i < 50; i++) {
+            csv.append("n").append(i).append(',').append(i % 2 == 0 ? "even" : "odd").append('\n');
+        }
+        project = createCSVProject(csv.toString());
+    }
+
+    private JSONObject getRows(String mode, int start, int limit, String sorting) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter output = new StringWriter();
+
+        when(request.getParameter("project")).thenReturn(Long.toString(project.id));
+        when(request.getParameter("start")).thenReturn(Integer.toString(start));
+        when(request.getParameter("limit")).thenReturn(Integer.toString(limit));
+        when(request.getParameter("sorting")).thenReturn(sorting);
+        when(request.getParameter("engine")).thenReturn("{\"mode\":\"" + mode + "\",\"facets\":[{"
+                + "\"type\":\"list\",\"name\":\"parity\",\"columnName\":\"parity\",\"expression\":\"value\","
+                + "\"selection\":[{\"v\":{\"v\":\"odd\",\"l\":\"odd\"}}]}]}");
+        when(response.getWriter()).thenReturn(new PrintWriter(output));
+
+        new GetRowsCommand().doGet(request, response);
+        return new JSONObject(output.toString());
+    }
+
+    static private String cellValue(JSONObject row) throws Exception {
+        return row.getJSONArray("cells").getJSONObject(0).getString("v");
+    }
+
+    @Test
+    public void pagesThroughFilteredRows() throws Exception {
+        JSONObject result = getRows("row-based", 10, 5, null);
+
+        Assert.assertEquals(result.getInt("filtered"), 25);
+        Assert.assertEquals(result.getInt("total"), 50);
+        JSONArray rows = result.getJSONArray("rows");
+        Assert.assertEquals(rows.length(), 5);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(rows.getJSONObject(i).getInt("i"), 2 * (10 + i) + 1);
+        }
+
+        Assert.assertEquals(getRows("row-based", 23, 5, null).getJSONArray("rows").length(), 2);
+    }
+
+    @Test
+    public void pagesThroughSortedRows() throws Exception {
+        String sorting = "{\"criteria\":[{\"column\":\"name\",\"valueType\":\"string\","
+                + "\"reverse\":true,\"blankPosition\":2,\"errorPosition\":1}]}";
+
+        // read twice, the second time from the cached order
+        for (int pass = 0; pass < 2; pass++) {
+            JSONObject result = getRows("row-based", 0, 3, sorting);
+            Assert.assertEquals(result.getInt("filtered"), 25);
+            JSONArray rows = result.getJSONArray("rows");
+            Assert.assertEquals(cellValue(rows.getJSONObject(0)), "n9");
+            Assert.assertEquals(cellValue(rows.getJSONObject(1)), "n7");
+            Assert.assertEquals(cellValue(rows.getJSONObject(2)), "n5");
+        }
+    }
+
+    @Test
+    public void pagesThroughRecords() throws Exception {
+        JSONObject result = getRows("record-based", 1, 2, null);
+
+        Assert.assertEquals(result.getString("mode"), "record-based");
+        Assert.assertEquals(result.getInt("filtered"), 25);
+        JSONArray rows = result.getJSONArray("rows");
+        Assert.assertEquals(rows.length(), 2);
+        Assert.assertEquals(cellValue(rows.getJSONObject(0)), "n3");
+        Assert.assertEquals(cellValue(rows.getJSONObject(1)), "n5");
+    }
+}
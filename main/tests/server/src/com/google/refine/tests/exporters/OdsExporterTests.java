@@ -0,0 +1,101 @@
+package com.google.refine.tests.exporters;
+
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Properties;
+
+import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
+import org.odftoolkit.odfdom.doc.table.OdfTable;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.browsing.Engine;
+import com.google.refine.exporters.OdsExporter;
+import com.google.refine.exporters.StreamExporter;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.model.medadata.ProjectMetadata;
+import com.google.refine.tests.ProjectManagerStub;
+import com.google.refine.tests.RefineTest;
+
+public class OdsExporterTests extends RefineTest {
+
+    private static final String TEST_PROJECT_NAME = "ods exporter test project";
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    //dependencies
+    ByteArrayOutputStream stream;
+    ProjectMetadata projectMetadata;
+    Project project;
+    Engine engine;
+    Properties options;
+
+    //System Under Test
+    StreamExporter SUT;
+
+    @BeforeMethod
+    public void SetUp(){
+        SUT = new OdsExporter();
+        stream = new ByteArrayOutputStream();
+        ProjectManager.singleton = new ProjectManagerStub();
+        projectMetadata = new ProjectMetadata();
+        project = new Project();
+        projectMetadata.setName(TEST_PROJECT_NAME);
+        ProjectManager.singleton.registerProject(project, projectMetadata);
+        engine = new Engine(project);
+        options = mock(Properties.class);
+    }
+
+    @AfterMethod
+    public void TearDown(){
+        SUT = null;
+        stream = null;
+        ProjectManager.singleton.deleteProject(project.id);
+        project = null;
+        engine = null;
+        options = null;
+    }
+
+    @Test
+    public void exportSimpleOds() throws Exception {
+        project.columnModel.addColumn(0, new Column(0, "name"), true);
+        project.columnModel.addColumn(1, new Column(1, "size"), true);
+        Row row = new Row(2);
+        row.cells.add(new Cell("a & <b>", null));
+        row.cells.add(new Cell(2.5, null));
+        project.rows.add(row);
+        row = new Row(2);
+        row.cells.add(null);
+        row.cells.add(new Cell(true, null));
+        project.rows.add(row);
+
+        SUT.export(project, options, engine, stream);
+
+        OdfSpreadsheetDocument odfDoc = OdfSpreadsheetDocument.loadDocument(
+                new ByteArrayInputStream(stream.toByteArray()));
+        List<OdfTable> tables = odfDoc.getTableList();
+        Assert.assertEquals(tables.size(), 1);
+        OdfTable table = tables.get(0);
+        Assert.assertEquals(table.getTableName(), TEST_PROJECT_NAME);
+        Assert.assertEquals(table.getRowCount(), 3);
+        Assert.assertEquals(table.getCellByPosition(1, 0).getStringValue(), "size");
+        Assert.assertEquals(table.getCellByPosition(0, 1).getStringValue(), "a & <b>");
+        Assert.assertEquals(table.getCellByPosition(1, 1).getDoubleValue(), 2.5);
+        Assert.assertEquals(table.getCellByPosition(1, 2).getBooleanValue(), Boolean.TRUE);
+    }
+}
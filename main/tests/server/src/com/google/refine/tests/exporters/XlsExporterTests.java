@@ -39,7 +39,13 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
 
 import org.slf4j.LoggerFactory;
@@ -53,10 +59,13 @@ import com.google.refine.ProjectManager;
 import com.google.refine.browsing.Engine;
 import com.google.refine.exporters.StreamExporter;
 import com.google.refine.exporters.XlsExporter;
+import com.google.refine.importers.TabularImportingParserBase.TableDataReader;
+import com.google.refine.importers.XlsxStreamingReader;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Column;
 import com.google.refine.model.ModelException;
 import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
 import com.google.refine.model.Row;
 import com.google.refine.model.medadata.ProjectMetadata;
 import com.google.refine.tests.ProjectManagerStub;
@@ -121,6 +130,36 @@ public class XlsExporterTests extends RefineTest {
 
     }
 
+    @Test
+    public void exportXlsxAsItGoes() throws IOException{
+        CreateGrid(2, 2);
+        project.rows.get(1).cells.set(0, new Cell(2.5, null));
+        project.rows.get(1).cells.set(1, new Cell(true, null));
+
+        SUT = new XlsExporter(true);
+        SUT.export(project, options, engine, stream);
+
+        File file = File.createTempFile("openrefine-exporter-test", ".xlsx");
+        file.deleteOnExit();
+        OutputStream outputStream = new FileOutputStream(file);
+        stream.writeTo(outputStream);
+        outputStream.close();
+
+        XlsxStreamingReader reader = new XlsxStreamingReader(file);
+        try {
+            Assert.assertEquals(reader.getSheetNames(), Collections.singletonList(TEST_PROJECT_NAME));
+            TableDataReader rows = reader.readSheet(0, new HashMap<String, Recon>());
+            Assert.assertEquals(((Cell) rows.getNextRowOfCells().get(1)).value, "column1");
+            Assert.assertEquals(((Cell) rows.getNextRowOfCells().get(0)).value, "row0cell0");
+            List<Object> row = rows.getNextRowOfCells();
+            Assert.assertEquals(((Cell) row.get(0)).value, 2.5);
+            Assert.assertEquals(((Cell) row.get(1)).value, true);
+            Assert.assertNull(rows.getNextRowOfCells());
+        } finally {
+            reader.close();
+        }
+    }
+
     @Test(enabled=false)
     public void exportSimpleXlsNoHeader(){
         CreateGrid(2, 2);
@@ -34,12 +34,17 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.tests.expr.functions;
 
 
+import java.util.Properties;
+
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
 import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.expr.WrappedCell;
+import com.google.refine.model.Project;
 import com.google.refine.tests.RefineTest;
 
 
@@ -74,4 +79,51 @@ public class ExpressionUtilsTests extends RefineTest {
         Assert.assertFalse(ExpressionUtils.sameValue(1,1.0));
         Assert.assertFalse(ExpressionUtils.sameValue(true,false));
     }
+
+    @Test
+    public void testBindingsFollowRows() throws Exception {
+        Project project = createCSVProject("a,b\nw,x\n,y\n");
+        Properties bindings = ExpressionUtils.createBindings(project);
+
+        ExpressionUtils.bind(bindings, project.rows.get(0), 0, "a", project.rows.get(0).getCell(0));
+        Assert.assertEquals(bindings.get("value"), "w");
+        Assert.assertEquals(bindings.get("rowIndex"), 0);
+        Assert.assertEquals(bindings.get("columnName"), "a");
+        Assert.assertTrue(bindings.get("cell") instanceof WrappedCell);
+        Assert.assertEquals(MetaParser.parse("cells.b.value + rowIndex").evaluate(bindings), "x0");
+
+        // a control may bind its own "value" for the rest of the row
+        bindings.put("value", "other");
+        Assert.assertEquals(bindings.get("value"), "other");
+
+        ExpressionUtils.bind(bindings, project.rows.get(1), 1, null, project.rows.get(1).getCell(0));
+        Assert.assertNull(bindings.get("value"));
+        Assert.assertFalse(bindings.containsKey("value"));
+        Assert.assertFalse(bindings.containsKey("cell"));
+        Assert.assertEquals(bindings.get("columnName"), "a");
+        Assert.assertEquals(bindings.get("project"), project);
+        Assert.assertEquals(bindings.get("PI"), Math.PI);
+    }
+
+    @Test
+    public void testAcquiredBindingsAreRecycled() throws Exception {
+        Project project = createCSVProject("a\n1\n");
+
+        Properties bindings = ExpressionUtils.acquireBindings(project);
+        ExpressionUtils.bind(bindings, project.rows.get(0), 0, "a", project.rows.get(0).getCell(0));
+        Properties nested = ExpressionUtils.acquireBindings(project);
+        Assert.assertNotSame(nested, bindings);
+        ExpressionUtils.releaseBindings(nested);
+        ExpressionUtils.releaseBindings(bindings);
+
+        Properties again = ExpressionUtils.acquireBindings(project);
+        try {
+            Assert.assertSame(again, bindings);
+            Assert.assertEquals(again.get("project"), project);
+            Assert.assertFalse(again.containsKey("columnName"));
+            Assert.assertFalse(again.containsKey("value"));
+        } finally {
+            ExpressionUtils.releaseBindings(again);
+        }
+    }
 }
@@ -167,6 +167,42 @@ public class GrelTests extends RefineTest {
         }
     }
     
+    @Test
+    public void testConstantFolding() throws ParsingException {
+        Evaluable eval = MetaParser.parse("grel:value + (60 * 60 - 600)");
+        Assert.assertEquals(eval.toString(), "value + 3000");
+
+        bindings.put("value", 1);
+        Assert.assertEquals(eval.evaluate(bindings), 3001L);
+
+        Assert.assertEquals(MetaParser.parse("grel:\"a\" + \"b\" == \"ab\"").toString(), "true");
+        // left to fail when evaluated
+        Assert.assertEquals(MetaParser.parse("grel:1 / 0").toString(), "1 / 0");
+    }
+
+    @Test
+    public void testParsedExpressionsAreCached() throws ParsingException {
+        long hits = MetaParser.getCache().getHits();
+        Evaluable eval = MetaParser.parse("grel:value.length() + 12345");
+        Assert.assertSame(MetaParser.parse("value.length() + 12345"), eval);
+        Assert.assertSame(MetaParser.parse("gel:value.length() + 12345"), eval);
+        Assert.assertEquals(MetaParser.getCache().getHits(), hits + 2);
+
+        // other languages' evaluables may hold state
+        Assert.assertNotSame(MetaParser.parse("clojure:value"), MetaParser.parse("clojure:value"));
+    }
+
+    @Test
+    public void testRegexStringsAreCompiledOnce() throws ParsingException {
+        Evaluable eval = MetaParser.parse("grel:value.match(\"(\\\\d+)-x\")");
+        long misses = ExpressionUtils.getPatternCache().getMisses();
+        for (int i = 0; i < 10; i++) {
+            bindings.put("value", i + "-x");
+            Assert.assertEquals(((String[]) eval.evaluate(bindings))[0], Integer.toString(i));
+        }
+        Assert.assertEquals(ExpressionUtils.getPatternCache().getMisses(), misses + 1);
+    }
+
     // to demonstrate bug fixing for #1204
     @Test
     public void testCrossFunctionEval() {
@@ -46,6 +46,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
@@ -102,6 +104,46 @@ public class ExcelImporterTests extends ImporterTest {
     //---------------------read tests------------------------
     @Test
     public void readXls() throws FileNotFoundException, JSONException{
+        readSpreadsheet(xlsFile);
+    }
+
+    @Test
+    public void readXlsx() throws IOException, JSONException{
+        File file = createXlsx(
+                "<sheetData>"
+                + "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"C1\" t=\"inlineStr\"><is><t>inline</t></is></c></row>"
+                + "<row r=\"3\"><c r=\"A3\"><v>2.5</v></c><c r=\"B3\" t=\"b\"><v>1</v></c>"
+                + "<c r=\"C3\" s=\"1\"><v>43101</v></c><c r=\"D3\" t=\"e\"><v>#DIV/0!</v></c>"
+                + "<c r=\"E3\" t=\"str\"><f>A1</f><v>shared</v></c><c r=\"F3\" t=\"s\"><v>1</v></c></row>"
+                + "</sheetData>",
+                "<si><t>shared</t></si><si><r><t>rich </t></r><r><t>text</t></r></si>");
+
+        JSONArray sheets = new JSONArray();
+        JSONUtilities.append(sheets,
+                new JSONObject("{name: \"file-source#Data\", fileNameAndSheetIndex: \"file-source#0\", rows: 3, selected: true}"));
+        whenGetArrayOption("sheets", options, sheets);
+        whenGetIntegerOption("ignoreLines", options, 0);
+        whenGetIntegerOption("headerLines", options, 0);
+        whenGetIntegerOption("skipDataLines", options, 0);
+        whenGetIntegerOption("limit", options, -1);
+        whenGetBooleanOption("storeBlankCellsAsNulls",options,true);
+
+        parseOneFile(SUT, new FileInputStream(file));
+
+        // the blank second row is left out
+        Assert.assertEquals(project.rows.size(), 2);
+        Assert.assertEquals(project.rows.get(0).getCellValue(0), "shared");
+        Assert.assertNull(project.rows.get(0).getCellValue(1));
+        Assert.assertEquals(project.rows.get(0).getCellValue(2), "inline");
+        Assert.assertEquals(((Number)project.rows.get(1).getCellValue(0)).doubleValue(), 2.5, EPSILON);
+        Assert.assertEquals(project.rows.get(1).getCellValue(1), true);
+        Assert.assertTrue(project.rows.get(1).getCellValue(2) instanceof Date);
+        Assert.assertNull(project.rows.get(1).getCellValue(3));
+        Assert.assertEquals(project.rows.get(1).getCellValue(4), "shared");
+        Assert.assertEquals(project.rows.get(1).getCellValue(5), "rich text");
+    }
+
+    private void readSpreadsheet(File file) throws FileNotFoundException, JSONException{
 
         JSONArray sheets = new JSONArray();
         JSONUtilities.append(sheets, 
@@ -114,7 +156,7 @@ public class ExcelImporterTests extends ImporterTest {
         whenGetIntegerOption("limit", options, -1);
         whenGetBooleanOption("storeBlankCellsAsNulls",options,true);
         
-        InputStream stream = new FileInputStream(xlsFile);
+        InputStream stream = new FileInputStream(file);
         
         try {
             parseOneFile(SUT, stream);
@@ -144,6 +186,56 @@ public class ExcelImporterTests extends ImporterTest {
         }
     }
     
+    /**
+     * Writes a minimal workbook package, with a single sheet named "Data"
+     * and a date style at index 1.
+     */
+    private static File createXlsx(String sheetData, String sharedStrings) throws IOException {
+        File file = File.createTempFile("openrefine-importer-test", ".xlsx");
+        file.deleteOnExit();
+        String ns = "xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"";
+        String rels = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            putEntry(zip, "[Content_Types].xml",
+                    "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                    + "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                    + "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>"
+                    + "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+                    + "</Types>");
+            putEntry(zip, "_rels/.rels",
+                    "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + rels + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                    + "</Relationships>");
+            putEntry(zip, "xl/workbook.xml",
+                    "<workbook " + ns + " xmlns:r=\"" + rels + "\"><sheets>"
+                    + "<sheet name=\"Data\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+            putEntry(zip, "xl/_rels/workbook.xml.rels",
+                    "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + rels + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                    + "<Relationship Id=\"rId2\" Type=\"" + rels + "/sharedStrings\" Target=\"sharedStrings.xml\"/>"
+                    + "<Relationship Id=\"rId3\" Type=\"" + rels + "/styles\" Target=\"styles.xml\"/>"
+                    + "</Relationships>");
+            putEntry(zip, "xl/worksheets/sheet1.xml", "<worksheet " + ns + ">" + sheetData + "</worksheet>");
+            putEntry(zip, "xl/sharedStrings.xml", "<sst " + ns + ">" + sharedStrings + "</sst>");
+            putEntry(zip, "xl/styles.xml", "<styleSheet " + ns + "><cellStyleXfs count=\"1\"><xf numFmtId=\"14\"/></cellStyleXfs>"
+                    + "<cellXfs count=\"2\"><xf numFmtId=\"0\"/><xf numFmtId=\"14\"/></cellXfs></styleSheet>");
+        } finally {
+            zip.close();
+        }
+        return file;
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes("UTF-8"));
+        zip.closeEntry();
+    }
+
     private static File createSpreadsheet(boolean xml) {
 
         final Workbook wb = xml ? new XSSFWorkbook() : new HSSFWorkbook();
@@ -36,6 +36,7 @@ package com.google.refine.tests.importers;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.io.LineNumberReader;
 import java.io.StringReader;
 
 import org.json.JSONException;
@@ -47,7 +48,12 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import au.com.bytecode.opencsv.CSVParser;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.importers.ParallelSeparatorReader;
 import com.google.refine.importers.SeparatorBasedImporter;
+import com.google.refine.model.Row;
 
 public class TsvCsvImporterTests extends ImporterTest {
 
@@ -559,6 +565,104 @@ public class TsvCsvImporterTests extends ImporterTest {
         verifyOptions();
     }
 
+    @Test
+    public void readCsvWithSeveralThreads() {
+        int count = ParallelSeparatorReader.CHUNK_SIZE * 3 + 7;
+        StringBuilder input = new StringBuilder("id,text,n\n");
+        for (int i = 0; i < count; i++) {
+            input.append(i).append(',');
+            if (i % 10 == 0) {
+                input.append("\"line ").append(i).append("\nwith \"\"quotes\"\", and comma\"");
+            } else {
+                input.append("text ").append(i);
+            }
+            input.append(',').append(i * 2).append('\n');
+        }
+
+        ProjectManager.singleton.getPreferenceStore().put(ParallelSeparatorReader.THREADS_PREFERENCE_KEY, 4);
+        try {
+            prepareOptions(",", -1, 0, 0, 1, true, false);
+            parseOneFile(SUT, new StringReader(input.toString()));
+        } catch (Exception e) {
+            Assert.fail("Exception during file parse",e);
+        } finally {
+            ProjectManager.singleton.getPreferenceStore().put(ParallelSeparatorReader.THREADS_PREFERENCE_KEY, null);
+        }
+
+        Assert.assertEquals(project.columnModel.columns.size(), 3);
+        Assert.assertEquals(project.rows.size(), count);
+        for (int i = 0; i < count; i++) {
+            Row row = project.rows.get(i);
+            Assert.assertEquals(row.getCellValue(0), (long) i);
+            Assert.assertEquals(row.getCellValue(1), i % 10 == 0 ?
+                    "line " + i + "\nwith \"quotes\", and comma" : "text " + i);
+            Assert.assertEquals(row.getCellValue(2), (long) i * 2);
+        }
+
+        verifyOptions();
+    }
+
+    @Test
+    public void guessTypesAfterIgnoredLinesWithSeveralThreads() {
+        int count = ParallelSeparatorReader.CHUNK_SIZE + 5;
+        StringBuilder input = new StringBuilder("ignored\n\"id\nnumber\",n\n");
+        for (int i = 0; i < count; i++) {
+            input.append(i).append(',').append(i * 2).append('\n');
+        }
+
+        ProjectManager.singleton.getPreferenceStore().put(ParallelSeparatorReader.THREADS_PREFERENCE_KEY, 4);
+        try {
+            prepareOptions(",", -1, 0, 1, 1, true, false);
+            parseOneFile(SUT, new StringReader(input.toString()));
+        } catch (Exception e) {
+            Assert.fail("Exception during file parse",e);
+        } finally {
+            ProjectManager.singleton.getPreferenceStore().put(ParallelSeparatorReader.THREADS_PREFERENCE_KEY, null);
+        }
+
+        Assert.assertEquals(project.columnModel.columns.get(0).getName(), "id\nnumber");
+        Assert.assertEquals(project.rows.size(), count);
+        Assert.assertEquals(project.rows.get(0).getCellValue(0), 0L);
+        Assert.assertEquals(project.rows.get(count - 1).getCellValue(1), (long) (count - 1) * 2);
+    }
+
+    @Test
+    public void keepReadingWhenThreadsChange() throws Exception {
+        StringBuilder input = new StringBuilder();
+        int count = ParallelSeparatorReader.CHUNK_SIZE * 8;
+        for (int i = 0; i < count; i++) {
+            input.append(i).append('\n');
+        }
+        ParallelSeparatorReader reader = new ParallelSeparatorReader(
+                new LineNumberReader(new StringReader(input.toString())), job,
+                () -> new CSVParser(','), '"', true, 2);
+        ParallelSeparatorReader other = new ParallelSeparatorReader(
+                new LineNumberReader(new StringReader("a\n")), job,
+                () -> new CSVParser(','), '"', true, 3);
+        try {
+            // the first chunks are submitted to the pool of 2 threads, the
+            // others once it has been replaced by a pool of 3
+            Assert.assertEquals(reader.getNextRowOfCells().get(0), "0");
+            Assert.assertEquals(other.getNextRowOfCells().get(0), "a");
+            int rows = 1;
+            while (reader.getNextRowOfCells() != null) {
+                rows++;
+            }
+            Assert.assertEquals(rows, count);
+        } finally {
+            reader.close();
+            other.close();
+        }
+    }
+
+    @Test
+    public void previewWithoutThreads() {
+        Assert.assertFalse(ParallelSeparatorReader.isWorthParallel(4, 100));
+        Assert.assertFalse(ParallelSeparatorReader.isWorthParallel(1, -1));
+        Assert.assertTrue(ParallelSeparatorReader.isWorthParallel(4, -1));
+        Assert.assertTrue(ParallelSeparatorReader.isWorthParallel(4, ParallelSeparatorReader.CHUNK_SIZE * 10));
+    }
+
     //--helpers--
     /**
      * Used for parameterized testing for both SeparatorParser and TsvCsvParser.
@@ -35,6 +35,8 @@ package com.google.refine.tests.importers;
 
 
 import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -44,6 +46,7 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
 import com.google.refine.importers.WikitextImporter;
+import com.sun.net.httpserver.HttpServer;
 
 public class WikitextImporterTests extends ImporterTest {
 
@@ -159,6 +162,38 @@ public class WikitextImporterTests extends ImporterTest {
         // unfortunately the above does not seem to be supported by the parser (parsed as blank instead)
     }
 
+    @Test
+    public void readTableWhenReconServiceIsBusy() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(429, -1);
+            exchange.close();
+        });
+        server.start();
+        String input = "\n"
+            +"{|\n"
+            +"|-\n"
+            +"| [[Thessaloniki]] || a\n"
+            +"|-\n"
+            +"| [[Dublin]] || b\n"
+            +"|-\n"
+            +"|}\n";
+
+        try {
+           prepareOptions(0, 0, true, true, "https://de.wikipedia.org/wiki/",
+                   "http://127.0.0.1:" + server.getAddress().getPort() + "/api");
+           parse(input);
+        } finally {
+           server.stop(0);
+        }
+        Assert.assertTrue(requests.get() > 0);
+        Assert.assertEquals(project.rows.size(), 2);
+        Assert.assertEquals(project.rows.get(1).cells.get(0).value, "Dublin");
+        Assert.assertNull(project.rows.get(1).cells.get(0).recon.getBestCandidate());
+    }
+
     @Test
     public void readStyledTableWithHeader() {
         // Data credits: Wikipedia contributors, https://de.wikipedia.org/w/index.php?title=Agenturen_der_Europäischen_Union&action=edit
@@ -319,6 +354,13 @@ public class WikitextImporterTests extends ImporterTest {
     private void prepareOptions(
         int limit, int headerLines, boolean blankSpanningCells,
         boolean guessValueType, String wikiUrl) {
+        prepareOptions(limit, headerLines, blankSpanningCells, guessValueType, wikiUrl,
+                "https://tools.wmflabs.org/openrefine-wikidata/en/api");
+    }
+
+    private void prepareOptions(
+        int limit, int headerLines, boolean blankSpanningCells,
+        boolean guessValueType, String wikiUrl, String reconService) {
         
         whenGetIntegerOption("limit", options, limit);
         whenGetIntegerOption("headerLines", options, headerLines);
@@ -328,6 +370,6 @@ public class WikitextImporterTests extends ImporterTest {
         whenGetBooleanOption("parseReferences", options, true);
         whenGetBooleanOption("includeRawTemplates", options, true);
         whenGetStringOption("wikiUrl", options, wikiUrl);
-        whenGetStringOption("reconService", options, "https://tools.wmflabs.org/openrefine-wikidata/en/api");
+        whenGetStringOption("reconService", options, reconService);
     }
 }
@@ -0,0 +1,122 @@
+package com.google.refine.tests.io;
+
+import java.io.File;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.expr.EvalError;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.io.ProjectSnapshot;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Row;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.tests.RefineTest;
+
+public class ProjectSnapshotTests extends RefineTest {
+    private Project project;
+    private File file;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        project = createCSVProject("ProjectSnapshotTests",
+                "a,b,c\n"
+              + "x,y,z\n");
+        file = File.createTempFile("snapshot", ProjectSnapshot.FILE_SUFFIX);
+        file.deleteOnExit();
+    }
+
+    @Test
+    public void roundTripsCellsAndRows() throws Exception {
+        Recon recon = new Recon(0, null, null);
+        recon.judgment = Recon.Judgment.Matched;
+        Row row = new Row(6);
+        row.flagged = true;
+        row.setCell(0, new Cell(42L, recon));
+        row.setCell(1, new Cell(1.5, null));
+        row.setCell(2, new Cell(true, null));
+        row.setCell(3, new Cell(OffsetDateTime.of(2018, 3, 1, 12, 0, 0, 0, ZoneOffset.UTC), null));
+        row.setCell(4, new Cell(new EvalError("oops"), null));
+        row.setCell(5, new Cell(new String(new char[70000]).replace('\0', 'w'), null));
+        project.rows.add(row);
+
+        ProjectSnapshot.save(project, file);
+        Project loaded = ProjectSnapshot.load(file, project.id, -1);
+
+        Assert.assertEquals(loaded.columnModel.getColumnNames(), project.columnModel.getColumnNames());
+        Assert.assertEquals(loaded.rows.size(), 2);
+        Assert.assertEquals(loaded.rows.get(0).toString(), project.rows.get(0).toString());
+
+        Row loadedRow = loaded.rows.get(1);
+        Assert.assertTrue(loadedRow.flagged);
+        Assert.assertFalse(loadedRow.starred);
+        Assert.assertEquals(loadedRow.getCellValue(0), 42L);
+        Assert.assertEquals(loadedRow.getCell(0).recon.id, recon.id);
+        Assert.assertEquals(loadedRow.getCell(0).recon.judgment, Recon.Judgment.Matched);
+        Assert.assertEquals(loadedRow.getCellValue(1), 1.5);
+        Assert.assertEquals(loadedRow.getCellValue(2), true);
+        Assert.assertEquals(loadedRow.getCellValue(3), row.getCellValue(3));
+        Assert.assertEquals(((EvalError) loadedRow.getCellValue(4)).message, "oops");
+        Assert.assertEquals(loadedRow.getCellValue(5), row.getCellValue(5));
+    }
+
+    @Test
+    public void loadsOnlyRequestedRows() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell(Integer.toString(i), null));
+            project.rows.add(row);
+        }
+
+        ProjectSnapshot.save(project, file);
+        Project preview = ProjectSnapshot.load(file, project.id, 5000);
+
+        Assert.assertEquals(preview.rows.size(), 5000);
+        Assert.assertEquals(preview.rows.get(4999).getCellValue(0), "4998");
+    }
+
+    @Test
+    public void loadsBlocksInOrder() throws Exception {
+        // more blocks than are decoded at once
+        int count = 4096 * (2 * ForkJoinPool.getCommonPoolParallelism() + 1) + 1;
+        for (int i = 0; i < count; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell((long) i, null));
+            project.rows.add(row);
+        }
+
+        ProjectSnapshot.save(project, file);
+        Project loaded = ProjectSnapshot.load(file, project.id, -1);
+
+        Assert.assertEquals(loaded.rows.size(), project.rows.size());
+        for (int r = 0; r < project.rows.size(); r += 997) {
+            Assert.assertEquals(loaded.rows.get(r).getCellValue(0), project.rows.get(r).getCellValue(0));
+        }
+        Assert.assertEquals(loaded.rows.get(loaded.rows.size() - 1).getCellValue(0), (long) count - 1);
+    }
+
+    @Test
+    public void tellsEntryOfSavedState() throws Exception {
+        Cell oldCell = project.rows.get(0).getCell(0);
+        project.history.addEntry(new HistoryEntry(1234L, project, "edit", null,
+                new CellChange(0, 0, oldCell, new Cell("w", null))));
+        Assert.assertEquals(ProjectSnapshot.save(project, file), 1234L);
+
+        project.history.undoRedo(0);
+        Assert.assertEquals(ProjectSnapshot.save(project, file), 0L);
+    }
+}
@@ -50,6 +50,7 @@ import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 import com.google.refine.tests.RefineTest;
+import com.google.refine.util.Pool;
 
 public class RowTests extends RefineTest {
 
@@ -162,4 +163,16 @@ public class RowTests extends RefineTest {
         Assert.assertTrue((Boolean) row.getField("starred", options));
     }
 
+    @Test
+    public void loadedRowsShareCells() throws Exception {
+        Pool pool = new Pool();
+        Row row1 = Row.load("{\"flagged\":false,\"starred\":false,\"cells\":[{\"v\":\"a\"},{\"v\":1}]}", pool);
+        Row row2 = Row.load("{\"flagged\":false,\"starred\":true,\"cells\":[{\"v\":\"a\"},{\"v\":2}]}", pool);
+        Assert.assertSame(row1.getCell(0), row2.getCell(0));
+        Assert.assertNotSame(row1.getCell(1), row2.getCell(1));
+        Assert.assertEquals(row2.getCellValue(0), "a");
+        Assert.assertEquals(row2.getCellValue(1), 2L);
+        Assert.assertTrue(row2.starred);
+    }
+
 }
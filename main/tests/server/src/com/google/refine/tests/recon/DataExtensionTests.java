@@ -36,10 +36,16 @@ package com.google.refine.tests.recon;
 import static org.mockito.Mockito.mock;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.LoggerFactory;
@@ -61,6 +67,7 @@ import com.google.refine.process.ProcessManager;
 import com.google.refine.operations.EngineDependentOperation;
 import com.google.refine.operations.recon.ExtendDataOperation;
 import com.google.refine.tests.RefineTest;
+import com.sun.net.httpserver.HttpServer;
 
 
 public class DataExtensionTests extends RefineTest {
@@ -273,4 +280,73 @@ public class DataExtensionTests extends RefineTest {
         Assert.assertTrue(project.columnModel.getColumnByName("currency").getReconStats().matchedTopics == 5);
     }
      
+    /**
+     * Test that ids matched by several rows are only fetched once, and that
+     * a later extension with the same properties is served from the cache
+     */
+    @Test
+    public void testExtendDistinctIdsOnce() throws Exception {
+        for (String id : new String[] { "Q794", "Q17", "Q794" }) {
+            Row row = new Row(2);
+            row.setCell(0, reconciledCell(id, id));
+            project.rows.add(row);
+        }
+
+        final List<String> requestedIds = new ArrayList<String>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api", exchange -> {
+            String body = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+            JSONObject query = new JSONObject(URLDecoder.decode(body.substring("extend=".length()), "UTF-8"));
+            JSONObject rows = new JSONObject();
+            JSONArray ids = query.getJSONArray("ids");
+            for (int i = 0; i < ids.length(); i++) {
+                synchronized (requestedIds) {
+                    requestedIds.add(ids.getString(i));
+                }
+                JSONArray values = new JSONArray().put(new JSONObject().put("str", "code of " + ids.getString(i)));
+                rows.put(ids.getString(i), new JSONObject().put("P-test", values));
+            }
+            JSONObject meta = new JSONObject().put("id", "P-test").put("name", "code");
+            byte[] response = new JSONObject().put("meta", new JSONArray().put(meta)).put("rows", rows)
+                    .toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(response);
+            os.close();
+        });
+        server.start();
+        try {
+            String endpoint = "http://localhost:" + server.getAddress().getPort() + "/api";
+            JSONObject extension = new JSONObject("{\"properties\":[{\"id\":\"P-test\",\"name\":\"code\"}]}");
+
+            runExtension(endpoint, extension, 1);
+            Assert.assertEquals(requestedIds.size(), 4);
+            Assert.assertEquals(project.rows.get(0).getCellValue(1), "code of Q794");
+            Assert.assertEquals(project.rows.get(4).getCellValue(1), "code of Q794");
+            Assert.assertEquals(project.rows.get(6).getCellValue(1), "code of Q794");
+            Assert.assertEquals(project.rows.get(5).getCellValue(1), "code of Q17");
+
+            runExtension(endpoint, extension, 2);
+            Assert.assertEquals(requestedIds.size(), 4);
+            Assert.assertEquals(project.rows.get(3).getCellValue(2), "code of Q30");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    void runExtension(String endpoint, JSONObject extension, int columnInsertIndex) throws Exception {
+        EngineDependentOperation op = new ExtendDataOperation(engine_config,
+                "country",
+                endpoint,
+                RECON_IDENTIFIER_SPACE,
+                RECON_SCHEMA_SPACE,
+                extension,
+                columnInsertIndex);
+        Process process = op.createProcess(project, options);
+        process.startPerforming(project.getProcessManager());
+        for (int i = 0; i < 100 && process.isRunning(); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertFalse(process.isRunning(), "The data extension process took longer than expected.");
+    }
 }
@@ -0,0 +1,159 @@
+package com.google.refine.tests.recon;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.recon.ReconBatchScheduler;
+import com.google.refine.model.recon.ReconJob;
+import com.google.refine.model.recon.StandardReconConfig;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.ParsingUtilities;
+import com.sun.net.httpserver.HttpServer;
+
+public class ReconBatchSchedulerTests extends RefineTest {
+    private HttpServer server;
+    private AtomicInteger requests;
+    private int busyResponses;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    /**
+     * Starts a reconciliation service matching every query with a candidate
+     * named after it, which answers the first requests with 429 Too Many
+     * Requests.
+     */
+    @BeforeMethod
+    public void startService() throws Exception {
+        requests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/recon", exchange -> {
+            String body = ParsingUtilities.inputStreamToString(exchange.getRequestBody());
+            if (requests.getAndIncrement() < busyResponses) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                exchange.sendResponseHeaders(429, -1);
+                exchange.close();
+                return;
+            }
+
+            JSONObject queries = new JSONObject(URLDecoder.decode(body.substring("queries=".length()), "UTF-8"));
+            JSONObject response = new JSONObject();
+            Iterator<?> keys = queries.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                String text = queries.getJSONObject(key).getString("query");
+                response.put(key, new JSONObject().put("result", new JSONArray().put(
+                        new JSONObject().put("id", "id-" + text).put("name", text)
+                            .put("score", 100).put("match", true).put("type", new JSONArray()))));
+            }
+
+            byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @AfterMethod
+    public void stopService() {
+        server.stop(0);
+    }
+
+    private Map<String, Recon> reconcile(int rowCount, int concurrency) throws Exception {
+        return reconcile(rowCount, concurrency, ReconBatchScheduler.DEFAULT_MAX_BUSY_RETRIES);
+    }
+
+    private Map<String, Recon> reconcile(int rowCount, int concurrency, int maxBusyRetries) throws Exception {
+        StringBuilder csv = new StringBuilder("name\n");
+        for (int i = 0; i < rowCount; i++) {
+            csv.append("value").append(i).append('\n');
+        }
+        Project project = createCSVProject(csv.toString());
+
+        StandardReconConfig config = new StandardReconConfig(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/recon",
+                "http://example.com/id", "http://example.com/schema",
+                null, null, true, new ArrayList<StandardReconConfig.ColumnDetail>());
+
+        Deque<ReconJob> queue = new ArrayDeque<ReconJob>();
+        Map<ReconJob, String> texts = new HashMap<ReconJob, String>();
+        for (int i = 0; i < rowCount; i++) {
+            ReconJob job = config.createJob(project, i, project.rows.get(i), "name", project.rows.get(i).getCell(0));
+            queue.add(job);
+            texts.put(job, (String) project.rows.get(i).getCellValue(0));
+        }
+
+        Map<String, Recon> results = new HashMap<String, Recon>();
+        new ReconBatchScheduler(config, 1234L, concurrency, maxBusyRetries).run(queue,
+                (List<ReconJob> jobs, List<Recon> recons, Deque<ReconJob> retries) -> {
+                    for (int j = 0; j < jobs.size(); j++) {
+                        results.put(texts.get(jobs.get(j)), j < recons.size() ? recons.get(j) : null);
+                    }
+                });
+        return results;
+    }
+
+    @Test
+    public void reconcilesAllJobsConcurrently() throws Exception {
+        busyResponses = 0;
+        Map<String, Recon> results = reconcile(100, 4);
+
+        Assert.assertEquals(results.size(), 100);
+        for (int i = 0; i < 100; i++) {
+            Recon recon = results.get("value" + i);
+            Assert.assertEquals(recon.judgment, Recon.Judgment.Matched);
+            Assert.assertEquals(recon.match.id, "id-value" + i);
+        }
+    }
+
+    @Test
+    public void retriesBatchesWhenServiceIsBusy() throws Exception {
+        busyResponses = 2;
+        Map<String, Recon> results = reconcile(30, 2);
+
+        Assert.assertEquals(results.size(), 30);
+        for (Recon recon : results.values()) {
+            Assert.assertEquals(recon.judgment, Recon.Judgment.Matched);
+        }
+        Assert.assertTrue(requests.get() > 2);
+    }
+
+    @Test
+    public void giveUpWhenServiceStaysBusy() throws Exception {
+        busyResponses = Integer.MAX_VALUE;
+        Map<String, Recon> results = reconcile(5, 1, 1);
+
+        Assert.assertEquals(results.size(), 5);
+        for (Recon recon : results.values()) {
+            Assert.assertNull(recon);
+        }
+        // the first request, and one retry
+        Assert.assertEquals(requests.get(), 2);
+    }
+}
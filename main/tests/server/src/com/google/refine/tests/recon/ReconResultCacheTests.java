@@ -0,0 +1,184 @@
+package com.google.refine.tests.recon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.recon.ReconJob;
+import com.google.refine.model.recon.ReconResultCache;
+import com.google.refine.model.recon.StandardReconConfig;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.ParsingUtilities;
+import com.sun.net.httpserver.HttpServer;
+
+public class ReconResultCacheTests extends RefineTest {
+    private HttpServer server;
+    private AtomicInteger queries;
+    private File cacheDir;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    /**
+     * Starts a reconciliation service matching every query with a candidate
+     * named after it, counting the queries it gets.
+     */
+    @BeforeMethod
+    public void SetUp() throws IOException {
+        queries = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/recon", exchange -> {
+            String body = ParsingUtilities.inputStreamToString(exchange.getRequestBody());
+            JSONObject batch = new JSONObject(URLDecoder.decode(body.substring("queries=".length()), "UTF-8"));
+            JSONObject response = new JSONObject();
+            Iterator<?> keys = batch.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                String text = batch.getJSONObject(key).getString("query");
+                queries.incrementAndGet();
+                response.put(key, new JSONObject().put("result", new JSONArray().put(
+                        new JSONObject().put("id", "id-" + text).put("name", text)
+                            .put("score", 100).put("match", true).put("type", new JSONArray()))));
+            }
+
+            byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        cacheDir = Files.createTempDirectory("recon-cache").toFile();
+    }
+
+    @AfterMethod
+    public void TearDown() throws IOException {
+        server.stop(0);
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    private class CachingReconConfig extends StandardReconConfig {
+        final ReconResultCache cache;
+
+        CachingReconConfig(ReconResultCache cache) {
+            super("http://127.0.0.1:" + server.getAddress().getPort() + "/recon",
+                    "http://example.com/id", "http://example.com/schema",
+                    null, null, true, new ArrayList<StandardReconConfig.ColumnDetail>());
+            this.cache = cache;
+        }
+
+        @Override
+        protected ReconResultCache getResultCache() {
+            return cache;
+        }
+    }
+
+    private List<Recon> reconcile(StandardReconConfig config, String... values) throws Exception {
+        StringBuilder csv = new StringBuilder("name\n");
+        for (String value : values) {
+            csv.append(value).append('\n');
+        }
+        Project project = createCSVProject(csv.toString());
+
+        List<ReconJob> jobs = new ArrayList<ReconJob>();
+        for (int i = 0; i < values.length; i++) {
+            jobs.add(config.createJob(project, i, project.rows.get(i), "name", project.rows.get(i).getCell(0)));
+        }
+        return config.batchRecon(jobs, 1234L);
+    }
+
+    @Test
+    public void reuseResultsAcrossProjects() throws Exception {
+        ReconResultCache cache = new ReconResultCache(cacheDir, 60000, 1 << 20);
+        List<Recon> recons = reconcile(new CachingReconConfig(cache), "a", "b");
+        Assert.assertEquals(queries.get(), 2);
+        Assert.assertEquals(recons.get(1).match.id, "id-b");
+
+        // as after a restart, with one value not seen before
+        cache = new ReconResultCache(cacheDir, 60000, 1 << 20);
+        recons = reconcile(new CachingReconConfig(cache), "b", "c", "a");
+        Assert.assertEquals(queries.get(), 3);
+        Assert.assertEquals(recons.size(), 3);
+        Assert.assertEquals(recons.get(0).match.id, "id-b");
+        Assert.assertEquals(recons.get(0).judgment, Recon.Judgment.Matched);
+        Assert.assertEquals(recons.get(1).match.id, "id-c");
+        Assert.assertEquals(recons.get(2).match.id, "id-a");
+        Assert.assertEquals(cache.getHits(), 2);
+        Assert.assertEquals(cache.getMisses(), 1);
+
+        // all values cached: the service isn't queried
+        reconcile(new CachingReconConfig(cache), "c");
+        Assert.assertEquals(queries.get(), 3);
+        Assert.assertEquals(cache.getHitRate(), 0.75);
+    }
+
+    @Test
+    public void tellJobsAnsweredFromCache() throws Exception {
+        StandardReconConfig config = new CachingReconConfig(new ReconResultCache(cacheDir, 60000, 1 << 20));
+        Project project = createCSVProject("name\na\nb\n");
+        List<ReconJob> jobs = new ArrayList<ReconJob>();
+        jobs.add(config.createJob(project, 0, project.rows.get(0), "name", project.rows.get(0).getCell(0)));
+        config.batchRecon(jobs, 1234L);
+        Assert.assertFalse(jobs.get(0).isCached());
+
+        jobs.add(config.createJob(project, 1, project.rows.get(1), "name", project.rows.get(1).getCell(0)));
+        config.batchRecon(jobs, 1234L);
+        Assert.assertTrue(jobs.get(0).isCached());
+        Assert.assertFalse(jobs.get(1).isCached());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        ReconResultCache cache = new ReconResultCache(cacheDir, 60000, 25);
+        cache.put("service", "a", "0123456789");
+        cache.put("service", "b", "0123456789");
+        Assert.assertNotNull(cache.get("service", "a"));
+
+        cache.put("service", "c", "0123456789");
+        Assert.assertEquals(cache.getEvictions(), 1);
+        Assert.assertEquals(cache.getTotalBytes(), 20);
+        Assert.assertNull(cache.get("service", "b"));
+        Assert.assertNotNull(cache.get("service", "a"));
+        Assert.assertNotNull(cache.get("service", "c"));
+
+        // the size is read back from disk
+        Assert.assertEquals(new ReconResultCache(cacheDir, 60000, 25).getTotalBytes(), 20);
+    }
+
+    @Test
+    public void expireOldResults() {
+        ReconResultCache cache = new ReconResultCache(cacheDir, 60000, 1 << 20);
+        cache.put("service", "a", "[]");
+        Assert.assertEquals(cache.get("service", "a"), "[]");
+        Assert.assertNull(cache.get("other service", "a"));
+
+        for (Object file : FileUtils.listFiles(cacheDir, null, true)) {
+            ((File) file).setLastModified(System.currentTimeMillis() - 120000);
+        }
+        Assert.assertNull(cache.get("service", "a"));
+        Assert.assertEquals(cache.getTotalBytes(), 0);
+    }
+}
@@ -0,0 +1,111 @@
+package com.google.refine.tests.sorting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.sorting.BaseSorter;
+import com.google.refine.sorting.SortingRowVisitor;
+import com.google.refine.tests.RefineTest;
+
+public class SortingTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    static private String criterion(String column, String valueType, boolean reverse) {
+        return "{\"column\":\"" + column + "\",\"valueType\":\"" + valueType + "\",\"reverse\":" + reverse
+                + ",\"blankPosition\":2,\"errorPosition\":1}";
+    }
+
+    private List<Integer> sort(Project project, String... criteria) throws Exception {
+        List<Integer> visited = new ArrayList<Integer>();
+        SortingRowVisitor srv = new SortingRowVisitor(new RowVisitor() {
+            @Override
+            public void start(Project project) {
+            }
+
+            @Override
+            public void end(Project project) {
+            }
+
+            @Override
+            public boolean visit(Project project, int rowIndex, Row row) {
+                visited.add(rowIndex);
+                return false;
+            }
+        });
+        srv.initializeFromJSON(project, new JSONObject("{\"criteria\":[" + String.join(",", criteria) + "]}"));
+
+        srv.start(project);
+        for (int i = 0; i < project.rows.size(); i++) {
+            srv.visit(project, i, project.rows.get(i));
+        }
+        srv.end(project);
+        return visited;
+    }
+
+    @Test
+    public void sortsByStringsThenNumbers() throws Exception {
+        Project project = createCSVProject("name,size\nb,3\na,10\nB,1\na,2\n,5\nc,x\n");
+
+        Assert.assertEquals(sort(project, criterion("name", "string", false), criterion("size", "number", true)),
+                listOf(1, 3, 0, 2, 5, 4));
+    }
+
+    @Test
+    public void putsErrorsAndBlanksAtTheirPositions() throws Exception {
+        Project project = createCSVProject("size,key\n3,a\nx,b\n,c\n1,d\n");
+
+        Assert.assertEquals(sort(project, criterion("size", "number", false)), listOf(3, 0, 1, 2));
+    }
+
+    @Test
+    public void sortsLargeProjectsInParallelAndStably() throws Exception {
+        int count = BaseSorter.MIN_PARALLEL_COUNT * 3;
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder("n,s\n");
+        for (int i = 0; i < count; i++) {
+            csv.append(random.nextInt(100)).append(",k").append(random.nextInt(50)).append('\n');
+        }
+        Project project = createCSVProject(csv.toString());
+        for (Row row : project.rows) {
+            row.setCell(0, new Cell(Long.parseLong((String) row.getCellValue(0)), null));
+        }
+
+        List<Integer> sorted = sort(project, criterion("n", "number", false), criterion("s", "string", true));
+        Assert.assertEquals(sorted.size(), count);
+        for (int i = 1; i < count; i++) {
+            Row previous = project.rows.get(sorted.get(i - 1));
+            Row row = project.rows.get(sorted.get(i));
+            long n1 = (Long) previous.getCellValue(0);
+            long n2 = (Long) row.getCellValue(0);
+            Assert.assertTrue(n1 <= n2);
+            if (n1 == n2) {
+                int c = ((String) previous.getCellValue(1)).compareTo((String) row.getCellValue(1));
+                Assert.assertTrue(c > 0 || (c == 0 && sorted.get(i - 1) < sorted.get(i)));
+            }
+        }
+    }
+
+    static private List<Integer> listOf(int... values) {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int v : values) {
+            list.add(v);
+        }
+        return list;
+    }
+}
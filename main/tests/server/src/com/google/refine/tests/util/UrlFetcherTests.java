@@ -0,0 +1,179 @@
+package com.google.refine.tests.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.HostRateLimiter;
+import com.google.refine.util.UrlFetcher;
+import com.google.refine.util.UrlResponseCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class UrlFetcherTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    HttpServer server;
+    AtomicInteger requests;
+    File cacheDir;
+
+    @BeforeMethod
+    public void SetUp() throws IOException {
+        requests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // fails the first request of each path ending in "flaky"
+        server.createContext("/", exchange -> {
+            int n = requests.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("flaky") && n == 1) {
+                respond(exchange, 503, "busy");
+            } else if (path.endsWith("missing")) {
+                respond(exchange, 404, "no such thing");
+            } else {
+                respond(exchange, 200, path + " " + exchange.getRequestHeaders().getFirst("X-Test"));
+            }
+        });
+        server.start();
+        cacheDir = Files.createTempDirectory("url-cache").toFile();
+    }
+
+    @AfterMethod
+    public void TearDown() throws IOException {
+        server.stop(0);
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    public void retryOverloadedServer() throws Exception {
+        UrlFetcher fetcher = new UrlFetcher(2, new HostRateLimiter(0, 1), 1, null);
+        try {
+            Map<String, String> headers = Collections.singletonMap("X-Test", "yes");
+            Assert.assertEquals(fetcher.fetch(url("/flaky"), headers), "/flaky yes");
+            Assert.assertEquals(requests.get(), 2);
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void reportHttpErrors() throws Exception {
+        UrlFetcher fetcher = new UrlFetcher(2, new HostRateLimiter(0, 1), 2, null);
+        try {
+            fetcher.fetch(url("/missing"), null);
+            Assert.fail("no error for a missing page");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("HTTP error 404"));
+            // not worth retrying
+            Assert.assertEquals(requests.get(), 1);
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void cacheResponsesOnDisk() throws Exception {
+        Map<String, String> headers = Collections.singletonMap("X-Test", "a");
+        UrlFetcher fetcher = new UrlFetcher(2, new HostRateLimiter(0, 1), 0,
+                new UrlResponseCache(cacheDir, 60000, 1 << 20));
+        try {
+            Assert.assertEquals(fetcher.fetch(url("/page"), headers), "/page a");
+        } finally {
+            fetcher.close();
+        }
+
+        // as after a restart
+        fetcher = new UrlFetcher(2, new HostRateLimiter(0, 1), 0, new UrlResponseCache(cacheDir, 60000, 1 << 20));
+        try {
+            Assert.assertEquals(fetcher.fetch(url("/page"), headers), "/page a");
+            Assert.assertEquals(requests.get(), 1);
+
+            // other headers make another response
+            Assert.assertEquals(fetcher.fetch(url("/page"), Collections.singletonMap("X-Test", "b")), "/page b");
+            Assert.assertEquals(requests.get(), 2);
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void boundCachedResponses() throws Exception {
+        UrlResponseCache cache = new UrlResponseCache(cacheDir, 60000, 25);
+        cache.put("http://example.com/a", null, "0123456789");
+        cache.put("http://example.com/b", null, "0123456789");
+        cache.get("http://example.com/a", null);
+        cache.put("http://example.com/c", null, "0123456789");
+
+        Assert.assertEquals(cache.getTotalBytes(), 20);
+        Assert.assertNull(cache.get("http://example.com/b", null));
+        Assert.assertEquals(FileUtils.listFiles(cacheDir, null, true).size(), 2);
+    }
+
+    @Test
+    public void sweepExpiredResponses() throws Exception {
+        UrlResponseCache cache = new UrlResponseCache(cacheDir, 60000, 1 << 20);
+        cache.put("http://example.com/a", null, "old");
+        for (Object file : FileUtils.listFiles(cacheDir, null, true)) {
+            ((File) file).setLastModified(System.currentTimeMillis() - 120000);
+        }
+        cache.put("http://example.com/b", null, "new");
+
+        // never read again, yet deleted
+        cache.sweep();
+        Assert.assertEquals(FileUtils.listFiles(cacheDir, null, true).size(), 1);
+        Assert.assertEquals(cache.getTotalBytes(), 3);
+
+        // and when the cache is first used, as after a restart
+        for (Object file : FileUtils.listFiles(cacheDir, null, true)) {
+            ((File) file).setLastModified(System.currentTimeMillis() - 120000);
+        }
+        Assert.assertEquals(new UrlResponseCache(cacheDir, 60000, 1 << 20).getTotalBytes(), 0);
+        Assert.assertEquals(FileUtils.listFiles(cacheDir, null, true).size(), 0);
+    }
+
+    @Test
+    public void limitRatePerHost() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(100, 2);
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire("example.org");
+        }
+        limiter.acquire("example.com");
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        // two requests go at once, the next two wait 100 ms each
+        Assert.assertTrue(elapsedMillis >= 190, "took " + elapsedMillis + " ms");
+        Assert.assertTrue(elapsedMillis < 1000, "took " + elapsedMillis + " ms");
+    }
+}
@@ -172,6 +172,10 @@ set REFINE_WEBAPP=main\webapp
 :gotWebApp
 set OPTS=%OPTS% -Drefine.webapp=%REFINE_WEBAPP%
 
+if "%REFINE_PROJECTS_MEMORY%" == "" goto gotProjectsMemory
+set OPTS=%OPTS% -Drefine.projects_memory=%REFINE_PROJECTS_MEMORY%
+:gotProjectsMemory
+
 if not "%REFINE_CLASSES_DIR%" == "" goto gotClassesDir
 set REFINE_CLASSES_DIR=server\classes
 :gotClassesDir
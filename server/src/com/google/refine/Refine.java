@@ -292,6 +292,7 @@ class RefineServer extends Server {
             servlet.setInitParameter("refine.data", getDataDir());
             servlet.setInitParameter("butterfly.modules.path", getDataDir() + "/extensions");
             servlet.setInitParameter("refine.autosave", Configurations.get("refine.autosave", "5")); // default: 5 minutes
+            servlet.setInitParameter("refine.projects_memory", Configurations.get("refine.projects_memory", "0")); // MB, default: no limit
             servlet.setInitOrder(1);
             servlet.doStart();
         }